@@ -9,6 +9,7 @@ import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -22,7 +23,12 @@ import lombok.ToString;
 @Entity
 public class Member {
 
-    @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+    /**
+     * #jpa-springboot IDENTITY는 insert를 해야 id를 알 수 있어서 persist마다 insert가 바로 나가고 JDBC batch로 묶이지 않는다.
+     * 시퀀스(MySQL은 시퀀스가 없어서 member_seq 테이블로 흉내 낸다)에서 50개씩 받아오면 id를 메모리에서 채우고 insert는 커밋 때 batch로 보낸다.
+     */
+    @Id @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "MEMBER_SEQ_GENERATOR")
+    @SequenceGenerator(name = "MEMBER_SEQ_GENERATOR", sequenceName = "member_seq", allocationSize = 50)
     @Column(name = "member_id")
     private Long id;
     private String name;
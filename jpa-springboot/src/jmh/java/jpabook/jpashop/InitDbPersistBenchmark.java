@@ -0,0 +1,96 @@
+package jpabook.jpashop;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.persistence.EntityManager;
+import jpabook.jpashop.benchmark.JpaBenchmarkSupport;
+import jpabook.jpashop.benchmark.SqlStatementCounter;
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Delivery;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.OrderItem;
+import jpabook.jpashop.domain.PooledSequenceGenerator;
+import jpabook.jpashop.domain.item.Book;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * InitDb처럼 회원, 상품, 주문을 한 트랜잭션에서 persist할 때 id 할당 방식과 JDBC batch에 따른 SQL 수, 처리량
+ *
+ * ./gradlew jmh -PjmhInclude=InitDbPersistBenchmark
+ * 연산 1번 = 트랜잭션 하나에서 InitDb#dbInit1 모양의 그래프(회원 1, 상품 2, 주문 1, 주문상품 2, 배송 1)를 graphs개 저장
+ * - blockSize = 1 : 이전 방식. id마다 시퀀스를 조회한다. (call next value for hibernate_sequence)
+ * - blockSize = 50 : PooledSequenceGenerator가 시퀀스 한 번에 id 50개를 받아온다. (pooled-lo)
+ * - batchSize = 0 : insert/update를 한 건씩 보낸다. 100이면 같은 테이블끼리 묶어서 보낸다.
+ * 저장하는 동안 주문상품이 상품 재고를 줄이므로 상품 update(@Version)도 나간다.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class InitDbPersistBenchmark extends JpaBenchmarkSupport {
+
+    @Param({"1", "50"})
+    public int blockSize;
+
+    @Param({"0", "100"})
+    public int batchSize;
+
+    @Param({"50"})
+    public int graphs;
+
+    private EntityManager em;
+    private final AtomicLong sequence = new AtomicLong(); //회원 이름은 유니크
+
+    @Override
+    protected String[] args() {
+        return new String[]{
+                "--spring.jpa.properties." + PooledSequenceGenerator.BLOCK_SIZE + "=" + blockSize,
+                "--spring.jpa.properties.hibernate.jdbc.batch_size=" + batchSize,
+        };
+    }
+
+    @Override
+    protected void init() {
+        em = bean(EntityManager.class);
+    }
+
+    @Benchmark
+    public int persistGraphs(SqlStatementCounter counter) {
+        return measureWrite(counter, () -> {
+            for (int i = 0; i < graphs; i++) {
+                persistGraph(sequence.incrementAndGet());
+            }
+            return graphs;
+        });
+    }
+
+    private void persistGraph(long i) {
+        Member member = new Member();
+        member.setName("user" + i);
+        member.setAddress(new Address("서울", String.valueOf(i), "1111"));
+        em.persist(member);
+
+        Book book1 = createBook("JPA1 BOOK " + i, 10000);
+        em.persist(book1);
+        Book book2 = createBook("JPA2 BOOK " + i, 20000);
+        em.persist(book2);
+
+        OrderItem orderItem1 = OrderItem.createOrderItem(book1, 10000, 1);
+        OrderItem orderItem2 = OrderItem.createOrderItem(book2, 20000, 2);
+
+        Delivery delivery = new Delivery();
+        delivery.setAddress(member.getAddress());
+        em.persist(Order.createOrder(member, delivery, orderItem1, orderItem2));
+    }
+
+    private Book createBook(String name, int price) {
+        Book book = new Book();
+        book.setName(name);
+        book.setPrice(price);
+        book.setStockQuantity(100);
+        return book;
+    }
+}
@@ -0,0 +1,65 @@
+package jpabook.jpashop.api;
+
+import java.util.concurrent.TimeUnit;
+import jpabook.jpashop.benchmark.OrderDataBenchmarkSupport;
+import jpabook.jpashop.benchmark.SqlStatementCounter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+/**
+ * OrderApiController의 주문 조회 V1 ~ V6 (컬렉션 조회 최적화) 비교
+ *
+ * ./gradlew jmh -PjmhInclude=OrderApiBenchmark
+ * 결과: 처리량(ops/s), gc.alloc.rate.norm(연산 1번당 할당 바이트), sqlStatements(÷ ops/s = 연산 1번당 SQL 수)
+ *
+ * JSON 직렬화는 제외하고 조회 + DTO 변환까지만 측정한다.
+ * V3.1은 offset/limit을 주문 전체가 한 번에 나오도록 준다.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class OrderApiBenchmark extends OrderDataBenchmarkSupport {
+
+    private OrderApiController controller;
+
+    @Override
+    protected void init() {
+        controller = bean(OrderApiController.class);
+    }
+
+    @Benchmark
+    public Object v1_entity(SqlStatementCounter counter) {
+        return measure(counter, controller::ordersV1);
+    }
+
+    @Benchmark
+    public Object v2_entityToDto(SqlStatementCounter counter) {
+        return measure(counter, controller::ordersV2);
+    }
+
+    @Benchmark
+    public Object v3_fetchJoin(SqlStatementCounter counter) {
+        return measure(counter, controller::ordersV3);
+    }
+
+    @Benchmark
+    public Object v3_1_fetchJoinBatchSize(SqlStatementCounter counter) {
+        return measure(counter, () -> controller.ordersV3_page(0, orders));
+    }
+
+    @Benchmark
+    public Object v4_dto(SqlStatementCounter counter) {
+        return measure(counter, controller::ordersV4);
+    }
+
+    @Benchmark
+    public Object v5_dtoInQuery(SqlStatementCounter counter) {
+        return measure(counter, controller::ordersV5);
+    }
+
+    @Benchmark
+    public Object v6_dtoFlat(SqlStatementCounter counter) {
+        return measure(counter, controller::ordersV6);
+    }
+}
@@ -0,0 +1,48 @@
+package jpabook.jpashop.api;
+
+import java.util.concurrent.TimeUnit;
+import jpabook.jpashop.benchmark.OrderDataBenchmarkSupport;
+import jpabook.jpashop.benchmark.SqlStatementCounter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+/**
+ * OrderSimpleApiController의 주문 조회 V1 ~ V4 (xToOne 조회 최적화) 비교
+ *
+ * ./gradlew jmh -PjmhInclude=OrderSimpleApiBenchmark
+ * 결과 보는 법은 OrderApiBenchmark와 같다.
+ * V1은 findAllByString을 사용하므로 최대 1000건까지만 조회된다.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class OrderSimpleApiBenchmark extends OrderDataBenchmarkSupport {
+
+    private OrderSimpleApiController controller;
+
+    @Override
+    protected void init() {
+        controller = bean(OrderSimpleApiController.class);
+    }
+
+    @Benchmark
+    public Object v1_entity(SqlStatementCounter counter) {
+        return measure(counter, controller::ordersV1);
+    }
+
+    @Benchmark
+    public Object v2_entityToDto(SqlStatementCounter counter) {
+        return measure(counter, controller::ordersV2);
+    }
+
+    @Benchmark
+    public Object v3_fetchJoin(SqlStatementCounter counter) {
+        return measure(counter, controller::ordersV3);
+    }
+
+    @Benchmark
+    public Object v4_dto(SqlStatementCounter counter) {
+        return measure(counter, controller::ordersV4);
+    }
+}
@@ -0,0 +1,74 @@
+package jpabook.jpashop.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.persistence.EntityManager;
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Delivery;
+import jpabook.jpashop.domain.DeliveryStatus;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.OrderItem;
+import jpabook.jpashop.domain.item.Book;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * 벤치마크용 데이터 - 주문 orders건, 주문마다 주문상품 itemsPerOrder건
+ * 회원 100명, 상품 itemsPerOrder * 10개를 돌려가며 사용한다.
+ */
+@Component
+public class BenchmarkDataSeeder {
+
+    private static final int MEMBERS = 100;
+    private static final int FLUSH_SIZE = 500;
+
+    private final EntityManager em;
+
+    public BenchmarkDataSeeder(EntityManager em) {
+        this.em = em;
+    }
+
+    @Transactional
+    public void seed(int orders, int itemsPerOrder) {
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < MEMBERS; i++) {
+            Member member = new Member();
+            member.setName("member" + i);
+            member.setAddress(new Address("서울", "강가" + i, "123-123"));
+            em.persist(member);
+            members.add(member);
+        }
+
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < itemsPerOrder * 10; i++) {
+            Book book = new Book();
+            book.setName("book" + i);
+            book.setPrice(10000 + i);
+            book.setStockQuantity(Integer.MAX_VALUE);
+            em.persist(book);
+            books.add(book);
+        }
+
+        for (int i = 0; i < orders; i++) {
+            Member member = members.get(i % members.size());
+            Delivery delivery = new Delivery();
+            delivery.setAddress(member.getAddress());
+            delivery.setStatus(DeliveryStatus.READY);
+
+            OrderItem[] orderItems = new OrderItem[itemsPerOrder];
+            for (int j = 0; j < itemsPerOrder; j++) {
+                Book book = books.get((i + j) % books.size());
+                orderItems[j] = OrderItem.createOrderItem(book, book.getPrice(), 1);
+            }
+            em.persist(Order.createOrder(member, delivery, orderItems));
+
+            if (i % FLUSH_SIZE == 0) {
+                em.flush();
+                em.clear();
+                members.replaceAll(m -> em.find(Member.class, m.getId()));
+                books.replaceAll(b -> em.find(Book.class, b.getId()));
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package jpabook.jpashop.benchmark;
+
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import javax.persistence.EntityManagerFactory;
+import jpabook.jpashop.JpashopApplication;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * JPA 계층 벤치마크 공통 설정
+ *
+ * - 웹 서버 없이 스프링 컨텍스트만 띄우고 DB는 임베디드 H2를 사용한다. (application.yml의 MySQL 설정을 덮어씀)
+ * - 데이터는 seed()에서 넣는다. 주문 조회 벤치마크는 OrderDataBenchmarkSupport
+ * - 2차 캐시는 끈다. 전략 간 SQL 비교가 목적이기 때문 (켜면 V2의 지연 로딩 일부가 캐시에서 해결된다)
+ * - 하이버네이트 통계로 연산 1번당 실행된 SQL 수를 센다. (SqlStatementCounter)
+ *
+ * 연산 하나는 readOnly 트랜잭션 하나로 감싼다. 컨트롤러에서의 OSIV처럼 지연 로딩이 가능한 상태를 만들기 위해서다.
+ * 저장 벤치마크는 measureWrite()로 쓰기 트랜잭션 하나로 감싼다.
+ */
+@State(Scope.Benchmark)
+public abstract class JpaBenchmarkSupport {
+
+    //application.yml보다 우선하도록 커맨드라인 인자로 넘긴다
+    private static final String[] ARGS = {
+            "--spring.main.banner-mode=off",
+            "--spring.datasource.url=jdbc:h2:mem:jmh;DB_CLOSE_DELAY=-1",
+            "--spring.datasource.username=sa",
+            "--spring.datasource.password=",
+            "--spring.datasource.driver-class-name=org.h2.Driver",
+            "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+            "--spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+            "--spring.jpa.properties.hibernate.cache.use_query_cache=false",
+            "--spring.jpa.properties.hibernate.format_sql=false",
+            "--decorator.datasource.enabled=false", //p6spy
+            "--jpashop.member-search.single-instance=true", //벤치마크는 JVM 하나 (MemberNameTrigramIndex)
+            "--logging.level.root=warn",
+            "--logging.level.org.hibernate.SQL=warn",
+            "--logging.level.org.hibernate.engine.jdbc.batch.internal.BatchingBatch=off", //낙관적 락 충돌마다 찍히는 ERROR 로그
+    };
+
+    protected ConfigurableApplicationContext context;
+    private TransactionTemplate readOnly;
+    private TransactionTemplate readWrite;
+    private Statistics statistics;
+
+    @Setup(Level.Trial)
+    public void startContext() {
+        context = new SpringApplicationBuilder(JpashopApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(Stream.concat(Stream.of(ARGS), Stream.of(args())).toArray(String[]::new));
+
+        readOnly = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readOnly.setReadOnly(true);
+        readWrite = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+
+        statistics = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+
+        seed();
+        init();
+    }
+
+    /**
+     * 하위 클래스에서 @Param에 따라 바꿀 설정 (ex. --spring.jpa.properties.hibernate.jdbc.batch_size=0)
+     */
+    protected String[] args() {
+        return new String[0];
+    }
+
+    /**
+     * 하위 클래스에서 측정용 데이터 적재
+     */
+    protected void seed() {
+    }
+
+    /**
+     * 하위 클래스에서 빈 조회 등 추가 준비
+     */
+    protected void init() {
+    }
+
+    @TearDown(Level.Trial)
+    public void stopContext() {
+        context.close();
+    }
+
+    protected <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    protected TransactionTemplate transaction() {
+        return readWrite;
+    }
+
+    /**
+     * 읽기 전용 트랜잭션 안에서 실행하고 실행된 SQL 수를 counter에 더한다.
+     */
+    protected <T> T measure(SqlStatementCounter counter, Supplier<T> operation) {
+        long before = statistics.getPrepareStatementCount();
+        T result = readOnly.execute(status -> operation.get());
+        counter.sqlStatements += statistics.getPrepareStatementCount() - before;
+        return result;
+    }
+
+    /**
+     * 쓰기 트랜잭션 안에서 실행하고(커밋 시 flush 포함) 실행된 SQL 수를 counter에 더한다.
+     * JDBC batch로 묶인 insert/update는 묶음 하나를 1번으로 센다.
+     */
+    protected <T> T measureWrite(SqlStatementCounter counter, Supplier<T> operation) {
+        long before = statistics.getPrepareStatementCount();
+        T result = readWrite.execute(status -> operation.get());
+        counter.sqlStatements += statistics.getPrepareStatementCount() - before;
+        return result;
+    }
+}
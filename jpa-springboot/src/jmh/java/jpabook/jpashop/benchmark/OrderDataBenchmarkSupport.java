@@ -0,0 +1,20 @@
+package jpabook.jpashop.benchmark;
+
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * 주문 조회 벤치마크 공통 - 주문 orders건, 주문마다 주문상품 itemsPerOrder건을 넣은 후 측정한다.
+ */
+public abstract class OrderDataBenchmarkSupport extends JpaBenchmarkSupport {
+
+    @Param({"1000"})
+    public int orders;
+
+    @Param({"2", "10"})
+    public int itemsPerOrder;
+
+    @Override
+    protected void seed() {
+        bean(BenchmarkDataSeeder.class).seed(orders, itemsPerOrder);
+    }
+}
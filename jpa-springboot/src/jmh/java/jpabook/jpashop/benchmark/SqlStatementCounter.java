@@ -0,0 +1,24 @@
+package jpabook.jpashop.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 벤치마크 결과에 sqlStatements 항목을 추가한다.
+ *
+ * Throughput 모드에서는 초당 값(ops/s)으로 나오므로 (sqlStatements ÷ 본 결과 score) = 연산 1번당 SQL 수
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class SqlStatementCounter {
+
+    public long sqlStatements;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        sqlStatements = 0;
+    }
+}
@@ -0,0 +1,90 @@
+package jpabook.jpashop.repository;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import jpabook.jpashop.benchmark.JpaBenchmarkSupport;
+import jpabook.jpashop.benchmark.SqlStatementCounter;
+import jpabook.jpashop.repository.category.query.CategoryItemQueryDto;
+import jpabook.jpashop.service.CategoryTreeSnapshot;
+import jpabook.jpashop.service.query.CategoryItemQueryService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * 상품 items개가 있는 카테고리의 상품 목록 한 페이지 (20개, 카테고리 배지 포함)
+ *
+ * ./gradlew jmh -PjmhInclude=CategoryItemPageBenchmark
+ * - leaf : 하위 카테고리가 없는 카테고리 하나에 상품 전체
+ * - parent : 상위 카테고리 아래 하위 카테고리 5개에 나눠서 (상위 카테고리로 조회)
+ * 모든 상품은 배지용 카테고리 하나에도 속한다. (상품당 category_item 2 row)
+ * - firstPage : 첫 페이지
+ * - deepPage : 상품의 80% 지점 다음 페이지 (키셋이라 첫 페이지와 같아야 한다)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CategoryItemPageBenchmark extends JpaBenchmarkSupport {
+
+    private static final long ID_BASE = 1_000_000_000L; //InitDb 등이 이미 받아간 시퀀스 블록과 겹치지 않게
+    private static final int CHILDREN = 5;
+    private static final int PAGE_SIZE = 20;
+
+    @Param({"leaf", "parent"})
+    public String shape;
+
+    @Param({"500000"})
+    public int items;
+
+    private CategoryItemQueryService categoryItemQueryService;
+    private long categoryId;
+    private long deepCursor;
+
+    @Override
+    protected void seed() {
+        JdbcTemplate jdbcTemplate = bean(JdbcTemplate.class);
+        long root = ID_BASE;
+        long badge = ID_BASE + CHILDREN + 1;
+        jdbcTemplate.update("insert into category (category_id, name) values (?, 'root'), (?, 'badge')", root, badge);
+        jdbcTemplate.update("insert into category (category_id, name, parent_id) select x, 'child' || x, ? from system_range(?, ?)",
+                root, root + 1, root + CHILDREN);
+        jdbcTemplate.update("insert into category_path (category_path_id, ancestor_id, descendant_id, depth) select x, ?, x, 1 from system_range(?, ?)",
+                root, root + 1, root + CHILDREN);
+
+        long firstItem = ID_BASE + 100;
+        long lastItem = firstItem + items - 1;
+        jdbcTemplate.update("insert into item (dtype, item_id, name, price, stock_quantity, version, author, isbn)" +
+                " select 'B', x, 'item' || x, 10000, 100, 0, 'author', 'isbn' from system_range(?, ?)", firstItem, lastItem);
+        if ("leaf".equals(shape)) {
+            jdbcTemplate.update("insert into category_item (category_id, item_id) select ?, x from system_range(?, ?)",
+                    root + 1, firstItem, lastItem);
+            categoryId = root + 1;
+        } else {
+            jdbcTemplate.update("insert into category_item (category_id, item_id) select ? + mod(x, ?), x from system_range(?, ?)",
+                    root + 1, CHILDREN, firstItem, lastItem);
+            categoryId = root;
+        }
+        jdbcTemplate.update("insert into category_item (category_id, item_id) select ?, x from system_range(?, ?)",
+                badge, firstItem, lastItem);
+        jdbcTemplate.execute("alter sequence hibernate_sequence restart with " + (lastItem + 1));
+        deepCursor = firstItem + items * 4L / 5;
+    }
+
+    @Override
+    protected void init() {
+        categoryItemQueryService = bean(CategoryItemQueryService.class);
+        bean(CategoryTreeSnapshot.class).refresh();
+    }
+
+    @Benchmark
+    public List<CategoryItemQueryDto> firstPage(SqlStatementCounter counter) {
+        return measure(counter, () -> categoryItemQueryService.findItems(categoryId, null, PAGE_SIZE));
+    }
+
+    @Benchmark
+    public List<CategoryItemQueryDto> deepPage(SqlStatementCounter counter) {
+        return measure(counter, () -> categoryItemQueryService.findItems(categoryId, deepCursor, PAGE_SIZE));
+    }
+}
@@ -0,0 +1,98 @@
+package jpabook.jpashop.repository;
+
+import java.util.concurrent.TimeUnit;
+import jpabook.jpashop.benchmark.JpaBenchmarkSupport;
+import jpabook.jpashop.benchmark.SqlStatementCounter;
+import jpabook.jpashop.domain.Category;
+import jpabook.jpashop.service.CategoryTreeSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * 깊이 depth, 자식 fanOut개인 카테고리 트리 전체(루트 포함 1 + f + ... + f^depth개) 읽기
+ *
+ * ./gradlew jmh -PjmhInclude=CategoryTreeBenchmark
+ * - lazyWalk : 루트를 찾아서 category.child를 따라 내려간다 (default_batch_fetch_size로 단계마다 묶이기는 한다)
+ * - closureSubtree : CategoryRepository#findSubtree - 클로저 테이블로 쿼리 한 번
+ * - snapshot : CategoryTreeSnapshot에서 같은 하위 트리를 찾는다 - DB를 거치지 않는다
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CategoryTreeBenchmark extends JpaBenchmarkSupport {
+
+    @Param({"4"})
+    public int depth;
+
+    @Param({"6"})
+    public int fanOut;
+
+    private CategoryRepository categoryRepository;
+    private CategoryTreeSnapshot categoryTreeSnapshot;
+    private Long rootId;
+
+    @Override
+    protected void seed() {
+        CategoryRepository repository = bean(CategoryRepository.class);
+        rootId = transaction().execute(status -> {
+            Category root = new Category();
+            root.setName("root");
+            repository.save(root);
+            addChildren(repository, root, depth);
+            return root.getId();
+        });
+    }
+
+    private void addChildren(CategoryRepository repository, Category parent, int remaining) {
+        if (remaining == 0) {
+            return;
+        }
+        for (int i = 0; i < fanOut; i++) {
+            Category child = new Category();
+            child.setName(parent.getName() + "-" + i);
+            parent.addChildCategory(child);
+            repository.save(child);
+            addChildren(repository, child, remaining - 1);
+        }
+    }
+
+    @Override
+    protected void init() {
+        categoryRepository = bean(CategoryRepository.class);
+        categoryTreeSnapshot = bean(CategoryTreeSnapshot.class);
+        categoryTreeSnapshot.refresh();
+    }
+
+    @Benchmark
+    public int lazyWalk(SqlStatementCounter counter) {
+        return measure(counter, () -> count(categoryRepository.findOne(rootId)));
+    }
+
+    private int count(Category category) {
+        int count = 1;
+        for (Category child : category.getChild()) {
+            count += count(child);
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int closureSubtree(SqlStatementCounter counter) {
+        return measure(counter, () -> categoryRepository.findSubtree(rootId).size());
+    }
+
+    @Benchmark
+    public int snapshot() {
+        return count(categoryTreeSnapshot.getTree().find(rootId).get());
+    }
+
+    private int count(CategoryTree.Node node) {
+        int count = 1;
+        for (CategoryTree.Node child : node.getChildren()) {
+            count += count(child);
+        }
+        return count;
+    }
+}
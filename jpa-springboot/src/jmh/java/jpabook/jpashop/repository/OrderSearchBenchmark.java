@@ -0,0 +1,66 @@
+package jpabook.jpashop.repository;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import jpabook.jpashop.benchmark.OrderDataBenchmarkSupport;
+import jpabook.jpashop.benchmark.SqlStatementCounter;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.OrderStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * 주문 검색 - 문자열 JPQL(findAllByString) vs Criteria(findAllByCriteria) vs 모양별 named query(findAllBySearch)
+ *
+ * ./gradlew jmh -PjmhInclude=OrderSearchBenchmark
+ * 결과가 적은 검색(0 ~ 10건)으로 쿼리를 만드는 비용이 드러나게 한다. -prof gc의 gc.alloc.rate.norm(연산 1번당 할당 바이트)을 같이 볼 것
+ * - status : 취소 주문 (0건)
+ * - name : 회원 member7의 주문 (10건)
+ * - statusAndName : 회원 member7의 주문 상태 주문 (10건)
+ * Criteria는 이름을 %name%로 검색하므로 member7x도 포함될 수 있지만 회원이 100명이라 member7 하나뿐이다.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class OrderSearchBenchmark extends OrderDataBenchmarkSupport {
+
+    @Param({"status", "name", "statusAndName"})
+    public String shape;
+
+    private OrderRepository orderRepository;
+    private OrderSearch orderSearch;
+
+    @Override
+    protected void init() {
+        orderRepository = bean(OrderRepository.class);
+        orderSearch = new OrderSearch();
+        switch (shape) {
+            case "status":
+                orderSearch.setOrderStatus(OrderStatus.CANCEL);
+                break;
+            case "name":
+                orderSearch.setMemberName("member7");
+                break;
+            default:
+                orderSearch.setOrderStatus(OrderStatus.ORDER);
+                orderSearch.setMemberName("member7");
+        }
+    }
+
+    @Benchmark
+    public List<Order> string(SqlStatementCounter counter) {
+        return measure(counter, () -> orderRepository.findAllByString(orderSearch));
+    }
+
+    @Benchmark
+    public List<Order> criteria(SqlStatementCounter counter) {
+        return measure(counter, () -> orderRepository.findAllByCriteria(orderSearch));
+    }
+
+    @Benchmark
+    public List<Order> namedQuery(SqlStatementCounter counter) {
+        return measure(counter, () -> orderRepository.findAllBySearch(orderSearch));
+    }
+}
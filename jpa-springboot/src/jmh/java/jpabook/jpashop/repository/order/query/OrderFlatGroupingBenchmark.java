@@ -0,0 +1,67 @@
+package jpabook.jpashop.repository.order.query;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.mapping;
+import static java.util.stream.Collectors.toList;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.OrderStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * ordersV6의 기존 groupingBy 방식과 OrderFlatRunCollector 비교 (flat row 100만 건)
+ *
+ * ./gradlew jmh -PjmhInclude=OrderFlatGrouping
+ * -prof gc 결과의 gc.alloc.rate.norm(연산 1번당 할당 바이트)을 같이 볼 것
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class OrderFlatGroupingBenchmark {
+
+    @Param({"1000000"})
+    int rows;
+
+    @Param({"1", "4", "20"})
+    int itemsPerOrder;
+
+    List<OrderFlatDto> flats;
+
+    @Setup
+    public void setUp() {
+        flats = new ArrayList<>(rows);
+        Address address = new Address("서울", "강가", "123-123");
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < rows; i++) {
+            long orderId = i / itemsPerOrder + 1;
+            flats.add(new OrderFlatDto(orderId, "member" + orderId, now, OrderStatus.ORDER, address, "item" + i, 10000, 1));
+        }
+    }
+
+    @Benchmark
+    public List<OrderQueryDto> groupingBy_hashMap() {
+        return flats.stream()
+                .collect(groupingBy(o -> new OrderQueryDto(o.getOrderId(), o.getName(), o.getOrderDate(), o.getOrderStatus(), o.getAddress()),
+                        mapping(o -> new OrderItemQueryDto(o.getOrderId(), o.getItemName(), o.getOrderPrice(), o.getCount()), toList())
+                )).entrySet().stream()
+                .map(e -> new OrderQueryDto(e.getKey().getOrderId(), e.getKey().getName(), e.getKey().getOrderDate(), e.getKey().getOrderStatus(), e.getKey().getAddress(), e.getValue()))
+                .collect(toList());
+    }
+
+    @Benchmark
+    public List<OrderQueryDto> orderedRun() {
+        return flats.stream()
+                .collect(OrderFlatRunCollector.toOrderQueryDtos());
+    }
+}
@@ -0,0 +1,88 @@
+package jpabook.jpashop.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.persistence.EntityManager;
+import jpabook.jpashop.benchmark.JpaBenchmarkSupport;
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * 상품 하나에 주문이 몰릴 때의 처리량 - 조건부 update(rowUpdate) vs 메모리 재고(ledger, HotStockLedger)
+ *
+ * ./gradlew jmh -PjmhInclude=HotStockLedgerBenchmark
+ * 매 iteration이 끝나면 pending을 반영하고 성공한 주문 수와 DB에서 빠진 재고가 같은지 출력한다.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(8)
+public class HotStockLedgerBenchmark extends JpaBenchmarkSupport {
+
+    private static final int STOCK = Integer.MAX_VALUE;
+
+    @Param({"rowUpdate", "ledger"})
+    public String mode;
+
+    private OrderService orderService;
+    private HotStockLedger ledger;
+    private EntityManager em;
+    private Long memberId;
+    private Long itemId;
+    private final AtomicLong placed = new AtomicLong();
+
+    @Override
+    protected void seed() {
+        EntityManager em = bean(EntityManager.class);
+        transaction().execute(status -> {
+            Member member = new Member();
+            member.setName("benchmark");
+            member.setAddress(new Address("서울", "강가", "123-123"));
+            em.persist(member);
+            memberId = member.getId();
+
+            Book book = new Book();
+            book.setName("hot");
+            book.setPrice(10000);
+            book.setStockQuantity(STOCK);
+            em.persist(book);
+            itemId = book.getId();
+            return null;
+        });
+    }
+
+    @Override
+    protected void init() {
+        orderService = bean(OrderService.class);
+        ledger = bean(HotStockLedger.class);
+        em = bean(EntityManager.class);
+        if (mode.equals("ledger")) {
+            ledger.enable(itemId);
+        }
+    }
+
+    @Benchmark
+    public Long order() {
+        Long orderId = orderService.order(memberId, itemId, 1);
+        placed.incrementAndGet();
+        return orderId;
+    }
+
+    @TearDown(Level.Iteration)
+    public void verify() {
+        if (ledger.isHot(itemId)) {
+            ledger.flush(itemId);
+        }
+        long decremented = transaction().execute(status -> (long) STOCK - em.find(Item.class, itemId).getStockQuantity());
+        System.out.printf("%n주문 %d건, DB에서 차감된 재고 %d%n", placed.get(), decremented);
+    }
+}
@@ -0,0 +1,66 @@
+package jpabook.jpashop.service;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import jpabook.jpashop.benchmark.JpaBenchmarkSupport;
+import jpabook.jpashop.benchmark.SqlStatementCounter;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.repository.ItemListPage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * 상품 items개일 때 상품 목록 화면 조회
+ *
+ * ./gradlew jmh -PjmhInclude=ItemListBenchmark -PjmhArgs="-prof gc"
+ * - findAll : 기존 ItemController - 모든 상품 엔티티 (ItemService#findItems)
+ * - firstPage : 목록 컬럼 DTO 20개 (ItemService#findItemPage)
+ * - deepPage : 상품의 80% 지점 다음 20개
+ * -prof gc의 gc.alloc.rate.norm(B/op)이 요청 하나의 메모리다.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ItemListBenchmark extends JpaBenchmarkSupport {
+
+    private static final long ID_BASE = 1_000_000_000L; //InitDb 등이 이미 받아간 시퀀스 블록과 겹치지 않게
+    private static final int PAGE_SIZE = 20;
+
+    @Param({"1000000"})
+    public int items;
+
+    private ItemService itemService;
+    private long deepCursor;
+
+    @Override
+    protected void seed() {
+        JdbcTemplate jdbcTemplate = bean(JdbcTemplate.class);
+        jdbcTemplate.update("insert into item (dtype, item_id, name, price, stock_quantity, version, author, isbn)" +
+                " select 'B', x, 'item' || x, 10000, 100, 0, 'author', 'isbn' from system_range(?, ?)", ID_BASE, ID_BASE + items - 1);
+        jdbcTemplate.execute("alter sequence hibernate_sequence restart with " + (ID_BASE + items));
+        deepCursor = ID_BASE + items * 4L / 5;
+    }
+
+    @Override
+    protected void init() {
+        itemService = bean(ItemService.class);
+    }
+
+    @Benchmark
+    public List<Item> findAll(SqlStatementCounter counter) {
+        return measure(counter, () -> itemService.findItems());
+    }
+
+    @Benchmark
+    public ItemListPage firstPage(SqlStatementCounter counter) {
+        return measure(counter, () -> itemService.findItemPage(null, null, PAGE_SIZE));
+    }
+
+    @Benchmark
+    public ItemListPage deepPage(SqlStatementCounter counter) {
+        return measure(counter, () -> itemService.findItemPage(deepCursor, null, PAGE_SIZE));
+    }
+}
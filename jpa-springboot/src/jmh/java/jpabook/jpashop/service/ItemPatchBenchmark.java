@@ -0,0 +1,129 @@
+package jpabook.jpashop.service;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import javax.persistence.EntityManager;
+import jpabook.jpashop.benchmark.JpaBenchmarkSupport;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.repository.ItemPatch;
+import jpabook.jpashop.sql.SqlStatementContext;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 상품 가격 하나만 바꿀 때 수정 방식별 처리량과 DB로 보내는 양
+ *
+ * ./gradlew jmh -PjmhInclude=ItemPatchBenchmark
+ * - merge : 화면에서 받은 상품 전체로 준영속 엔티티를 만들어 em.merge (ItemRepository#save) -> select + update
+ * - dirtyChecking : 버전 없이 PATCH -> 조회 후 변경 감지 select + update
+ * - versionedPatch : 버전과 함께 PATCH -> update 한 번 (ItemRepository#patch)
+ *
+ * 보조 결과 (연산 1번당 값 = 보조 결과 ÷ 본 결과 score)
+ * - statements, selects : 실행된 SQL 수
+ * - updatedColumns : update의 set 절에 들어간 컬럼 수 (한 row에 다시 쓰는 값의 수)
+ * - sqlBytes : 보낸 SQL 문자열 길이 (파라미터 값 제외)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ItemPatchBenchmark extends JpaBenchmarkSupport {
+
+    private ItemService itemService;
+    private Long itemId;
+    private long version;
+    private int price;
+
+    @Override
+    protected void seed() {
+        EntityManager em = bean(EntityManager.class);
+        itemId = transaction().execute(status -> {
+            Book book = new Book();
+            book.setName("JPA");
+            book.setPrice(10000);
+            book.setStockQuantity(100);
+            book.setAuthor("김영한");
+            book.setIsbn("1234");
+            em.persist(book);
+            return book.getId();
+        });
+        version = transaction().execute(status -> em.find(Book.class, itemId).getVersion());
+    }
+
+    @Override
+    protected void init() {
+        itemService = bean(ItemService.class);
+    }
+
+    @Benchmark
+    public long merge(WriteCounter counter) {
+        Book book = new Book();
+        book.setId(itemId);
+        book.setVersion(version);
+        book.setName("JPA");
+        book.setPrice(++price);
+        book.setStockQuantity(100);
+        book.setAuthor("김영한");
+        book.setIsbn("1234");
+        counter.record(() -> {
+            itemService.saveItem(book);
+            return null;
+        });
+        return ++version;
+    }
+
+    @Benchmark
+    public long dirtyChecking(WriteCounter counter) {
+        version = counter.record(() -> itemService.patchItem(itemId, null, new ItemPatch(null, ++price, null)));
+        return version;
+    }
+
+    @Benchmark
+    public long versionedPatch(WriteCounter counter) {
+        version = counter.record(() -> itemService.patchItem(itemId, version, new ItemPatch(null, ++price, null)));
+        return version;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class WriteCounter {
+
+        public long statements;
+        public long selects;
+        public long updatedColumns;
+        public long sqlBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            statements = 0;
+            selects = 0;
+            updatedColumns = 0;
+            sqlBytes = 0;
+        }
+
+        <T> T record(Supplier<T> operation) {
+            SqlStatementContext.begin();
+            try {
+                return operation.get();
+            } finally {
+                SqlStatementContext context = SqlStatementContext.end();
+                statements += context.getStatementCount();
+                selects += context.getSelectCount();
+                for (Map.Entry<String, Integer> shape : context.repeatedShapes(1).entrySet()) {
+                    String sql = shape.getKey();
+                    sqlBytes += (long) sql.length() * shape.getValue();
+                    if (sql.startsWith("update")) {
+                        String set = sql.substring(sql.indexOf(" set ") + 5, sql.indexOf(" where "));
+                        updatedColumns += (long) set.split(",").length * shape.getValue();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package jpabook.jpashop.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import jpabook.jpashop.benchmark.JpaBenchmarkSupport;
+import jpabook.jpashop.benchmark.SqlStatementCounter;
+import jpabook.jpashop.domain.Member;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * 회원 members명이 있을 때 회원 가입 처리량 - MemberNameIndex(Bloom filter) vs 매번 DB 조회
+ *
+ * ./gradlew jmh -PjmhInclude=MemberJoinBenchmark
+ * - joinNewName : 처음 보는 이름으로 가입. index = true 이면 중복 검사에서 DB를 조회하지 않는다.
+ * - joinDuplicate : 이미 있는 이름으로 가입 시도. 어느 쪽이든 DB를 조회하고 IllegalStateException
+ * 회원은 JPA를 거치지 않고 H2의 system_range로 한 번에 넣고, 그 후에 인덱스를 다시 채운다.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(4)
+public class MemberJoinBenchmark extends JpaBenchmarkSupport {
+
+    private static final long ID_BASE = 1_000_000_000L; //InitDb 등이 이미 받아간 시퀀스 블록과 겹치지 않게
+
+    @Param({"true", "false"})
+    public boolean index;
+
+    @Param({"1000000"})
+    public int members;
+
+    private MemberService memberService;
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Override
+    protected String[] args() {
+        return new String[]{"--jpashop.member-name-index.enabled=" + index};
+    }
+
+    @Override
+    protected void seed() {
+        JdbcTemplate jdbcTemplate = bean(JdbcTemplate.class);
+        jdbcTemplate.update("insert into member (member_id, name, city) select x, 'member' || x, '서울' from system_range(?, ?)",
+                ID_BASE, ID_BASE + members - 1);
+        jdbcTemplate.execute("alter sequence hibernate_sequence restart with " + (ID_BASE + members));
+    }
+
+    @Override
+    protected void init() {
+        memberService = bean(MemberService.class);
+        bean(MemberNameIndex.class).rebuild();
+    }
+
+    @Benchmark
+    public Long joinNewName(SqlStatementCounter counter) {
+        Member member = new Member();
+        member.setName("new" + sequence.incrementAndGet());
+        return measureWrite(counter, () -> memberService.join(member));
+    }
+
+    @Benchmark
+    public boolean joinDuplicate() {
+        Member member = new Member();
+        member.setName("member" + (ID_BASE + ThreadLocalRandom.current().nextInt(members)));
+        try {
+            memberService.join(member);
+            return false;
+        } catch (IllegalStateException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package jpabook.jpashop.service;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import jpabook.jpashop.benchmark.JpaBenchmarkSupport;
+import jpabook.jpashop.benchmark.SqlStatementCounter;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.repository.OrderRepository;
+import jpabook.jpashop.repository.OrderSearch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * 회원 members명(회원마다 주문 1건)일 때 회원 이름 포함 검색(like '%keyword%')으로 주문 찾기
+ *
+ * ./gradlew jmh -PjmhInclude=MemberNameSearchBenchmark
+ * - likeScan : m.name like '%keyword%' 그대로 조회 (OrderRepository#findAllBySearch) -> member 전체를 읽는다
+ * - trigramIndex : MemberNameTrigramIndex로 회원 id 후보를 찾고 member_id in (후보)로 조회 (OrderService#findOrders)
+ * keyword
+ * - 0123456 : 회원 1명 (member1000123456)
+ * - 12345 : 회원 20명
+ * 회원, 주문은 JPA를 거치지 않고 H2의 system_range로 한 번에 넣고, 그 후에 인덱스를 다시 채운다.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MemberNameSearchBenchmark extends JpaBenchmarkSupport {
+
+    private static final long ID_BASE = 1_000_000_000L; //InitDb 등이 이미 받아간 시퀀스 블록과 겹치지 않게
+
+    @Param({"0123456", "12345"})
+    public String keyword;
+
+    @Param({"1000000"})
+    public int members;
+
+    private OrderService orderService;
+    private OrderRepository orderRepository;
+    private OrderSearch likeSearch;
+    private OrderSearch orderSearch;
+
+    @Override
+    protected void seed() {
+        JdbcTemplate jdbcTemplate = bean(JdbcTemplate.class);
+        jdbcTemplate.update("insert into member (member_id, name, city) select x, 'member' || x, '서울' from system_range(?, ?)",
+                ID_BASE, ID_BASE + members - 1);
+        jdbcTemplate.update("insert into orders (order_id, member_id, order_date, status, total_price) select x + ?, x, now(), 'ORDER', 0 from system_range(?, ?)",
+                members, ID_BASE, ID_BASE + members - 1);
+        jdbcTemplate.execute("alter sequence hibernate_sequence restart with " + (ID_BASE + 2L * members));
+    }
+
+    @Override
+    protected void init() {
+        orderService = bean(OrderService.class);
+        orderRepository = bean(OrderRepository.class);
+        bean(MemberNameTrigramIndex.class).rebuild();
+        likeSearch = new OrderSearch();
+        likeSearch.setMemberName("%" + keyword + "%");
+        orderSearch = new OrderSearch();
+        orderSearch.setMemberName(keyword);
+    }
+
+    @Benchmark
+    public List<Order> likeScan(SqlStatementCounter counter) {
+        return measure(counter, () -> orderRepository.findAllBySearch(likeSearch));
+    }
+
+    @Benchmark
+    public List<Order> trigramIndex(SqlStatementCounter counter) {
+        return measure(counter, () -> orderService.findOrders(orderSearch));
+    }
+}
@@ -0,0 +1,163 @@
+package jpabook.jpashop.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import jpabook.jpashop.benchmark.JpaBenchmarkSupport;
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Delivery;
+import jpabook.jpashop.domain.DeliveryStatus;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.OrderItem;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.dao.ConcurrencyFailureException;
+
+/**
+ * 같은 상품에 동시에 쓰는 스레드(writer) 수에 따른 주문 처리량
+ * - optimistic : @Version + 충돌하면 새 트랜잭션으로 재시도 (RetryingOrderExecutor)
+ * - pessimistic : select ... for update 로 상품 row를 잠그고 차감
+ * - conditionalUpdate : 조건부 update 한 번 (OrderService#order, 비교 기준)
+ *
+ * ./gradlew jmh -PjmhInclude=OrderLockingBenchmark
+ * writer 수는 JMH 스레드 수라서 @Param으로 바꿀 수 없으므로 writers1, writers8, writers64 메서드로 나눴다.
+ * 커넥션 풀(hikari 기본 10개)보다 writer가 많으면 나머지는 커넥션을 기다린다. 비관적 락은 락을 기다리는 동안에도 커넥션을 잡고 있고
+ * 낙관적 락은 백오프 동안 커넥션을 놓는다.
+ * 매 iteration이 끝나면 성공/재시도 소진 수와 충돌률을 출력하고, 재고가 성공한 주문 수만큼만 빠졌는지 확인한다.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class OrderLockingBenchmark extends JpaBenchmarkSupport {
+
+    private static final int STOCK = Integer.MAX_VALUE;
+
+    @Param({"optimistic", "pessimistic", "conditionalUpdate"})
+    public String strategy;
+
+    private OrderService orderService;
+    private RetryingOrderExecutor retryingOrderExecutor;
+    private MeterRegistry meterRegistry;
+    private EntityManager em;
+    private Long memberId;
+    private Long itemId;
+    private final AtomicLong placed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    @Override
+    protected void seed() {
+        EntityManager em = bean(EntityManager.class);
+        transaction().execute(status -> {
+            Member member = new Member();
+            member.setName("benchmark");
+            member.setAddress(new Address("서울", "강가", "123-123"));
+            em.persist(member);
+            memberId = member.getId();
+
+            Book book = new Book();
+            book.setName("contended");
+            book.setPrice(10000);
+            book.setStockQuantity(STOCK);
+            em.persist(book);
+            itemId = book.getId();
+            return null;
+        });
+    }
+
+    @Override
+    protected void init() {
+        orderService = bean(OrderService.class);
+        retryingOrderExecutor = bean(RetryingOrderExecutor.class);
+        meterRegistry = bean(MeterRegistry.class);
+        em = bean(EntityManager.class);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Long writers1() {
+        return order();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Long writers8() {
+        return order();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Long writers64() {
+        return order();
+    }
+
+    private Long order() {
+        try {
+            Long orderId;
+            switch (strategy) {
+                case "optimistic":
+                    orderId = retryingOrderExecutor.execute("benchmark", () -> transaction().execute(status -> place(LockModeType.NONE)));
+                    break;
+                case "pessimistic":
+                    orderId = transaction().execute(status -> place(LockModeType.PESSIMISTIC_WRITE));
+                    break;
+                default:
+                    orderId = orderService.order(memberId, itemId, 1);
+            }
+            placed.incrementAndGet();
+            return orderId;
+        } catch (ConcurrencyFailureException e) {
+            failed.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * 상품을 읽고 item.removeStock으로 차감 (조건부 update 이전의 OrderService#order)
+     * NONE이면 커밋할 때 버전을 비교하고, PESSIMISTIC_WRITE면 조회할 때 row를 잠근다.
+     */
+    private Long place(LockModeType lockMode) {
+        Member member = em.find(Member.class, memberId);
+        Item item = em.find(Item.class, itemId, lockMode);
+
+        Delivery delivery = new Delivery();
+        delivery.setAddress(member.getAddress());
+        delivery.setStatus(DeliveryStatus.READY);
+
+        Order order = Order.createOrder(member, delivery, OrderItem.createOrderItem(item, item.getPrice(), 1));
+        em.persist(order);
+        return order.getId();
+    }
+
+    @TearDown(Level.Iteration)
+    public void report() {
+        long decremented = transaction().execute(status -> {
+            Item item = em.find(Item.class, itemId);
+            long sum = (long) STOCK - item.getStockQuantity();
+            item.setStockQuantity(STOCK);
+            return sum;
+        });
+        double success = attempts("success");
+        double conflict = attempts("conflict");
+        System.out.printf("%n주문 %d건, 실패 %d건, 차감된 재고 %d, 충돌률 %.1f%%%n",
+                placed.get(), failed.get(), decremented, success + conflict == 0 ? 0 : conflict * 100 / (success + conflict));
+        placed.set(0);
+        failed.set(0);
+        meterRegistry.find("jpashop.order.retry.attempts").counters().forEach(meterRegistry::remove);
+    }
+
+    private double attempts(String result) {
+        Counter counter = meterRegistry.find("jpashop.order.retry.attempts").tag("operation", "benchmark").tag("result", result).counter();
+        return counter == null ? 0 : counter.count();
+    }
+}
@@ -0,0 +1,87 @@
+package jpabook.jpashop.service;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import jpabook.jpashop.benchmark.JpaBenchmarkSupport;
+import jpabook.jpashop.benchmark.SqlStatementCounter;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.OrderStatus;
+import jpabook.jpashop.repository.OrderSearch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * 주문 목록 검색 - 최대 1000건 목록(findOrders) vs 20건 페이지(searchOrders)
+ *
+ * ./gradlew jmh -PjmhInclude=OrderPageSearchBenchmark
+ * 회원 1000명, 주문 orders건 (orders가 20으로 나누어 떨어지지 않게 해서 마지막 페이지는 덜 찬다)
+ * - currentList : 지금까지의 목록. 조건에 맞는 주문을 1000건까지 엔티티로 읽는다. 전체 개수는 모른다.
+ * - firstPage : 첫 페이지 + count 쿼리
+ * - lastPage : 마지막 페이지. offset이 커서 앞의 주문을 다 건너뛰어야 하지만 count 쿼리는 생략된다.
+ * shape
+ * - status : 주문 상태 ORDER (전체 주문) -> count 쿼리에 member 조인이 없다
+ * - name : 회원 이름에 member7 포함 (회원 111명의 주문) -> 회원 id 후보로 찾는다 (MemberNameTrigramIndex)
+ * sqlStatements 보조 결과로 count 쿼리가 실행되었는지 본다.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OrderPageSearchBenchmark extends JpaBenchmarkSupport {
+
+    private static final long ID_BASE = 1_000_000_000L; //InitDb 등이 이미 받아간 시퀀스 블록과 겹치지 않게
+    private static final int MEMBERS = 1000;
+    private static final int PAGE_SIZE = 20;
+
+    @Param({"status", "name"})
+    public String shape;
+
+    @Param({"100010"})
+    public int orders;
+
+    private OrderService orderService;
+    private OrderSearch orderSearch;
+    private int lastPage;
+
+    @Override
+    protected void seed() {
+        JdbcTemplate jdbcTemplate = bean(JdbcTemplate.class);
+        jdbcTemplate.update("insert into member (member_id, name, city) select x, 'member' || (x - ?), '서울' from system_range(?, ?)",
+                ID_BASE, ID_BASE, ID_BASE + MEMBERS - 1);
+        jdbcTemplate.update("insert into orders (order_id, member_id, order_date, status, total_price) select x, ? + mod(x, ?), now(), 'ORDER', 0 from system_range(?, ?)",
+                ID_BASE, MEMBERS, ID_BASE + MEMBERS, ID_BASE + MEMBERS + orders - 1);
+        jdbcTemplate.execute("alter sequence hibernate_sequence restart with " + (ID_BASE + MEMBERS + orders));
+    }
+
+    @Override
+    protected void init() {
+        orderService = bean(OrderService.class);
+        bean(MemberNameTrigramIndex.class).rebuild();
+        orderSearch = new OrderSearch();
+        if (shape.equals("status")) {
+            orderSearch.setOrderStatus(OrderStatus.ORDER);
+        } else {
+            orderSearch.setMemberName("member7");
+        }
+        lastPage = transaction().execute(status -> orderService.searchOrders(orderSearch, PageRequest.of(0, PAGE_SIZE)).getTotalPages() - 1);
+    }
+
+    @Benchmark
+    public List<Order> currentList(SqlStatementCounter counter) {
+        return measure(counter, () -> orderService.findOrders(orderSearch));
+    }
+
+    @Benchmark
+    public Page<Order> firstPage(SqlStatementCounter counter) {
+        return measure(counter, () -> orderService.searchOrders(orderSearch, PageRequest.of(0, PAGE_SIZE)));
+    }
+
+    @Benchmark
+    public Page<Order> lastPage(SqlStatementCounter counter) {
+        return measure(counter, () -> orderService.searchOrders(orderSearch, PageRequest.of(lastPage, PAGE_SIZE)));
+    }
+}
@@ -0,0 +1,124 @@
+package jpabook.jpashop.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.persistence.EntityManager;
+import jpabook.jpashop.benchmark.JpaBenchmarkSupport;
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Delivery;
+import jpabook.jpashop.domain.DeliveryStatus;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.OrderItem;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * 동시 주문 처리량 - 조건부 update 재고 차감(OrderService#order) vs 조회 후 변경 감지(item.removeStock)
+ *
+ * ./gradlew jmh -PjmhInclude=StockDecrementBenchmark
+ * hotItems개의 상품에 4개 스레드가 계속 주문을 넣는다. hotItems = 1 이면 모든 주문이 같은 상품에 몰린다. (플래시 세일)
+ * 매 iteration이 끝나면 실제로 차감된 재고와 성공한 주문 수를 비교해서 사라진 차감(lost update) 수를 출력한다.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(4)
+public class StockDecrementBenchmark extends JpaBenchmarkSupport {
+
+    private static final int STOCK = Integer.MAX_VALUE;
+
+    @Param({"1", "64"})
+    public int hotItems;
+
+    private OrderService orderService;
+    private EntityManager em;
+    private Long memberId;
+    private final List<Long> itemIds = new ArrayList<>();
+    private final AtomicLong placed = new AtomicLong();
+
+    @Override
+    protected void seed() {
+        EntityManager em = bean(EntityManager.class);
+        transaction().execute(status -> {
+            Member member = new Member();
+            member.setName("benchmark");
+            member.setAddress(new Address("서울", "강가", "123-123"));
+            em.persist(member);
+            memberId = member.getId();
+
+            for (int i = 0; i < hotItems; i++) {
+                Book book = new Book();
+                book.setName("hot" + i);
+                book.setPrice(10000);
+                book.setStockQuantity(STOCK);
+                em.persist(book);
+                itemIds.add(book.getId());
+            }
+            return null;
+        });
+    }
+
+    @Override
+    protected void init() {
+        orderService = bean(OrderService.class);
+        em = bean(EntityManager.class);
+    }
+
+    @Benchmark
+    public Long conditionalUpdate() {
+        Long orderId = orderService.order(memberId, randomItem(), 1);
+        placed.incrementAndGet();
+        return orderId;
+    }
+
+    /**
+     * 조건부 update 이전의 OrderService#order
+     */
+    @Benchmark
+    public Long readModifyWrite() {
+        Long orderId = transaction().execute(status -> {
+            Member member = em.find(Member.class, memberId);
+            Item item = em.find(Item.class, randomItem());
+
+            Delivery delivery = new Delivery();
+            delivery.setAddress(member.getAddress());
+            delivery.setStatus(DeliveryStatus.READY);
+
+            Order order = Order.createOrder(member, delivery, OrderItem.createOrderItem(item, item.getPrice(), 1));
+            em.persist(order);
+            return order.getId();
+        });
+        placed.incrementAndGet();
+        return orderId;
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportLostUpdates() {
+        long decremented = transaction().execute(status -> {
+            long sum = 0;
+            for (Long itemId : itemIds) {
+                Item item = em.find(Item.class, itemId);
+                sum += STOCK - item.getStockQuantity();
+                item.setStockQuantity(STOCK);
+            }
+            return sum;
+        });
+        System.out.printf("%n주문 %d건, 차감된 재고 %d, lost update %d%n", placed.get(), decremented, placed.get() - decremented);
+        placed.set(0);
+    }
+
+    private Long randomItem() {
+        return itemIds.get(ThreadLocalRandom.current().nextInt(itemIds.size()));
+    }
+}
@@ -0,0 +1,41 @@
+package jpabook.jpashop;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.cache.jcache.internal.JCacheRegionFactory;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+import javax.cache.CacheManager;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * 하이버네이트 2차 캐시 region마다 hit/miss/put/eviction 메트릭을 등록한다.
+ * /actuator/metrics/cache.gets?tag=cache:jpabook.jpashop.domain.Member
+ *
+ * ehcache.xml에서 enable-statistics="true"가 켜져 있어야 값이 집계된다.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class CacheMetricsConfig {
+
+    private final EntityManagerFactory emf;
+    private final MeterRegistry meterRegistry;
+
+    @PostConstruct
+    public void bindSecondLevelCacheMetrics() {
+        RegionFactory regionFactory = emf.unwrap(SessionFactoryImplementor.class).getCache().getRegionFactory();
+        if (!(regionFactory instanceof JCacheRegionFactory)) {
+            return; //2차 캐시를 끈 경우
+        }
+
+        CacheManager cacheManager = ((JCacheRegionFactory) regionFactory).getCacheManager();
+        for (String cacheName : cacheManager.getCacheNames()) {
+            JCacheMetrics.monitor(meterRegistry, cacheManager.getCache(cacheName), Tags.of("cacheManager", "hibernate"));
+        }
+    }
+}
@@ -3,6 +3,7 @@ package jpabook.jpashop;
 import jpabook.jpashop.domain.*;
 import jpabook.jpashop.domain.item.Book;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -17,8 +18,11 @@ import javax.persistence.EntityManager;
  * * userB
  * 	 * SPRING1 BOOK
  * 	 * SPRING2 BOOK
+ *
+ * 부하 테스트용 대용량 데이터는 seed 프로필의 BulkDataSeeder를 사용
  */
 @Component
+@Profile("!seed")
 @RequiredArgsConstructor
 public class InitDb {
 
@@ -0,0 +1,59 @@
+package jpabook.jpashop;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jpabook.jpashop.sql.RowCountingDataSource;
+import jpabook.jpashop.sql.SqlStatementInspector;
+import jpabook.jpashop.sql.SqlStatementInterceptor;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+
+/**
+ * 요청별 SQL 수, row 수 측정 (jpabook.jpashop.sql 참고)
+ * statement_inspector는 application.yml이 아니라 여기서 등록해서 테스트용 application.yml에도 똑같이 적용되게 한다.
+ * jpashop.sql.enabled=false면 inspector, DataSource 래핑, 인터셉터를 모두 등록하지 않는다. (대량 적재 등)
+ */
+@Configuration
+@ConditionalOnProperty(name = "jpashop.sql.enabled", havingValue = "true", matchIfMissing = true)
+public class SqlMonitoringConfig implements WebMvcConfigurer {
+
+    private final MeterRegistry meterRegistry;
+    private final int statementBudget;
+    private final int nPlusOneThreshold;
+
+    public SqlMonitoringConfig(MeterRegistry meterRegistry,
+                               @Value("${jpashop.sql.statement-budget:20}") int statementBudget,
+                               @Value("${jpashop.sql.n-plus-one-threshold:3}") int nPlusOneThreshold) {
+        this.meterRegistry = meterRegistry;
+        this.statementBudget = statementBudget;
+        this.nPlusOneThreshold = nPlusOneThreshold;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer sqlStatementInspectorCustomizer() {
+        return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, new SqlStatementInspector());
+    }
+
+    @Bean
+    public static BeanPostProcessor rowCountingDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return bean instanceof DataSource ? RowCountingDataSource.wrap((DataSource) bean) : bean;
+            }
+        };
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new SqlStatementInterceptor(meterRegistry, statementBudget, nPlusOneThreshold));
+    }
+}
@@ -0,0 +1,41 @@
+package jpabook.jpashop.api;
+
+import java.util.List;
+import jpabook.jpashop.repository.category.query.CategoryItemQueryDto;
+import jpabook.jpashop.service.query.CategoryItemQueryService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequiredArgsConstructor
+public class CategoryApiController {
+
+    private static final int MAX_LIMIT = 100;
+
+    private final CategoryItemQueryService categoryItemQueryService;
+
+    /**
+     * 카테고리(하위 카테고리 포함) 상품 목록 - 키셋 페이징, 페이지 하나에 쿼리 2번 (상품 페이지 + 카테고리 배지)
+     *
+     * - 응답의 nextCursor를 다음 요청의 after로 넘긴다. 더 이상 상품이 없으면 null
+     * - limit은 최대 100. 한 건 더 읽어서 다음 페이지가 있을 때만 nextCursor를 준다.
+     * - 잘못된 커서는 400, 없는 카테고리는 404
+     */
+    @GetMapping("/api/categories/{id}/items")
+    public CursorResult<List<CategoryItemQueryDto>> categoryItems(@PathVariable("id") Long id,
+                                                                  @RequestParam(value = "after", required = false) String after,
+                                                                  @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_LIMIT));
+        List<CategoryItemQueryDto> items = categoryItemQueryService.findItems(id, KeysetCursor.ITEM.decode(after), pageSize + 1);
+        boolean hasNext = items.size() > pageSize;
+        if (hasNext) {
+            items = items.subList(0, pageSize);
+        }
+
+        String nextCursor = hasNext ? KeysetCursor.ITEM.encode(items.get(items.size() - 1).getItemId()) : null;
+        return new CursorResult<>(items, nextCursor);
+    }
+}
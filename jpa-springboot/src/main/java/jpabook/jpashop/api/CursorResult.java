@@ -0,0 +1,14 @@
+package jpabook.jpashop.api;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 키셋 페이징 응답 - nextCursor를 다음 요청의 after로 넘긴다. 더 이상 데이터가 없으면 null (KeysetCursor)
+ */
+@Data
+@AllArgsConstructor
+public class CursorResult<T> {
+    private T data;
+    private String nextCursor;
+}
@@ -0,0 +1,50 @@
+package jpabook.jpashop.api;
+
+import javax.validation.Valid;
+import javax.validation.constraints.PositiveOrZero;
+import jpabook.jpashop.repository.ItemPatch;
+import jpabook.jpashop.service.ItemService;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequiredArgsConstructor
+public class ItemApiController {
+
+    private final ItemService itemService;
+
+    /**
+     * 상품 부분 수정 - 보낸 필드만 바꾼다. (PUT처럼 전체를 보내면 빠진 필드가 null로 덮이는 merge 문제가 없다)
+     *
+     * 조회할 때 받은 version을 같이 보내면 select 없이 update 한 번으로 끝난다. 그 사이 바뀌었으면 409 (ItemVersionConflictException)
+     * 응답의 version으로 다음 수정을 한다.
+     */
+    @PatchMapping("/api/items/{id}")
+    public PatchItemResponse patchItem(@PathVariable("id") Long id, @RequestBody @Valid PatchItemRequest request) {
+        Long version = itemService.patchItem(id, request.getVersion(),
+                new ItemPatch(request.getName(), request.getPrice(), request.getStockQuantity()));
+        return new PatchItemResponse(id, version);
+    }
+
+    @Data
+    static class PatchItemRequest {
+        private Long version;
+        private String name;
+        @PositiveOrZero
+        private Integer price;
+        @PositiveOrZero
+        private Integer stockQuantity;
+    }
+
+    @Data
+    @AllArgsConstructor
+    static class PatchItemResponse {
+        private Long id;
+        private Long version;
+    }
+}
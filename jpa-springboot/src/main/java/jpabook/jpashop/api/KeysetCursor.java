@@ -0,0 +1,48 @@
+package jpabook.jpashop.api;
+
+import jpabook.jpashop.exception.InvalidCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 키셋 페이징에서 클라이언트에게 넘겨주는 커서
+ *
+ * 클라이언트가 order_id, item_id에 의존하지 않도록 내부 값을 그대로 노출하지 않고 Base64로 감싸서 불투명한 문자열로 넘긴다.
+ * 나중에 정렬 기준이 바뀌어도(ex. orderDate + id) API 스펙은 그대로 유지할 수 있다.
+ * 목록마다 접두어가 달라서 주문 커서를 상품 목록에 넘기면 잘못된 커서가 된다. (400)
+ */
+public final class KeysetCursor {
+
+    public static final KeysetCursor ORDER = new KeysetCursor("o:");
+    public static final KeysetCursor ITEM = new KeysetCursor("i:");
+
+    private final String prefix;
+
+    private KeysetCursor(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public String encode(Long id) {
+        if (id == null) {
+            return null;
+        }
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((prefix + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Long decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!raw.startsWith(prefix)) {
+                throw new InvalidCursorException("잘못된 커서입니다.");
+            }
+            return Long.valueOf(raw.substring(prefix.length()));
+        } catch (IllegalArgumentException e) { // NumberFormatException 포함
+            throw new InvalidCursorException("잘못된 커서입니다.", e);
+        }
+    }
+}
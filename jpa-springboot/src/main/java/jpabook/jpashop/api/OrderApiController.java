@@ -1,25 +1,42 @@
 package jpabook.jpashop.api;
 
 
-import static java.util.stream.Collectors.groupingBy;
-import static java.util.stream.Collectors.mapping;
 import static java.util.stream.Collectors.toList;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import javax.servlet.http.HttpServletResponse;
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
 import jpabook.jpashop.domain.Address;
 import jpabook.jpashop.domain.Order;
 import jpabook.jpashop.domain.OrderItem;
 import jpabook.jpashop.domain.OrderStatus;
 import jpabook.jpashop.repository.OrderRepository;
 import jpabook.jpashop.repository.order.query.OrderFlatDto;
-import jpabook.jpashop.repository.order.query.OrderItemQueryDto;
+import jpabook.jpashop.repository.order.query.OrderFlatRunCollector;
 import jpabook.jpashop.repository.order.query.OrderQueryDto;
 import jpabook.jpashop.repository.order.query.OrderQueryRepository;
+import jpabook.jpashop.service.OrderIntakeQueue;
+import jpabook.jpashop.service.OrderLine;
+import jpabook.jpashop.service.RetryingOrderExecutor;
 import jpabook.jpashop.service.query.OrderQueryService;
+import jpabook.jpashop.service.query.OrderQueryStrategyChooser;
+import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -39,8 +56,14 @@ import org.springframework.web.bind.annotation.RestController;
 @RequiredArgsConstructor
 public class OrderApiController { // oneToMany 일 때의 조회 성능 최적화(데이터 뻥튀기 처리 방법)
 
+    private static final int MAX_LIMIT = 100;
+
     private final OrderRepository orderRepository;
     private final OrderQueryRepository orderQueryRepository;
+    private final ObjectMapper objectMapper;
+    private final OrderQueryStrategyChooser orderQueryStrategyChooser;
+    private final RetryingOrderExecutor retryingOrderExecutor;
+    private final OrderIntakeQueue orderIntakeQueue;
 
     /**
      * V1. 엔티티 직접 노출
@@ -152,6 +175,33 @@ public class OrderApiController { // oneToMany 일 때의 조회 성능 최적
         return result;
     }
 
+    /**
+     * #jpa-springboot V3.1을 키셋(seek) 페이징으로 변경 - 페이지가 깊어져도 속도가 일정
+     *
+     * - offset 대신 이전 페이지의 마지막 주문을 가리키는 커서(after)를 받는다.
+     * - toOne 관계는 fetch join, orderItems 컬렉션은 V3.1과 똑같이 default_batch_fetch_size로 in 쿼리 한 번에 가져온다.
+     * - 응답의 nextCursor를 그대로 다음 요청의 after로 넘기면 된다. 더 이상 데이터가 없으면 null
+     * - limit은 최대 100. 한 건 더 읽어서 다음 페이지가 있을 때만 nextCursor를 준다. (마지막 페이지가 꽉 차도 빈 페이지를 한 번 더 요청하지 않는다)
+     */
+    @GetMapping("/api/v3.2/orders")
+    public CursorResult<List<OrderDto>> ordersV3_cursor(@RequestParam(value = "after", required = false) String after,
+                                                      @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_LIMIT));
+        List<Order> orders = orderRepository.findAllWithMemberDeliveryAfter(KeysetCursor.ORDER.decode(after), pageSize + 1);
+        boolean hasNext = orders.size() > pageSize;
+        if (hasNext) {
+            //남는 한 건도 영속 상태라 그대로 두면 초기화 안 된 orderItems가 batch 조회 in 절에 같이 실린다
+            orderRepository.detach(orders.get(pageSize));
+            orders = orders.subList(0, pageSize);
+        }
+        List<OrderDto> result = orders.stream()
+                .map(o -> new OrderDto(o))
+                .collect(toList());
+
+        String nextCursor = hasNext ? KeysetCursor.ORDER.encode(orders.get(orders.size() - 1).getId()) : null;
+        return new CursorResult<>(result, nextCursor);
+    }
+
     /**
      * toMany 관계를 가진 엔티티 조회시 DTO로 바로 가져오기 (1 + N Query)
      *
@@ -187,14 +237,84 @@ public class OrderApiController { // oneToMany 일 때의 조회 성능 최적
     public List<OrderQueryDto> ordersV6() {
         List<OrderFlatDto> flats = orderQueryRepository.findAllByDto_flat();
 
+        //groupingBy(new OrderQueryDto(...))로 HashMap에 묶으면 row마다 key 객체가 생기고 순서도 섞인다.
+        //쿼리에서 order_id로 정렬해서 가져오므로 연속된 row끼리 한 번에 묶는다.
         return flats.stream()
-                .collect(groupingBy(o -> new OrderQueryDto(o.getOrderId(), o.getName(), o.getOrderDate(), o.getOrderStatus(), o.getAddress()),
-                        mapping(o -> new OrderItemQueryDto(o.getOrderId(), o.getItemName(), o.getOrderPrice(), o.getCount()), toList())
-                )).entrySet().stream()
-                .map(e -> new OrderQueryDto(e.getKey().getOrderId(), e.getKey().getName(), e.getKey().getOrderDate(), e.getKey().getOrderStatus(), e.getKey().getAddress(), e.getValue()))
-                .collect(toList());
+                .collect(OrderFlatRunCollector.toOrderQueryDtos());
+    }
+
+    /**
+     * #jpa-springboot V5, V6 중 유리한 쪽을 자동으로 선택
+     *
+     * 위에 적은 것처럼 V5와 V6의 우위는 주문당 주문상품 수(뻥튀기 정도)와 row 크기에 따라 달라진다.
+     * 지금까지의 조회 결과로 통계를 쌓아두고 예상 전송량이 적은 쪽으로 보낸다.
+     * 선택 결과와 통계는 /actuator/orderquerystrategy 에서 확인할 수 있다.
+     */
+    @GetMapping("/api/orders")
+    public List<OrderQueryDto> orders() {
+        List<OrderQueryDto> result = orderQueryStrategyChooser.choose() == OrderQueryStrategyChooser.Strategy.V6_FLAT
+                ? ordersV6()
+                : ordersV5();
+        orderQueryStrategyChooser.record(result);
+        return result;
     }
 
+    /**
+     * #jpa-springboot V6를 스트리밍으로 - 전체 주문 export (NDJSON)
+     *
+     * V6는 뻥튀기된 row 전체를 List로 받은 후에 다시 묶기 때문에 주문이 많아지면 메모리가 터진다.
+     * 여기서는 JDBC 커서로 order_id 순서대로 row를 하나씩 읽으면서 주문 한 건이 완성될 때마다 바로 응답에 한 줄씩 쓴다.
+     * 메모리에는 주문 한 건과 Jackson 버퍼만 남기 때문에 주문 수와 상관없이 힙 사용량이 일정하다.
+     *
+     * - 응답 객체로 감싸지 않고 HttpServletResponse에 직접 쓴다. (List로 반환하면 결국 전부 메모리에 올라간다)
+     * - 매 건마다 flush 하지 않고 Jackson 버퍼가 찰 때마다 내보낸다.
+     */
+    @GetMapping(value = "/api/v6.1/orders", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void ordersV6_stream(HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+
+        ObjectWriter writer = objectMapper.writer()
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .withRootValueSeparator("\n"); //기본 구분자는 공백이라 두 번째 줄부터 공백으로 시작한다
+        try (SequenceWriter lines = writer.writeValues(response.getOutputStream())) {
+            orderQueryService.exportOrders(order -> {
+                try {
+                    lines.write(order);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * 여러 상품 주문 - 장바구니 전체를 주문 하나로 (OrderService#order(Long, List))
+     * 락 충돌은 새 트랜잭션으로 재시도한다. (RetryingOrderExecutor)
+     * 주문 접수 큐가 켜져 있으면 큐에 넣고 그룹 커밋이 끝나면 응답한다. 큐가 가득 차면 429 (OrderIntakeQueue)
+     */
+    @PostMapping("/api/orders")
+    public CompletableFuture<CreateOrderResponse> createOrder(@RequestBody @Valid CreateOrderRequest request) {
+        if (orderIntakeQueue.isEnabled()) {
+            return orderIntakeQueue.submit(request.getMemberId(), request.getLines()).thenApply(CreateOrderResponse::new);
+        }
+        Long id = retryingOrderExecutor.order(request.getMemberId(), request.getLines());
+        return CompletableFuture.completedFuture(new CreateOrderResponse(id));
+    }
+
+    @Data
+    static class CreateOrderRequest {
+        @NotNull
+        private Long memberId;
+        @NotEmpty
+        private List<@Valid OrderLine> lines;
+    }
+
+    @Data
+    @AllArgsConstructor
+    static class CreateOrderResponse {
+        private Long id;
+    }
 
     @Data
     static class OrderDto {
@@ -0,0 +1,26 @@
+package jpabook.jpashop.api;
+
+import jpabook.jpashop.service.query.OrderQueryStrategyChooser;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * /actuator/orderquerystrategy
+ * /api/orders 가 V5, V6 중 무엇을 선택하고 있는지와 그 근거가 된 통계를 보여준다.
+ */
+@Component
+@Endpoint(id = "orderquerystrategy")
+@RequiredArgsConstructor
+public class OrderQueryStrategyEndpoint {
+
+    private final OrderQueryStrategyChooser chooser;
+
+    @ReadOperation
+    public Map<String, Object> strategy() {
+        return chooser.snapshot();
+    }
+}
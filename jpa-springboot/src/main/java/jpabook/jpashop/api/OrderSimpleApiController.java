@@ -105,6 +105,7 @@ public class OrderSimpleApiController { // oneToOne, ManyToOne일 대의 조회
         private LocalDateTime orderDate; //주문시간
         private OrderStatus orderStatus;
         private Address address;
+        private int totalPrice;
 
         public SimpleOrderDto(Order order) {
             orderId = order.getId();
@@ -112,6 +113,7 @@ public class OrderSimpleApiController { // oneToOne, ManyToOne일 대의 조회
             orderDate = order.getOrderDate();
             orderStatus = order.getStatus();
             address = order.getDelivery().getAddress();
+            totalPrice = order.getTotalPrice(); //저장된 값이라 orderItems를 초기화하지 않는다
         }
     }
 
@@ -1,7 +1,7 @@
 package jpabook.jpashop.controller;
 
 import jpabook.jpashop.domain.item.Book;
-import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.repository.ItemListPage;
 import jpabook.jpashop.service.ItemService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Controller;
@@ -10,8 +10,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
-
-import java.util.List;
+import org.springframework.web.bind.annotation.RequestParam;
 
 @Controller
 @RequiredArgsConstructor
@@ -39,10 +38,19 @@ public class ItemController {
         return "redirect:/";
     }
 
+    /**
+     * 상품 목록 - 엔티티 대신 목록 컬럼만 DTO로, 키셋 페이징 (이전/다음)
+     */
     @GetMapping("/items")
-    public String list(Model model) {
-        List<Item> items = itemService.findItems();
-        model.addAttribute("items", items);
+    public String list(@RequestParam(value = "after", required = false) Long after,
+                       @RequestParam(value = "before", required = false) Long before,
+                       @RequestParam(value = "size", defaultValue = "20") int size,
+                       Model model) {
+        int pageSize = Math.max(1, Math.min(size, 100));
+        ItemListPage page = itemService.findItemPage(after, before, pageSize);
+        model.addAttribute("items", page.getItems());
+        model.addAttribute("page", page);
+        model.addAttribute("size", pageSize);
         return "items/itemList";
     }
 
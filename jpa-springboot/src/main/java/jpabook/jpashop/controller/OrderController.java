@@ -6,19 +6,27 @@ import jpabook.jpashop.domain.item.Item;
 import jpabook.jpashop.repository.OrderSearch;
 import jpabook.jpashop.service.ItemService;
 import jpabook.jpashop.service.MemberService;
+import jpabook.jpashop.service.OrderIntakeQueue;
 import jpabook.jpashop.service.OrderService;
+import jpabook.jpashop.service.RetryingOrderExecutor;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.web.PageableDefault;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Controller
 @RequiredArgsConstructor
 public class OrderController {
 
     private final OrderService orderService;
+    private final RetryingOrderExecutor retryingOrderExecutor;
+    private final OrderIntakeQueue orderIntakeQueue;
     private final MemberService memberService;
     private final ItemService itemService;
 
@@ -34,26 +42,37 @@ public class OrderController {
         return "order/orderForm";
     }
 
+    /**
+     * 주문 접수 큐가 켜져 있으면 큐에 넣고 그룹 커밋이 끝나면 응답한다. 큐가 가득 차면 429 (OrderIntakeQueue)
+     */
     @PostMapping("/order")
-    public String order(@RequestParam("memberId") Long memberId,
-                        @RequestParam("itemId") Long itemId,
-                        @RequestParam("count") int count) {
+    public CompletableFuture<String> order(@RequestParam("memberId") Long memberId,
+                                           @RequestParam("itemId") Long itemId,
+                                           @RequestParam("count") int count) {
 
-        orderService.order(memberId, itemId, count);
-        return "redirect:/orders";
+        if (orderIntakeQueue.isEnabled()) {
+            return orderIntakeQueue.submit(memberId, itemId, count).thenApply(orderId -> "redirect:/orders");
+        }
+        retryingOrderExecutor.order(memberId, itemId, count);
+        return CompletableFuture.completedFuture("redirect:/orders");
     }
 
+    /**
+     * 주문 목록 - 최근 주문부터 20건씩 (?page=0부터)
+     */
     @GetMapping("/orders")
-    public String orderList(@ModelAttribute("orderSearch") OrderSearch orderSearch, Model model) {
-        List<Order> orders = orderService.findOrders(orderSearch);
-        model.addAttribute("orders", orders);
+    public String orderList(@ModelAttribute("orderSearch") OrderSearch orderSearch,
+                            @PageableDefault(size = 20) Pageable pageable, Model model) {
+        Page<Order> page = orderService.searchOrders(orderSearch, pageable);
+        model.addAttribute("orders", page.getContent());
+        model.addAttribute("page", page);
 
         return "order/orderList";
     }
 
     @PostMapping("/orders/{orderId}/cancel")
     public String cancelOrder(@PathVariable("orderId") Long orderId) {
-        orderService.cancelOrder(orderId);
+        retryingOrderExecutor.cancelOrder(orderId);
         return "redirect:/orders";
     }
 }
@@ -3,40 +3,80 @@ package jpabook.jpashop.domain;
 import jpabook.jpashop.domain.item.Item;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static javax.persistence.FetchType.*;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Getter @Setter
 public class Category {
 
-    @Id @GeneratedValue
+    @Id @GeneratedValue(generator = "jpashop-id")
     @Column(name = "category_id")
     private Long id;
 
     private String name;
 
+    //이 컬렉션을 건드리면 카테고리의 상품 전체를 한 번에 올린다. 목록 화면은 CategoryItemQueryRepository로 페이징해서 읽는다
     @ManyToMany
     @JoinTable(name = "category_item",
             joinColumns = @JoinColumn(name = "category_id"),
-            inverseJoinColumns = @JoinColumn(name = "item_id"))
+            inverseJoinColumns = @JoinColumn(name = "item_id"),
+            indexes = {
+                    @Index(name = "idx_category_item_category", columnList = "category_id, item_id"), //카테고리의 상품을 item_id 순으로
+                    @Index(name = "idx_category_item_item", columnList = "item_id, category_id") //상품의 카테고리 배지
+            })
     private List<Item> items = new ArrayList<>();
 
     @ManyToOne(fetch = LAZY)
     @JoinColumn(name = "parent_id")
     private Category parent;
 
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE) //컬렉션 캐시는 자식 id 목록만 저장한다
     @OneToMany(mappedBy = "parent")
     private List<Category> child = new ArrayList<>();
 
+    //클로저 테이블 (CategoryPath) - 트리를 읽을 때는 CategoryRepository를 쓰고 이 컬렉션은 addChildCategory에서만 쓴다
+    @OneToMany(mappedBy = "descendant", cascade = CascadeType.PERSIST)
+    private List<CategoryPath> ancestorPaths = new ArrayList<>(); //이 카테고리의 모든 상위 카테고리
+
+    @OneToMany(mappedBy = "ancestor")
+    private List<CategoryPath> descendantPaths = new ArrayList<>(); //이 카테고리의 모든 하위 카테고리
+
     //==연관관계 메서드==//
+    /**
+     * 자식 카테고리 추가 - 자식에 이미 하위 카테고리가 있으면 그 하위 트리 전체를 붙인다.
+     * (이 카테고리와 그 상위 카테고리) x (자식과 그 하위 카테고리) 쌍을 클로저 테이블에 추가한다.
+     * 다른 부모 아래로 옮기는 것은 지원하지 않는다.
+     */
     public void addChildCategory(Category child) {
+        if (child.getParent() != null) {
+            throw new IllegalStateException("이미 상위 카테고리가 있는 카테고리입니다.");
+        }
         this.child.add(child);
         child.setParent(this);
+
+        Map<Category, Integer> ancestors = new LinkedHashMap<>(); //카테고리 -> 이 카테고리까지의 depth
+        ancestors.put(this, 0);
+        ancestorPaths.forEach(path -> ancestors.put(path.getAncestor(), path.getDepth()));
+        Map<Category, Integer> descendants = new LinkedHashMap<>(); //카테고리 -> 자식에서의 depth
+        descendants.put(child, 0);
+        child.getDescendantPaths().forEach(path -> descendants.put(path.getDescendant(), path.getDepth()));
+
+        ancestors.forEach((ancestor, up) -> descendants.forEach((descendant, down) -> {
+            CategoryPath path = new CategoryPath(ancestor, descendant, up + 1 + down);
+            ancestor.getDescendantPaths().add(path);
+            descendant.getAncestorPaths().add(path);
+        }));
     }
 
 }
@@ -0,0 +1,48 @@
+package jpabook.jpashop.domain;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+
+import static javax.persistence.FetchType.*;
+
+/**
+ * #jpa-springboot 카테고리 클로저 테이블 - 상위 카테고리와 그 아래의 모든 하위 카테고리 쌍을 row로 저장한다
+ *
+ * 부모 id만으로(인접 리스트) 트리를 따라가면 노드마다 쿼리가 나간다.
+ * A > B > C 이면 (A, B, 1), (B, C, 1), (A, C, 2) 세 row가 있으므로
+ * - A의 하위 트리 전체 : ancestor = A
+ * - C의 상위 카테고리 전체 : descendant = C
+ * 를 쿼리 한 번으로 찾을 수 있다. (CategoryRepository)
+ *
+ * 자기 자신과의 쌍(depth 0)은 저장하지 않는다. Category#addChildCategory가 만들고 Category를 저장할 때 같이 저장된다.
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_category_path", columnNames = {"ancestor_id", "descendant_id"}),
+        indexes = @Index(name = "idx_category_path_descendant", columnList = "descendant_id, depth"))
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+public class CategoryPath {
+
+    @Id @GeneratedValue(generator = "jpashop-id")
+    @Column(name = "category_path_id")
+    private Long id;
+
+    @ManyToOne(fetch = LAZY)
+    @JoinColumn(name = "ancestor_id")
+    private Category ancestor;
+
+    @ManyToOne(fetch = LAZY)
+    @JoinColumn(name = "descendant_id")
+    private Category descendant;
+
+    private int depth; //ancestor에서 descendant까지 단계 수 (부모 - 자식은 1)
+
+    CategoryPath(Category ancestor, Category descendant, int depth) {
+        this.ancestor = ancestor;
+        this.descendant = descendant;
+        this.depth = depth;
+    }
+}
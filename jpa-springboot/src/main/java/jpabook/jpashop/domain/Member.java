@@ -3,16 +3,35 @@ package jpabook.jpashop.domain;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * #jpa-springboot 2차 캐시 - 자주 읽히고 거의 바뀌지 않는 엔티티에 적용
+ *
+ * 1차 캐시(영속성 컨텍스트)는 트랜잭션 하나 동안만 살아있지만 2차 캐시는 애플리케이션 전체에서 공유된다.
+ * em.find()는 영속성 컨텍스트 -> 2차 캐시 -> DB 순서로 찾기 때문에 캐시에 있으면 SQL이 나가지 않는다.
+ * JPQL은 항상 DB로 가므로 쿼리 결과까지 캐시하려면 쿼리 캐시를 따로 켜야 한다. (ItemRepository#findAll)
+ *
+ * 동시성 전략
+ * - READ_ONLY: 수정 불가. 가장 빠름
+ * - NONSTRICT_READ_WRITE: 락 없이 수정 시 캐시 무효화. 아주 잠깐 오래된 값을 읽을 수 있음
+ * - READ_WRITE: soft lock으로 커밋 전의 값이 다른 트랜잭션에 보이지 않게 함. 수정이 있는 엔티티의 기본 선택
+ *
+ * 설정: application.yml의 hibernate.cache.*, resources/ehcache.xml
+ */
 @Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_member_name", columnNames = "name")) //중복 가입 경합은 DB가 막는다 (MemberNameIndex)
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE) //회원 이름 수정이 있으므로 READ_WRITE
 @Getter @Setter
 public class Member {
 
-    @Id @GeneratedValue
+    @Id @GeneratedValue(generator = "jpashop-id")
     @Column(name = "member_id") // 테이블의 id는 관례상 테이블명 + id를 많이 사용, 타입이 없어 구분이 힘들기 때문에
     private Long id;
 
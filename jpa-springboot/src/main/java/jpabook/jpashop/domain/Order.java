@@ -10,6 +10,7 @@ import javax.persistence.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static javax.persistence.FetchType.*;
 
@@ -19,7 +20,7 @@ import static javax.persistence.FetchType.*;
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 public class Order {
 
-    @Id @GeneratedValue
+    @Id @GeneratedValue(generator = "jpashop-id")
     @Column(name = "order_id")
     private Long id;
 
@@ -39,6 +40,16 @@ public class Order {
     @Enumerated(EnumType.STRING)
     private OrderStatus status; //주문상태 [ORDER, CANCEL]
 
+    /**
+     * #jpa-springboot 전체 주문 가격 - 주문상품마다 가격 * 수량을 더한 값을 orders에 같이 저장해 둔다 (반정규화)
+     *
+     * 주문 목록에서 총액을 보여주려고 지연 로딩 컬렉션(orderItems)을 읽으면 주문마다 쿼리가 나가고(N + 1),
+     * 컬렉션을 fetch join 하면 페이징을 할 수 없다. 저장해 두면 orders row 하나로 끝난다.
+     * addOrderItem이 주문상품을 추가할 때 더한다. 취소해도 주문 금액은 그대로 둔다.
+     * JDBC로 주문을 넣는 곳(BulkDataSeeder)도 같이 넣어야 하고, 맞는지는 OrderTotalPriceChecker가 주기적으로 확인한다.
+     */
+    private int totalPrice;
+
     //==연관관계 메서드==//
     public void setMember(Member member) {
         this.member = member;
@@ -48,6 +59,7 @@ public class Order {
     public void addOrderItem(OrderItem orderItem) {
         orderItems.add(orderItem);
         orderItem.setOrder(this);
+        totalPrice += orderItem.getTotalPrice();
     }
 
     public void setDelivery(Delivery delivery) {
@@ -73,26 +85,21 @@ public class Order {
      * 주문 취소
      */
     public void cancel() {
+        cancel(OrderItem::cancel);
+    }
+
+    /**
+     * 주문 취소 - 주문상품의 재고 복구 방법을 지정 (ex. 핫 상품은 HotStockLedger로 복구)
+     */
+    public void cancel(Consumer<OrderItem> restoreStock) {
         if (delivery.getStatus() == DeliveryStatus.COMP) {
             throw new IllegalStateException("이미 배송완료된 상품은 취소가 불가능합니다.");
         }
 
         this.setStatus(OrderStatus.CANCEL);
         for (OrderItem orderItem : orderItems) {
-            orderItem.cancel();
-        }
-    }
-
-    //==조회 로직==//
-    /**
-     * 전체 주문 가격 조회
-     */
-    public int getTotalPrice() {
-        int totalPrice = 0;
-        for (OrderItem orderItem : orderItems) {
-            totalPrice += orderItem.getTotalPrice();
+            restoreStock.accept(orderItem);
         }
-        return totalPrice;
     }
 
 }
@@ -16,7 +16,7 @@ import static javax.persistence.FetchType.*;
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 public class OrderItem {
 
-    @Id @GeneratedValue
+    @Id @GeneratedValue(generator = "jpashop-id")
     @Column(name = "order_item_id")
     private Long id;
 
@@ -32,14 +32,22 @@ public class OrderItem {
     private int orderPrice; //주문 가격
     private int count; //주문 수량
 
+    private boolean stockPending; //핫 상품 주문이라 아직 item.stock_quantity에서 빠지지 않은 수량 (HotStockLedger)
+
     //==생성 메서드==//
     public static OrderItem createOrderItem(Item item, int orderPrice, int count) {
+        item.removeStock(count);
+        return createReservedOrderItem(item, orderPrice, count);
+    }
+
+    /**
+     * 재고를 이미 차감한 경우 (ItemRepository#reserveStock)
+     */
+    public static OrderItem createReservedOrderItem(Item item, int orderPrice, int count) {
         OrderItem orderItem = new OrderItem();
         orderItem.setItem(item);
         orderItem.setOrderPrice(orderPrice);
         orderItem.setCount(count);
-
-        item.removeStock(count);
         return orderItem;
     }
 
@@ -0,0 +1,43 @@
+package jpabook.jpashop.domain;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.id.enhanced.StandardOptimizerDescriptor;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.util.Properties;
+
+/**
+ * #jpa-springboot id는 시퀀스에서 한 번에 한 블록씩 받아오자 (pooled-lo)
+ *
+ * 그냥 @GeneratedValue(AUTO)는 allocationSize 1인 hibernate_sequence를 쓰기 때문에 persist 할 때마다 "call next value for" 왕복이 한 번씩 생긴다.
+ * IDENTITY는 더 나쁘다. insert를 해야 id를 알 수 있으므로 persist 하는 순간 insert가 나가고 JDBC batch로 묶을 수가 없다.
+ *
+ * 여기서는 hibernate_sequence를 block-size씩 증가시키고 받은 값 v부터 v + block-size - 1 까지를 메모리에서 나눠준다. (pooled-lo)
+ * - 시퀀스 왕복은 엔티티 block-size개당 한 번
+ * - id를 미리 알고 있으므로 insert는 flush 할 때 테이블별로 모아서 JDBC batch로 보낸다. (hibernate.jdbc.batch_size, order_inserts)
+ * - 모든 엔티티가 시퀀스 하나를 같이 쓰므로 엔티티 종류가 달라도 id가 겹치지 않는다. (BulkDataSeeder가 이 성질을 이용한다)
+ * - pooled(hi)가 아니라 pooled-lo인 이유: 시퀀스 값이 블록의 시작이라 시퀀스를 "최대 id + 1"로 옮기기만 하면 이미 있는 id와 겹치지 않는다.
+ *   서버가 재시작되면 받아두고 못 쓴 id는 버려진다. (id에 빈 구간이 생기는 것은 문제가 아니다)
+ *
+ * block-size는 spring.jpa.properties.jpashop.id.block-size (기본 50, 1이면 블록 없이 매번 시퀀스 호출)
+ * 시퀀스의 increment by는 DDL을 만들 때 정해지므로 운영 DB에서 바꿀 때는 시퀀스도 같이 바꿔야 한다.
+ */
+public class PooledSequenceGenerator extends SequenceStyleGenerator {
+
+    public static final String BLOCK_SIZE = "jpashop.id.block-size";
+    public static final int DEFAULT_BLOCK_SIZE = 50;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        int blockSize = ConfigurationHelper.getInt(BLOCK_SIZE,
+                serviceRegistry.getService(ConfigurationService.class).getSettings(), DEFAULT_BLOCK_SIZE);
+        params.setProperty(SEQUENCE_PARAM, DEF_SEQUENCE_NAME); //엔티티마다 따로 만들지 않고 hibernate_sequence 하나를 같이 쓴다
+        params.setProperty(INCREMENT_PARAM, String.valueOf(blockSize));
+        params.setProperty(OPT_PARAM, blockSize > 1 ? StandardOptimizerDescriptor.POOLED_LO.getExternalName() : StandardOptimizerDescriptor.NONE.getExternalName());
+        super.configure(type, params, serviceRegistry);
+    }
+}
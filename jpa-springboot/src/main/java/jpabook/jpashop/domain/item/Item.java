@@ -5,19 +5,25 @@ import jpabook.jpashop.exception.NotEnoughStockException;
 import lombok.Getter;
 import lombok.Setter;
 import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
 
 import javax.persistence.*;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE) //재고가 계속 바뀌므로 READ_WRITE, Book/Album/Movie는 루트의 캐시 설정을 상속받는다
 @Inheritance(strategy = InheritanceType.SINGLE_TABLE)
 @DiscriminatorColumn(name = "dtype")
+@DynamicUpdate //변경 감지 update에 바뀐 컬럼만 넣는다. 싱글 테이블이라 Book/Album/Movie 컬럼까지 매번 다시 쓰지 않도록 (하위 엔티티에도 붙여야 한다)
 @Getter @Setter
 public abstract class Item {
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(generator = "jpashop-id")
     @Column(name = "item_id")
     private Long id;
 
@@ -25,6 +31,14 @@ public abstract class Item {
     private int price;
     private int stockQuantity;
 
+    /**
+     * 낙관적 락 - 변경 감지로 update 할 때 where version = ? 을 붙이고 1 올린다. 그 사이 다른 트랜잭션이 바꿨으면
+     * ObjectOptimisticLockingFailureException (RetryingOrderExecutor가 새 트랜잭션으로 재시도한다)
+     * 재고 벌크 update(ItemRepository)도 version = version + 1로 버전을 올려서 변경 감지 update가 차감을 덮어쓰지 못하게 한다.
+     */
+    @Version
+    private Long version;
+
     @ManyToMany(mappedBy = "items")
     private List<Category> categories = new ArrayList<>();
 
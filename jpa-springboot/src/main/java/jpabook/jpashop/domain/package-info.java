@@ -0,0 +1,8 @@
+/**
+ * 모든 엔티티의 id는 @GeneratedValue(generator = "jpashop-id")로 PooledSequenceGenerator에서 받는다.
+ * 패키지 레벨의 생성기는 하이버네이트 전역이므로 하위 패키지(item)에서도 쓸 수 있다.
+ */
+@GenericGenerator(name = "jpashop-id", strategy = "jpabook.jpashop.domain.PooledSequenceGenerator")
+package jpabook.jpashop.domain;
+
+import org.hibernate.annotations.GenericGenerator;
@@ -0,0 +1,17 @@
+package jpabook.jpashop.exception;
+
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * 핫 상품인지 확인한 후 메모리 재고를 차감하기 전에 핫 상품 지정이 해제되었다. (HotStockLedger#disable)
+ * 락 충돌처럼 새 트랜잭션으로 다시 시도하면 조건부 update 경로로 주문된다. (RetryingOrderExecutor)
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class HotStockChangedException extends ConcurrencyFailureException {
+
+    public HotStockChangedException(String message) {
+        super(message);
+    }
+}
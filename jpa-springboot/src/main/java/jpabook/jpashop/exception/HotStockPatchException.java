@@ -0,0 +1,15 @@
+package jpabook.jpashop.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * 핫 상품의 재고는 메모리(HotStockLedger)에서 차감되므로 DB 재고를 직접 바꿀 수 없다. 핫 상품 지정을 해제한 후 수정해야 한다.
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class HotStockPatchException extends RuntimeException {
+
+    public HotStockPatchException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,27 @@
+package jpabook.jpashop.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * 클라이언트가 보낸 상품 버전이 현재 버전과 다르다. (그 사이 주문, 다른 수정이 있었다) 다시 조회해서 새 버전으로 수정해야 한다.
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class ItemVersionConflictException extends RuntimeException {
+
+    public ItemVersionConflictException() {
+        super();
+    }
+
+    public ItemVersionConflictException(String message) {
+        super(message);
+    }
+
+    public ItemVersionConflictException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public ItemVersionConflictException(Throwable cause) {
+        super(cause);
+    }
+}
@@ -0,0 +1,20 @@
+package jpabook.jpashop.repository;
+
+import lombok.Data;
+
+/**
+ * 트리를 만들 때 필요한 카테고리 컬럼만 (CategoryRepository - 엔티티로 조회하지 않는다)
+ */
+@Data
+public class CategoryQueryDto {
+
+    private Long categoryId;
+    private String name;
+    private Long parentId; //루트는 null
+
+    public CategoryQueryDto(Long categoryId, String name, Long parentId) {
+        this.categoryId = categoryId;
+        this.name = name;
+        this.parentId = parentId;
+    }
+}
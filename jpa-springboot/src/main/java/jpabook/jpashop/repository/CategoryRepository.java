@@ -0,0 +1,67 @@
+package jpabook.jpashop.repository;
+
+import jpabook.jpashop.domain.Category;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+/**
+ * #jpa-springboot 카테고리 트리는 클로저 테이블(CategoryPath)로 한 번에 읽자
+ *
+ * category.child를 따라가면 깊이 d, 자식 f개인 트리에서 노드마다 쿼리가 나간다. (1 + f + f^2 + ... )
+ * 클로저 테이블에는 모든 (상위, 하위) 쌍이 있으므로 하위 트리 전체, 상위 카테고리 전체가 쿼리 한 번이다.
+ * 트리 모양은 각 카테고리의 parent_id로 메모리에서 조립한다. (CategoryTree)
+ * 트리에는 id, 이름, 부모 id만 있으면 되므로 엔티티 대신 DTO로 조회한다. (노드 수천 개를 영속성 컨텍스트에 올리는 비용이 SQL보다 크다)
+ */
+@Repository
+@RequiredArgsConstructor
+public class CategoryRepository {
+
+    private final EntityManager em;
+
+    public void save(Category category) {
+        em.persist(category);
+    }
+
+    public Category findOne(Long id) {
+        return em.find(Category.class, id);
+    }
+
+    /**
+     * 모든 카테고리를 트리로 (CategoryTreeSnapshot)
+     */
+    public CategoryTree findTree() {
+        return CategoryTree.of(em.createQuery(
+                "select new jpabook.jpashop.repository.CategoryQueryDto(c.id, c.name, c.parent.id)" +
+                        " from Category c", CategoryQueryDto.class)
+                .getResultList());
+    }
+
+    /**
+     * categoryId와 그 아래의 모든 카테고리를 트리로 - 쿼리 한 번
+     */
+    public CategoryTree findSubtree(Long categoryId) {
+        List<CategoryQueryDto> categories = em.createQuery(
+                "select new jpabook.jpashop.repository.CategoryQueryDto(c.id, c.name, c.parent.id)" +
+                        " from Category c" +
+                        " where c.id = :id" +
+                        " or c.id in (select p.descendant.id from CategoryPath p where p.ancestor.id = :id)", CategoryQueryDto.class)
+                .setParameter("id", categoryId)
+                .getResultList();
+        return CategoryTree.of(categories);
+    }
+
+    /**
+     * categoryId의 모든 상위 카테고리 - 루트부터 부모 순서, 쿼리 한 번
+     */
+    public List<Category> findAncestors(Long categoryId) {
+        return em.createQuery(
+                "select a from CategoryPath p join p.ancestor a" +
+                        " where p.descendant.id = :id" +
+                        " order by p.depth desc", Category.class)
+                .setParameter("id", categoryId)
+                .getResultList();
+    }
+}
@@ -0,0 +1,107 @@
+package jpabook.jpashop.repository;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * 메모리에서 조립한 카테고리 트리 (읽기 전용)
+ *
+ * 엔티티의 child 컬렉션을 따라가면 노드마다 지연 로딩 쿼리가 나가므로,
+ * 한 번에 조회한 카테고리(id, 이름, 부모 id)들을 부모 id로 묶어서 만든다. 만든 후에는 바뀌지 않으므로 여러 스레드가 같이 읽어도 된다.
+ */
+public class CategoryTree {
+
+    private final List<Node> roots;
+    private final Map<Long, Node> nodes;
+
+    private CategoryTree(List<Node> roots, Map<Long, Node> nodes) {
+        this.roots = roots;
+        this.nodes = nodes;
+    }
+
+    /**
+     * @param categories 트리를 만들 카테고리. 부모가 목록에 없는 카테고리가 루트가 된다.
+     */
+    public static CategoryTree of(List<CategoryQueryDto> categories) {
+        Map<Long, List<CategoryQueryDto>> childrenByParentId = new HashMap<>();
+        List<CategoryQueryDto> roots = new ArrayList<>();
+        Set<Long> ids = new HashSet<>();
+        categories.forEach(category -> ids.add(category.getCategoryId()));
+        for (CategoryQueryDto category : categories) {
+            Long parentId = category.getParentId();
+            if (parentId == null || !ids.contains(parentId)) {
+                roots.add(category);
+            } else {
+                childrenByParentId.computeIfAbsent(parentId, key -> new ArrayList<>()).add(category);
+            }
+        }
+
+        Map<Long, Node> nodes = new HashMap<>();
+        List<Node> rootNodes = new ArrayList<>();
+        for (CategoryQueryDto root : roots) {
+            rootNodes.add(build(root, 0, childrenByParentId, nodes));
+        }
+        return new CategoryTree(Collections.unmodifiableList(rootNodes), Collections.unmodifiableMap(nodes));
+    }
+
+    private static Node build(CategoryQueryDto category, int depth, Map<Long, List<CategoryQueryDto>> childrenByParentId, Map<Long, Node> nodes) {
+        List<Node> children = new ArrayList<>();
+        for (CategoryQueryDto child : childrenByParentId.getOrDefault(category.getCategoryId(), Collections.emptyList())) {
+            children.add(build(child, depth + 1, childrenByParentId, nodes));
+        }
+        Node node = new Node(category.getCategoryId(), category.getName(), category.getParentId(), depth, Collections.unmodifiableList(children));
+        nodes.put(node.getId(), node);
+        return node;
+    }
+
+    public List<Node> getRoots() {
+        return roots;
+    }
+
+    public Optional<Node> find(Long categoryId) {
+        return Optional.ofNullable(nodes.get(categoryId));
+    }
+
+    /**
+     * 루트부터 categoryId의 부모까지 (이동 경로 표시용). 트리에 없으면 빈 목록
+     */
+    public List<Node> ancestorsOf(Long categoryId) {
+        List<Node> ancestors = new ArrayList<>();
+        Node node = nodes.get(categoryId);
+        while (node != null && node.getParentId() != null && (node = nodes.get(node.getParentId())) != null) {
+            ancestors.add(node);
+        }
+        Collections.reverse(ancestors);
+        return ancestors;
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    @Getter
+    public static class Node {
+
+        private final Long id;
+        private final String name;
+        private final Long parentId;
+        private final int depth; //트리의 루트에서부터의 단계 (루트는 0)
+        private final List<Node> children;
+
+        private Node(Long id, String name, Long parentId, int depth, List<Node> children) {
+            this.id = id;
+            this.name = name;
+            this.parentId = parentId;
+            this.depth = depth;
+            this.children = children;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package jpabook.jpashop.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * #jpa-springboot in 절에 id를 한 번에 다 넣지 말고 잘라서, 크기를 맞춰서 넣자
+ *
+ * where x.id in :ids 에 id 리스트를 그대로 넘기면 두 가지 문제가 생긴다.
+ * 1. DB마다 in 절에 넣을 수 있는 개수 제한이 있다. (ex. Oracle 1000개)
+ * 2. 하이버네이트는 리스트 파라미터를 (?, ?, ?...)로 펼쳐서 SQL을 만들기 때문에 리스트 길이가 다르면 SQL이 달라진다.
+ *    길이가 1 ~ 1000 이면 서로 다른 SQL이 1000개 생기고 하이버네이트 쿼리 플랜 캐시와 DB의 statement 캐시가 오염된다.
+ *
+ * 그래서 id를 chunkSize 단위로 자르고, 각 chunk를 2의 거듭제곱 크기(1, 2, 4, 8 ... chunkSize)로 패딩한다.
+ * 패딩은 마지막 id를 반복해서 채운다. in 절에 같은 값이 여러 번 있어도 결과는 같다.
+ * 이렇게 하면 SQL 모양이 log2(chunkSize) + 1 개로 고정된다. default_batch_fetch_size와 같은 원리다.
+ *
+ * hibernate.query.in_clause_parameter_padding(application.yml)도 켜 두었다. 모든 in 파라미터를 같은 방식으로 채우지만
+ * 리스트를 나누지는 않으므로 id가 수만 개면 여전히 in 절 하나에 다 들어간다. (개수 제한, 거대한 SQL 한 번)
+ * 나누는 것은 여기서 하고, 이미 2의 거듭제곱 크기인 chunk는 하이버네이트가 더 채우지 않는다.
+ *
+ * parallelism이 2 이상이면 chunk들을 각자 별도의 EntityManager(= 별도의 커넥션)로 동시에 조회한다.
+ * 커넥션마다 보는 시점이 다르므로 트랜잭션 밖에서 호출된 경우에만 병렬로 조회한다.
+ * (트랜잭션 밖이면 순서대로 조회해도 쿼리마다 따로 커밋되어 chunk끼리 같은 시점을 보지 않는다)
+ * 트랜잭션 안에서 호출하면 그 트랜잭션의 EntityManager로 순서대로 조회해서 모든 chunk가 같은 트랜잭션에서 읽고,
+ * 아직 커밋되지 않은 변경도 보인다.
+ */
+@Component
+public class InQueryBatchLoader {
+
+    private final EntityManager em;
+    private final EntityManagerFactory emf;
+    private final MeterRegistry meterRegistry;
+    private final int chunkSize;
+    private final ExecutorService executor;
+
+    private final Set<String> knownShapes = ConcurrentHashMap.newKeySet();
+
+    public InQueryBatchLoader(EntityManager em,
+                              EntityManagerFactory emf,
+                              MeterRegistry meterRegistry,
+                              @Value("${jpashop.in-query.chunk-size:512}") int chunkSize,
+                              @Value("${jpashop.in-query.parallelism:1}") int parallelism) {
+        this.em = em;
+        this.emf = emf;
+        this.meterRegistry = meterRegistry;
+        this.chunkSize = bucketSize(Math.max(chunkSize, 1), Integer.MAX_VALUE);
+        this.executor = parallelism > 1 ? Executors.newFixedThreadPool(parallelism) : null;
+    }
+
+    /**
+     * @param name  메트릭 태그로 쓰이는 로더 이름
+     * @param keys  in 절에 들어갈 값 (중복은 제거된다)
+     * @param query 넘겨받은 EntityManager와 패딩된 chunk로 실제 조회를 하는 함수
+     */
+    public <K, R> List<R> load(String name, List<K> keys, BiFunction<EntityManager, List<K>, List<R>> query) {
+        List<K> distinct = new ArrayList<>(new LinkedHashSet<>(keys));
+        if (distinct.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<List<K>> chunks = new ArrayList<>();
+        for (int from = 0; from < distinct.size(); from += chunkSize) {
+            chunks.add(pad(name, distinct.subList(from, Math.min(from + chunkSize, distinct.size()))));
+        }
+
+        if (executor == null || chunks.size() == 1 || TransactionSynchronizationManager.isActualTransactionActive()) {
+            List<R> result = new ArrayList<>();
+            for (List<K> chunk : chunks) {
+                result.addAll(timed(name, () -> query.apply(em, chunk)));
+            }
+            return result;
+        }
+
+        List<CompletableFuture<List<R>>> futures = new ArrayList<>();
+        for (List<K> chunk : chunks) {
+            futures.add(CompletableFuture.supplyAsync(() -> timed(name, () -> {
+                EntityManager chunkEm = emf.createEntityManager();
+                try {
+                    return query.apply(chunkEm, chunk);
+                } finally {
+                    chunkEm.close();
+                }
+            }), executor));
+        }
+
+        List<R> result = new ArrayList<>();
+        for (CompletableFuture<List<R>> future : futures) {
+            result.addAll(future.join());
+        }
+        return result;
+    }
+
+    private <K> List<K> pad(String name, List<K> chunk) {
+        List<K> padded = padded(chunk, chunkSize);
+        recordShape(name, padded.size());
+        return padded;
+    }
+
+    /**
+     * chunk를 bucketSize 크기까지 마지막 값으로 채운다.
+     */
+    public static <K> List<K> padded(List<K> chunk, int max) {
+        int bucket = bucketSize(chunk.size(), max);
+        List<K> padded = new ArrayList<>(bucket);
+        padded.addAll(chunk);
+        K last = chunk.get(chunk.size() - 1);
+        while (padded.size() < bucket) {
+            padded.add(last);
+        }
+        return padded;
+    }
+
+    /**
+     * size 이상인 가장 작은 2의 거듭제곱 (max를 넘지 않음)
+     */
+    static int bucketSize(int size, int max) {
+        int bucket = Integer.highestOneBit(size);
+        if (bucket < size) {
+            bucket = bucket << 1;
+        }
+        return bucket <= 0 ? max : Math.min(bucket, max);
+    }
+
+    /**
+     * 로더별 in 절 크기(= SQL 모양)가 처음 나온 것인지(new) 이미 나온 것인지(repeat) 센다. new는 많아야 log2(chunkSize) + 1번
+     * 하이버네이트 쿼리 플랜 캐시의 실제 hit/miss는 hibernate.generate_statistics를 켜면 hibernate.cache.query.plan 메트릭으로 나온다.
+     */
+    private void recordShape(String name, int bucket) {
+        boolean first = knownShapes.add(name + ":" + bucket);
+        Counter.builder("jpashop.in-query.shape")
+                .tag("loader", name)
+                .tag("result", first ? "new" : "repeat")
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private <R> List<R> timed(String name, Supplier<List<R>> supplier) {
+        return Timer.builder("jpashop.in-query.chunk")
+                .tag("loader", name)
+                .register(meterRegistry)
+                .record(supplier);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package jpabook.jpashop.repository;
+
+import lombok.Data;
+
+/**
+ * 상품 목록 화면의 한 줄 (ItemRepository#findListPage)
+ */
+@Data
+public class ItemListDto {
+
+    private Long id;
+    private String name;
+    private int price;
+    private int stockQuantity;
+
+    public ItemListDto(Long id, String name, int price, int stockQuantity) {
+        this.id = id;
+        this.name = name;
+        this.price = price;
+        this.stockQuantity = stockQuantity;
+    }
+}
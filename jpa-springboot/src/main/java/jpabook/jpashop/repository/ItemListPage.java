@@ -0,0 +1,32 @@
+package jpabook.jpashop.repository;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * 상품 목록 키셋 페이지 - 전체 건수는 세지 않고 앞뒤 페이지가 있는지만 안다
+ *
+ * 다음 페이지는 after=lastId, 이전 페이지는 before=firstId로 조회한다.
+ */
+@Getter
+public class ItemListPage {
+
+    private final List<ItemListDto> items;
+    private final boolean hasPrevious;
+    private final boolean hasNext;
+
+    public ItemListPage(List<ItemListDto> items, boolean hasPrevious, boolean hasNext) {
+        this.items = items;
+        this.hasPrevious = hasPrevious;
+        this.hasNext = hasNext;
+    }
+
+    public Long getFirstId() {
+        return items.isEmpty() ? null : items.get(0).getId();
+    }
+
+    public Long getLastId() {
+        return items.isEmpty() ? null : items.get(items.size() - 1).getId();
+    }
+}
@@ -0,0 +1,23 @@
+package jpabook.jpashop.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * 상품 부분 수정 - null인 필드는 바꾸지 않는다.
+ */
+@Getter @Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ItemPatch {
+
+    private String name;
+    private Integer price;
+    private Integer stockQuantity;
+
+    public boolean isEmpty() {
+        return name == null && price == null && stockQuantity == null;
+    }
+}
@@ -1,16 +1,35 @@
 package jpabook.jpashop.repository;
 
+import jpabook.jpashop.domain.OrderItem;
 import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.exception.NotEnoughStockException;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.engine.spi.EntityKey;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.jpa.QueryHints;
+import org.hibernate.query.NativeQuery;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.Cache;
 import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 @Repository
 @RequiredArgsConstructor
 public class ItemRepository {
 
+    /**
+     * 재고/수정 update의 쿼리 스페이스 (어떤 엔티티 테이블과도 겹치지 않는 이름)
+     * 네이티브 update에 쿼리 스페이스가 없으면 하이버네이트는 2차 캐시 전체를, item을 주면 상품 영역 전체와 item 쿼리 캐시를 비운다.
+     * 이 update들은 상품 row를 추가/삭제하지 않아서 캐시된 쿼리(findAll - 상품 id 목록)의 결과가 바뀌지 않는다.
+     */
+    private static final String ROW_UPDATE_SPACE = "item_row_update";
+
     private final EntityManager em;
 
     public void save(Item item) {
@@ -25,8 +44,314 @@ public class ItemRepository {
         return em.find(Item.class, id);
     }
 
+    /**
+     * 쿼리 캐시 사용 - 결과의 id 목록을 캐시하고 엔티티는 2차 캐시에서 꺼낸다.
+     * item 테이블이 수정되면 자동으로 무효화된다.
+     */
     public List<Item> findAll() {
         return em.createQuery("select i from Item i", Item.class)
+                .setHint(QueryHints.HINT_CACHEABLE, true)
+                .getResultList();
+    }
+
+    /**
+     * #jpa-springboot 목록 화면은 엔티티 전체 대신 보여줄 컬럼만 DTO로, 페이지 단위로 읽자
+     *
+     * findAll()은 Book/Album/Movie 엔티티를 모두 영속성 컨텍스트에 올리고 변경 감지용 스냅샷까지 만든다. 메모리가 상품 수에 비례한다.
+     * DTO는 영속성 컨텍스트에 들어가지 않으므로 스냅샷도 없고, 한 요청의 메모리는 페이지 크기에 비례한다.
+     * offset 대신 PK 키셋으로 읽어서 뒤쪽 페이지도 인덱스에서 바로 시작하고, 한 건 더 읽어서 다음(이전) 페이지가 있는지 안다. (count 쿼리 없음)
+     *
+     * @param afterId  다음 페이지 - 이 id 다음부터 (before와 같이 주면 after 우선)
+     * @param beforeId 이전 페이지 - 이 id 앞까지. 둘 다 null이면 첫 페이지
+     */
+    public ItemListPage findListPage(Long afterId, Long beforeId, int size) {
+        if (afterId == null && beforeId != null) {
+            List<ItemListDto> items = em.createQuery(
+                    "select new jpabook.jpashop.repository.ItemListDto(i.id, i.name, i.price, i.stockQuantity)" +
+                            " from Item i" +
+                            " where i.id < :beforeId" +
+                            " order by i.id desc", ItemListDto.class)
+                    .setParameter("beforeId", beforeId)
+                    .setMaxResults(size + 1)
+                    .getResultList();
+            boolean hasPrevious = items.size() > size;
+            List<ItemListDto> page = new ArrayList<>(items.subList(0, Math.min(size, items.size())));
+            Collections.reverse(page);
+            return new ItemListPage(page, hasPrevious, true);
+        }
+
+        List<ItemListDto> items = em.createQuery(
+                "select new jpabook.jpashop.repository.ItemListDto(i.id, i.name, i.price, i.stockQuantity)" +
+                        " from Item i" +
+                        " where i.id > :afterId" +
+                        " order by i.id", ItemListDto.class)
+                .setParameter("afterId", afterId == null ? Long.MIN_VALUE : afterId)
+                .setMaxResults(size + 1)
+                .getResultList();
+        boolean hasNext = items.size() > size;
+        return new ItemListPage(hasNext ? new ArrayList<>(items.subList(0, size)) : items, afterId != null, hasNext);
+    }
+
+    /**
+     * #jpa-springboot 재고 차감은 조회해서 자바에서 빼지 말고 조건부 update 한 번으로 처리하자
+     *
+     * item.removeStock()은 읽은 재고에서 빼고 변경 감지로 update 하기 때문에 같은 상품을 동시에 주문하면
+     * 두 트랜잭션이 같은 재고를 읽고 각자 뺀 값을 덮어써서 차감이 사라진다. (lost update, 초과 판매)
+     * 비관적 락(select for update)을 걸면 정확하지만 같은 상품에 대한 주문이 모두 줄을 선다.
+     *
+     * 아래 update는 DB가 row 하나를 잠깐 잠그고 조건 검사와 차감을 한 번에 하므로 동시에 실행돼도 정확하다.
+     * 영향받은 row가 0이면 재고가 부족한 것이다.
+     *
+     * 벌크 연산은 영속성 컨텍스트를 거치지 않으므로
+     * - 이미 영속성 컨텍스트에 있던 상품은 먼저 flush 하고, 실행 후 refresh 해서 차감된 재고를 반영한다. (그대로 두면 이후 변경 감지가 옛 재고로 덮어쓴다)
+     * - version도 직접 올린다. (그래야 옛 버전으로 읽은 변경 감지 update가 실패한다)
+     * - JPQL update는 상품 2차 캐시 영역 전체와 item 쿼리 캐시를 비운다. 주문 하나에 다른 상품 캐시가 모두 사라지므로
+     *   네이티브 SQL + 별도 쿼리 스페이스로 실행하고 바뀐 상품만 캐시에서 뺀다. (evictRows)
+     *
+     * @return 차감 후의 재고가 반영된 영속 상태의 상품
+     */
+    public Item reserveStock(Long itemId, int count) {
+        Item managed = findManaged(itemId);
+        if (managed != null) {
+            em.flush();
+        }
+
+        int updated = rowUpdate(
+                "update item set stock_quantity = stock_quantity - :count, version = version + 1" +
+                        " where item_id = :id and stock_quantity >= :count")
+                .setParameter("count", count)
+                .setParameter("id", itemId)
+                .executeUpdate();
+        if (updated == 0) {
+            throw new NotEnoughStockException("need more stock");
+        }
+        evictRows(Collections.singletonList(itemId));
+
+        if (managed != null) {
+            em.refresh(managed);
+            return managed;
+        }
+        return em.find(Item.class, itemId);
+    }
+
+    /**
+     * 여러 상품의 재고를 update 한 번으로 차감한다. (여러 상품 주문)
+     *
+     * update item set stock_quantity = stock_quantity - case item_id when ? then ? ... end, version = version + 1
+     * where item_id in (...) and stock_quantity >= case item_id when ? then ? ... end
+     *
+     * 한 상품이라도 재고가 부족하면 영향받은 row 수가 상품 수보다 적다. 이때 NotEnoughStockException을 던지면
+     * 트랜잭션이 롤백되면서 다른 상품의 차감도 취소된다.
+     * 상품 수마다 SQL 모양이 달라지지 않도록 InQueryBatchLoader처럼 2의 거듭제곱 개로 패딩한다. (마지막 상품 반복, 먼저 맞는 when이 쓰인다)
+     * 이미 영속성 컨텍스트에 있던 상품은 refresh 하고, 2차 캐시에서는 이 상품들만 뺀다. (reserveStock 참고)
+     *
+     * @param counts 상품 id -> 차감할 수량 (상품 id는 중복 없이)
+     */
+    public void reserveStocks(Map<Long, Integer> counts) {
+        if (counts.isEmpty()) {
+            return;
+        }
+        List<Item> managed = new ArrayList<>();
+        for (Long itemId : counts.keySet()) {
+            Item item = findManaged(itemId);
+            if (item != null) {
+                managed.add(item);
+            }
+        }
+        if (!managed.isEmpty()) {
+            em.flush();
+        }
+
+        List<Long> ids = new ArrayList<>(counts.keySet());
+        int size = InQueryBatchLoader.bucketSize(ids.size(), Integer.MAX_VALUE);
+        StringBuilder cases = new StringBuilder("case item_id");
+        for (int i = 0; i < size; i++) {
+            cases.append(" when :id").append(i).append(" then :count").append(i);
+        }
+        cases.append(" else 0 end");
+
+        NativeQuery<?> update = rowUpdate(
+                "update item set stock_quantity = stock_quantity - " + cases + ", version = version + 1" +
+                        " where item_id in (:ids) and stock_quantity >= " + cases);
+        List<Long> paddedIds = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Long itemId = ids.get(Math.min(i, ids.size() - 1));
+            update.setParameter("id" + i, itemId);
+            update.setParameter("count" + i, counts.get(itemId));
+            paddedIds.add(itemId);
+        }
+        update.setParameter("ids", paddedIds);
+
+        if (update.executeUpdate() != ids.size()) {
+            throw new NotEnoughStockException("need more stock");
+        }
+        evictRows(ids);
+        managed.forEach(em::refresh);
+    }
+
+    /**
+     * #jpa-springboot 클라이언트가 버전을 알고 있으면 조회 없이 바뀐 컬럼만 update 하자
+     *
+     * update item set name = ?, version = version + 1 where item_id = ? and version = ?
+     * - 조회(select)가 없다. merge는 먼저 row 전체를 읽고, 변경 감지는 엔티티를 읽어야 한다.
+     * - 바꿀 필드만 set에 넣는다. (null이 아닌 필드) 필드 조합마다 SQL 모양이 달라지지만 3개라 많아야 7가지
+     * - where version = ? 으로 클라이언트가 본 후에 주문이나 다른 수정이 있었으면 0건 (reserveStock 등도 버전을 올린다)
+     * 이미 영속성 컨텍스트에 있던 상품은 refresh 하고, 2차 캐시에서는 이 상품만 뺀다. (reserveStock 참고)
+     *
+     * @return 수정했으면 true, 상품이 없거나 버전이 다르면 false
+     */
+    public boolean patch(Long itemId, Long version, ItemPatch patch) {
+        List<String> assignments = new ArrayList<>();
+        if (patch.getName() != null) {
+            assignments.add("name = :name");
+        }
+        if (patch.getPrice() != null) {
+            assignments.add("price = :price");
+        }
+        if (patch.getStockQuantity() != null) {
+            assignments.add("stock_quantity = :stockQuantity");
+        }
+        assignments.add("version = version + 1");
+        Item managed = findManaged(itemId);
+        if (managed != null) {
+            em.flush();
+        }
+
+        NativeQuery<?> update = rowUpdate("update item set " + String.join(", ", assignments) +
+                " where item_id = :id and version = :version");
+        if (patch.getName() != null) {
+            update.setParameter("name", patch.getName());
+        }
+        if (patch.getPrice() != null) {
+            update.setParameter("price", patch.getPrice());
+        }
+        if (patch.getStockQuantity() != null) {
+            update.setParameter("stockQuantity", patch.getStockQuantity());
+        }
+        boolean updated = update
+                .setParameter("id", itemId)
+                .setParameter("version", version)
+                .executeUpdate() == 1;
+
+        if (updated) {
+            evictRows(Collections.singletonList(itemId));
+            if (managed != null) {
+                em.refresh(managed);
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * 변경 감지 update를 트랜잭션 중간에 보내서 올라간 버전을 알기 위해 사용
+     */
+    public void flush() {
+        em.flush();
+    }
+
+    public List<Item> findAllById(Collection<Long> ids) {
+        return em.createQuery("select i from Item i where i.id in :ids", Item.class)
+                .setParameter("ids", ids)
                 .getResultList();
     }
+
+    /**
+     * 상품 row를 id 순서로 잠근다. 여러 트랜잭션이 겹치는 상품들을 잠가도 같은 순서로 잠그므로 데드락이 생기지 않는다.
+     */
+    public List<Item> findAllByIdForUpdate(Collection<Long> ids) {
+        return em.createQuery("select i from Item i where i.id in :ids order by i.id", Item.class)
+                .setParameter("ids", ids)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .getResultList();
+    }
+
+    private Item findManaged(Long itemId) {
+        SessionImplementor session = em.unwrap(SessionImplementor.class);
+        EntityKey key = session.generateEntityKey(itemId, session.getFactory().getMetamodel().entityPersister(Item.class));
+        return (Item) session.getPersistenceContext().getEntity(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private NativeQuery<?> rowUpdate(String sql) {
+        return em.createNativeQuery(sql).unwrap(NativeQuery.class).addSynchronizedQuerySpace(ROW_UPDATE_SPACE);
+    }
+
+    /**
+     * 바뀐 상품 row만 2차 캐시에서 뺀다. 지금 한 번, 트랜잭션이 끝난 후(커밋/롤백) 한 번 더
+     * - 그 사이 이 트랜잭션이나 다른 트랜잭션이 읽어서 캐시에 넣은 값(커밋 전 재고나 옛 재고)을 지운다.
+     */
+    private void evictRows(List<Long> itemIds) {
+        Cache cache = em.getEntityManagerFactory().getCache();
+        itemIds.forEach(itemId -> cache.evict(Item.class, itemId));
+        em.unwrap(SessionImplementor.class).getActionQueue()
+                .registerProcess((success, session) -> itemIds.forEach(itemId -> cache.evict(Item.class, itemId)));
+    }
+
+    /**
+     * 재고 복구 (조건 없는 증가도 update 한 번으로 처리해서 변경 감지의 lost update를 피한다)
+     */
+    public void restoreStock(Long itemId, int count) {
+        rowUpdate("update item set stock_quantity = stock_quantity + :count, version = version + 1 where item_id = :id")
+                .setParameter("count", count)
+                .setParameter("id", itemId)
+                .executeUpdate();
+        evictRows(Collections.singletonList(itemId));
+    }
+
+    //==핫 상품 (HotStockLedger)==//
+
+    /**
+     * 아직 item.stock_quantity에 반영되지 않은 주문 수량
+     */
+    public long pendingStock(Long itemId) {
+        return em.createQuery(
+                "select coalesce(sum(oi.count), 0) from OrderItem oi" +
+                        " where oi.item.id = :itemId and oi.stockPending = true", Long.class)
+                .setParameter("itemId", itemId)
+                .getSingleResult();
+    }
+
+    public List<Long> findItemIdsWithPendingStock() {
+        return em.createQuery("select distinct oi.item.id from OrderItem oi where oi.stockPending = true", Long.class)
+                .getResultList();
+    }
+
+    /**
+     * 반영되지 않은 주문상품을 최대 limit개 잠그고 수량을 item.stock_quantity에서 뺀다.
+     * 잠근 row만 반영 완료로 바꾸므로 그 사이에 커밋된 주문상품은 다음 번에 반영된다.
+     * @return 반영한 주문상품 수 (limit보다 작으면 더 반영할 것이 없다)
+     */
+    public int applyPendingStock(Long itemId, int limit) {
+        List<OrderItem> pending = em.createQuery(
+                "select oi from OrderItem oi where oi.item.id = :itemId and oi.stockPending = true order by oi.id", OrderItem.class)
+                .setParameter("itemId", itemId)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .setMaxResults(limit)
+                .getResultList();
+        if (pending.isEmpty()) {
+            return 0;
+        }
+
+        int quantity = 0;
+        for (OrderItem orderItem : pending) {
+            orderItem.setStockPending(false);
+            quantity += orderItem.getCount();
+        }
+        rowUpdate("update item set stock_quantity = stock_quantity - :quantity, version = version + 1 where item_id = :id")
+                .setParameter("quantity", quantity)
+                .setParameter("id", itemId)
+                .executeUpdate();
+        evictRows(Collections.singletonList(itemId));
+        return pending.size();
+    }
+
+    /**
+     * 아직 반영되지 않은 주문상품이면 반영 대상에서 뺀다. (취소)
+     * @return 뺐으면 true, 이미 item.stock_quantity에 반영된 주문상품이면 false
+     */
+    public boolean clearPendingStock(Long orderItemId) {
+        return em.createQuery("update OrderItem oi set oi.stockPending = false where oi.id = :id and oi.stockPending = true")
+                .setParameter("id", orderItemId)
+                .executeUpdate() == 1;
+    }
 }
@@ -5,6 +5,7 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Repository;
 
 import javax.persistence.EntityManager;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -26,9 +27,48 @@ public class MemberRepository {
                 .getResultList();
     }
 
+    public List<Member> findAllById(Collection<Long> ids) {
+        return em.createQuery("select m from Member m where m.id in :ids", Member.class)
+                .setParameter("ids", ids)
+                .getResultList();
+    }
+
     public List<Member> findByName(String name) {
         return em.createQuery("select m from Member m where m.name = :name", Member.class)
                 .setParameter("name", name)
                 .getResultList();
     }
+
+    /**
+     * 존재 여부만 필요하므로 엔티티를 만들지 않고 id 하나만 조회한다. (name은 유니크 인덱스)
+     */
+    public boolean existsByName(String name) {
+        return !em.createQuery("select m.id from Member m where m.name = :name", Long.class)
+                .setParameter("name", name)
+                .setMaxResults(1)
+                .getResultList()
+                .isEmpty();
+    }
+
+    public long count() {
+        return em.createQuery("select count(m) from Member m", Long.class)
+                .getSingleResult();
+    }
+
+    /**
+     * id 순으로 afterId 다음부터 limit개의 [id, name] - 전체 이름을 끊어서 읽을 때 사용 (offset 없이 id로 이어서 읽는다)
+     */
+    public List<Object[]> findIdAndNamesAfter(long afterId, int limit) {
+        return em.createQuery("select m.id, m.name from Member m where m.id > :afterId order by m.id", Object[].class)
+                .setParameter("afterId", afterId)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    /**
+     * 유니크 제약 위반을 커밋이 아니라 호출한 곳에서 DataIntegrityViolationException으로 받기 위해 사용
+     */
+    public void flush() {
+        em.flush();
+    }
 }
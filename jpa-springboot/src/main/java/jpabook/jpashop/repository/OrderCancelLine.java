@@ -0,0 +1,25 @@
+package jpabook.jpashop.repository;
+
+import jpabook.jpashop.domain.DeliveryStatus;
+import lombok.Data;
+
+/**
+ * 일괄 주문 취소 대상 주문상품 (OrderRepository#findCancelLinesForUpdate)
+ */
+@Data
+public class OrderCancelLine {
+
+    private Long orderId;
+    private DeliveryStatus deliveryStatus;
+    private Long itemId;
+    private int count;
+    private boolean stockPending; //핫 상품이라 아직 item.stock_quantity에서 빠지지 않은 수량
+
+    public OrderCancelLine(Long orderId, DeliveryStatus deliveryStatus, Long itemId, int count, boolean stockPending) {
+        this.orderId = orderId;
+        this.deliveryStatus = deliveryStatus;
+        this.itemId = itemId;
+        this.count = count;
+        this.stockPending = stockPending;
+    }
+}
@@ -1,11 +1,15 @@
 package jpabook.jpashop.repository;
 
 import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.OrderStatus;
 
 import org.springframework.stereotype.Repository;
 import org.springframework.util.StringUtils;
 
+import javax.annotation.PostConstruct;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.LockModeType;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.*;
 import java.util.ArrayList;
@@ -14,6 +18,10 @@ import java.util.List;
 @Repository
 public class OrderRepository {
 
+    //findAllBySearch - 모양 번호(searchShape)별 named query 이름
+    private static final String[] SEARCH_QUERY_NAMES = {
+            "Order.search", "Order.searchByStatus", "Order.searchByName", "Order.searchByStatusAndName"};
+
     private final EntityManager em;
 
     public OrderRepository(EntityManager em) {
@@ -101,6 +109,83 @@ public class OrderRepository {
         return query.getResultList();
     }
 
+    /**
+     * #jpa-springboot 동적 검색도 조건 조합(모양)이 몇 개 안 되면 모양마다 쿼리를 미리 만들어 두자
+     *
+     * findAllByString은 호출마다 JPQL 문자열을 이어 붙이고 findAllByCriteria는 호출마다 Criteria 트리를 만든 후 JPQL로 다시 렌더링한다.
+     * (하이버네이트는 JPQL 문자열로 파싱 결과(쿼리 플랜)를 캐시하지만 그 문자열을 만드는 비용과 캐시 조회는 매번 든다)
+     * 검색 조건은 주문 상태 유무 x 회원 이름 유무 = 4가지 모양뿐이므로
+     * - 시작할 때 모양마다 JPQL을 한 번 파싱해서 이름 있는 쿼리(named query)로 등록한다. (SQL 변환 결과도 이때 쿼리 플랜 캐시에 들어간다)
+     * - 검색할 때는 있는 조건으로 모양 번호(비트)를 계산해서 그 이름의 쿼리를 꺼내고 파라미터만 바인딩한다.
+     * TypedQuery 자체는 영속성 컨텍스트에 묶여 있어서 요청 간에 공유할 수 없으므로 팩토리에 등록한 정의를 공유한다.
+     * 검색 결과는 findAllByString과 같다. (이름은 like, 최대 1000건)
+     * 이름 패턴의 !는 escape 문자다. %, _를 글자 그대로 찾으려면 !%, !_로 넘긴다. (Querydsl contains와 같은 escape 문자, OrderService#findOrders)
+     */
+    public List<Order> findAllBySearch(OrderSearch orderSearch) {
+        boolean hasStatus = orderSearch.getOrderStatus() != null;
+        boolean hasName = StringUtils.hasText(orderSearch.getMemberName());
+
+        TypedQuery<Order> query = em.createNamedQuery(SEARCH_QUERY_NAMES[searchShape(hasStatus, hasName)], Order.class);
+        if (hasStatus) {
+            query.setParameter("status", orderSearch.getOrderStatus());
+        }
+        if (hasName) {
+            query.setParameter("name", orderSearch.getMemberName());
+        }
+        return query.getResultList();
+    }
+
+    /**
+     * 회원 이름 중간 검색 - 이름을 포함할 수 있는 회원 id를 먼저 찾은 경우 (MemberNameTrigramIndex)
+     *
+     * member_id in (후보)는 orders의 member_id 인덱스, 조인한 member는 PK로 찾는다. like는 후보 회원 row에만 적용된다.
+     * in 절은 InQueryBatchLoader처럼 2의 거듭제곱 개로 패딩한다.
+     *
+     * @param namePattern 후보 중 실제로 이름이 맞는 회원만 남기기 위한 like 패턴 (ex. %kim%, escape 문자는 !)
+     */
+    public List<Order> findAllByMemberIds(OrderStatus status, List<Long> memberIds, String namePattern) {
+        if (memberIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        TypedQuery<Order> query = em.createQuery(
+                "select o from Order o join o.member m" +
+                        " where m.id in :memberIds and m.name like :name escape '!'" +
+                        (status != null ? " and o.status = :status" : ""), Order.class)
+                .setParameter("memberIds", InQueryBatchLoader.padded(memberIds, Integer.MAX_VALUE))
+                .setParameter("name", namePattern)
+                .setMaxResults(1000);
+        if (status != null) {
+            query.setParameter("status", status);
+        }
+        return query.getResultList();
+    }
+
+    private static int searchShape(boolean hasStatus, boolean hasName) {
+        return (hasStatus ? 1 : 0) | (hasName ? 2 : 0);
+    }
+
+    @PostConstruct
+    void registerSearchQueries() {
+        EntityManagerFactory emf = em.getEntityManagerFactory();
+        EntityManager templateEm = emf.createEntityManager();
+        try {
+            for (int shape = 0; shape < SEARCH_QUERY_NAMES.length; shape++) {
+                List<String> conditions = new ArrayList<>();
+                if ((shape & 1) != 0) {
+                    conditions.add("o.status = :status");
+                }
+                if ((shape & 2) != 0) {
+                    conditions.add("m.name like :name escape '!'");
+                }
+                String jpql = "select o from Order o join o.member m" +
+                        (conditions.isEmpty() ? "" : " where " + String.join(" and ", conditions));
+                emf.addNamedQuery(SEARCH_QUERY_NAMES[shape], templateEm.createQuery(jpql, Order.class).setMaxResults(1000));
+            }
+        } finally {
+            templateEm.close();
+        }
+    }
+
     public List<Order> findAllWithMemberDelivery() {
         return em.createQuery(
                 "select o from Order o" +
@@ -128,5 +213,134 @@ public class OrderRepository {
                 .setMaxResults(limit)
                 .getResultList();
     }
-}
 
+    /**
+     * #jpa-springboot offset 페이징 대신 키셋(seek) 페이징
+     *
+     * setFirstResult(offset)은 DB가 offset 만큼의 row를 모두 읽고 버린 후에 limit 만큼을 가져오기 때문에 뒤 페이지로 갈수록 느려진다.
+     * 마지막으로 받은 order_id를 기억해두고 "order_id > :lastId order by order_id" 로 PK 인덱스를 타고 바로 다음 위치부터 읽으면
+     * 페이지 깊이와 상관없이 항상 limit 만큼만 읽는다.
+     * lastId가 null이면 첫 페이지
+     */
+    public List<Order> findAllWithMemberDeliveryAfter(Long lastId, int limit) {
+        String jpql = "select o from Order o" +
+                " join fetch o.member m" +
+                " join fetch o.delivery d";
+        if (lastId != null) {
+            jpql += " where o.id > :lastId";
+        }
+        jpql += " order by o.id";
+
+        TypedQuery<Order> query = em.createQuery(jpql, Order.class)
+                .setMaxResults(limit);
+        if (lastId != null) {
+            query.setParameter("lastId", lastId);
+        }
+        return query.getResultList();
+    }
+
+    /**
+     * 영속성 컨텍스트에서 뺀다. 초기화 안 된 컬렉션도 batch fetch 대기열에서 빠져서 이후 batch 조회에 실리지 않는다.
+     */
+    public void detach(Order order) {
+        em.detach(order);
+    }
+
+    //==일괄 주문 취소 (OrderService#cancelOrders)==//
+
+    /**
+     * 아직 취소되지 않은 주문의 주문상품을 배송 상태와 함께 조회하고 주문, 배송, 주문상품 row를 잠근다.
+     * 잠근 동안은 핫 상품 flusher(ItemRepository#applyPendingStock)가 stock_pending을 바꾸지 못하므로
+     * 이어지는 cancelAll의 재고 복구 수량이 조회한 내용과 어긋나지 않는다.
+     */
+    public List<OrderCancelLine> findCancelLinesForUpdate(List<Long> orderIds) {
+        return em.createQuery(
+                "select new jpabook.jpashop.repository.OrderCancelLine(o.id, d.status, oi.item.id, oi.count, oi.stockPending)" +
+                        " from OrderItem oi" +
+                        " join oi.order o" +
+                        " join o.delivery d" +
+                        " where o.id in :orderIds and o.status = :status", OrderCancelLine.class)
+                .setParameter("orderIds", InQueryBatchLoader.padded(orderIds, Integer.MAX_VALUE))
+                .setParameter("status", OrderStatus.ORDER)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .getResultList();
+    }
+
+    /**
+     * #jpa-springboot 주문 여러 건 취소는 주문마다 변경 감지로 하지 말고 벌크 update 세 번으로
+     *
+     * order.cancel()은 주문상품마다 상품을 지연 로딩해서 addStock 하고, 변경 감지로 상품마다 update가 나간다.
+     * 주문 n건, 주문상품 m개면 select, update가 n + m 단위로 나간다.
+     * 여기서는 주문 수와 상관없이
+     * 1. 상품 재고 복구 - 상품별 수량 합계를 서브쿼리로 구해서 update 한 번 (stock_pending인 주문상품은 아직 빠지지 않았으므로 제외)
+     * 2. stock_pending 해제 - update 한 번
+     * 3. 주문 상태 변경 - update 한 번
+     *
+     * 벌크 연산은 영속성 컨텍스트를 무시하고 바로 DB에 반영된다. (data jpa의 @Modifying(flushAutomatically, clearAutomatically) 참고)
+     * - 실행 전에 flush 해서 아직 반영되지 않은 변경 내용이 벌크 update 이후에 덮어쓰지 않게 한다.
+     * - 실행 후에 clear 해서 옛 상태의 주문, 상품을 다시 읽지 않게 한다. clear 이후에는 기존 엔티티가 준영속 상태가 된다.
+     *
+     * @param orderIds findCancelLinesForUpdate로 잠근 취소 가능한 주문 id
+     * @return 취소된 주문 수
+     */
+    public int cancelAll(List<Long> orderIds) {
+        em.flush();
+        List<Long> padded = InQueryBatchLoader.padded(orderIds, Integer.MAX_VALUE);
+
+        em.createQuery(
+                "update versioned Item i set i.stockQuantity = i.stockQuantity +" +
+                        " (select sum(oi.count) from OrderItem oi" +
+                        " where oi.item = i and oi.order.id in :orderIds and oi.stockPending = false)" +
+                        " where i.id in" +
+                        " (select oi.item.id from OrderItem oi" +
+                        " where oi.order.id in :orderIds and oi.stockPending = false)")
+                .setParameter("orderIds", padded)
+                .executeUpdate();
+        em.createQuery(
+                "update OrderItem oi set oi.stockPending = false" +
+                        " where oi.order.id in :orderIds and oi.stockPending = true")
+                .setParameter("orderIds", padded)
+                .executeUpdate();
+        int cancelled = em.createQuery("update Order o set o.status = :cancel where o.id in :orderIds")
+                .setParameter("cancel", OrderStatus.CANCEL)
+                .setParameter("orderIds", padded)
+                .executeUpdate();
+
+        em.clear();
+        return cancelled;
+    }
+
+    /**
+     * 저장된 주문 총액과 주문상품으로 다시 계산한 총액 (OrderTotalPriceChecker)
+     * id 순서로 afterId 다음부터 limit 건. 주문상품이 없는 주문은 0으로 계산한다.
+     *
+     * @return [주문 id, 저장된 총액(Integer), 다시 계산한 총액(Long)]
+     */
+    public List<Object[]> findTotalPricesAfter(long afterId, int limit) {
+        return em.createQuery(
+                "select o.id, o.totalPrice, coalesce(sum(oi.orderPrice * oi.count), 0) from Order o" +
+                        " left join o.orderItems oi" +
+                        " where o.id > :afterId" +
+                        " group by o.id, o.totalPrice" +
+                        " order by o.id", Object[].class)
+                .setParameter("afterId", afterId)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    /**
+     * 주문 총액을 주문상품으로 다시 계산해서 저장한다. (벌크 연산 - cancelAll 참고)
+     * @return 바뀐 주문 수
+     */
+    public int recalculateTotalPrices(List<Long> orderIds) {
+        em.flush();
+        int updated = em.createQuery(
+                "update Order o set o.totalPrice =" +
+                        " (select coalesce(sum(oi.orderPrice * oi.count), 0) from OrderItem oi where oi.order = o)" +
+                        " where o.id in :orderIds")
+                .setParameter("orderIds", InQueryBatchLoader.padded(orderIds, Integer.MAX_VALUE))
+                .executeUpdate();
+        em.clear();
+        return updated;
+    }
+}
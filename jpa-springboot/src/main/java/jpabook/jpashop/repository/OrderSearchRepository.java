@@ -0,0 +1,101 @@
+package jpabook.jpashop.repository;
+
+import static jpabook.jpashop.domain.QMember.member;
+import static jpabook.jpashop.domain.QOrder.order;
+
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import java.util.Collections;
+import java.util.List;
+import javax.persistence.EntityManager;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.OrderStatus;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.StringUtils;
+
+/**
+ * #jpa-springboot 주문 검색 페이징 - Querydsl로 조건이 있는 것만 where에 넣는다. (data-jpa-querydsl의 searchPageSimple 참고)
+ *
+ * OrderRepository의 검색은 setMaxResults(1000)에서 말없이 잘리고 전체 개수도 모른다.
+ * 여기서는 한 페이지만 가져오고 전체 개수는 필요할 때만 센다.
+ *
+ * count 쿼리 최적화
+ * 1. 생략 - PageableExecutionUtils가 내용만으로 전체 개수를 알 수 있으면 count 쿼리를 실행하지 않는다.
+ *    첫 페이지인데 내용이 페이지 크기보다 적을 때, 마지막 페이지일 때 (offset + 내용 개수 = 전체 개수)
+ * 2. 조인 제거 - 회원 이름 조건이 없거나 이름이 맞는 회원 id를 먼저 찾았으면 member를 조인하지 않고 orders만 센다.
+ *    (주문은 항상 회원과 함께 만들어지므로(Order.createOrder) inner join을 빼도 개수가 같다)
+ *
+ * 회원 이름은 글자 그대로 포함 검색한다. (member.name.contains가 검색어의 %, _를 escape 한다)
+ */
+@Repository
+public class OrderSearchRepository {
+
+    private final JPAQueryFactory queryFactory;
+
+    public OrderSearchRepository(EntityManager em) {
+        this.queryFactory = new JPAQueryFactory(em);
+    }
+
+    /**
+     * 최근 주문부터 한 페이지. 회원은 목록에 이름을 보여주므로 fetch join 한다. (xToOne이라 페이징해도 된다)
+     *
+     * @param memberIds 회원 이름을 포함할 수 있는 회원 id 후보 (MemberNameTrigramIndex), 모르면 null
+     *                  후보가 있으면 먼저 후보 중 이름이 맞는 회원 id만 골라서 주문은 member_id로만 찾는다.
+     *                  (주문 row마다 회원 이름 like를 다시 보지 않고 count 쿼리도 member를 조인하지 않는다)
+     */
+    public Page<Order> searchPage(OrderSearch orderSearch, List<Long> memberIds, Pageable pageable) {
+        String memberName = orderSearch.getMemberName();
+        if (memberIds != null) {
+            memberIds = memberIds.isEmpty() ? memberIds : queryFactory
+                    .select(member.id)
+                    .from(member)
+                    .where(member.id.in(InQueryBatchLoader.padded(memberIds, Integer.MAX_VALUE)),
+                            memberNameContains(memberName))
+                    .fetch();
+            if (memberIds.isEmpty()) {
+                return new PageImpl<>(Collections.emptyList(), pageable, 0);
+            }
+            memberName = null;
+        }
+
+        List<Order> content = queryFactory
+                .selectFrom(order)
+                .join(order.member, member).fetchJoin()
+                .where(statusEq(orderSearch.getOrderStatus()),
+                        memberIdIn(memberIds),
+                        memberNameContains(memberName))
+                .orderBy(order.id.desc())
+                .offset(pageable.getOffset())
+                .limit(pageable.getPageSize())
+                .fetch();
+
+        JPAQuery<Long> countQuery = queryFactory
+                .select(order.count())
+                .from(order)
+                .where(statusEq(orderSearch.getOrderStatus()),
+                        memberIdIn(memberIds)); //order.member.id는 조인 없이 orders.member_id로 비교한다
+        if (StringUtils.hasText(memberName)) {
+            countQuery.join(order.member, member)
+                    .where(memberNameContains(memberName));
+        }
+
+        return PageableExecutionUtils.getPage(content, pageable, countQuery::fetchOne);
+    }
+
+    private BooleanExpression statusEq(OrderStatus status) {
+        return status == null ? null : order.status.eq(status);
+    }
+
+    private BooleanExpression memberIdIn(List<Long> memberIds) {
+        return memberIds == null ? null : order.member.id.in(InQueryBatchLoader.padded(memberIds, Integer.MAX_VALUE));
+    }
+
+    private BooleanExpression memberNameContains(String memberName) {
+        return StringUtils.hasText(memberName) ? member.name.contains(memberName) : null;
+    }
+}
@@ -0,0 +1,19 @@
+package jpabook.jpashop.repository.category.query;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+
+@Data
+public class CategoryBadgeQueryDto {
+
+    @JsonIgnore
+    private Long itemId;
+    private Long categoryId;
+    private String name;
+
+    public CategoryBadgeQueryDto(Long itemId, Long categoryId, String name) {
+        this.itemId = itemId;
+        this.categoryId = categoryId;
+        this.name = name;
+    }
+}
@@ -0,0 +1,26 @@
+package jpabook.jpashop.repository.category.query;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 카테고리 상품 목록의 한 줄 - 목록에 보여주는 컬럼만 (싱글 테이블의 author, artist 등은 읽지 않는다)
+ */
+@Data
+public class CategoryItemQueryDto {
+
+    private Long itemId;
+    private String name;
+    private int price;
+    private int stockQuantity;
+    private List<CategoryBadgeQueryDto> categories = new ArrayList<>(); //상품이 속한 모든 카테고리
+
+    public CategoryItemQueryDto(Long itemId, String name, int price, int stockQuantity) {
+        this.itemId = itemId;
+        this.name = name;
+        this.price = price;
+        this.stockQuantity = stockQuantity;
+    }
+}
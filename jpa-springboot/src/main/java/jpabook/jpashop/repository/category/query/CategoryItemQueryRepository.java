@@ -0,0 +1,72 @@
+package jpabook.jpashop.repository.category.query;
+
+import jpabook.jpashop.repository.InQueryBatchLoader;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * #jpa-springboot 다대다(category_item) 컬렉션은 지연 로딩으로 건드리지 말고 페이지 단위로 DTO 조회하자
+ *
+ * category.getItems()는 페이징 없이 카테고리의 상품 전체를 올리고, 상품마다 item.getCategories()를 부르면 N + 1이다.
+ * 1. 상품 페이지 : category_item(category_id, item_id) 인덱스로 item_id > 커서부터 limit개 (키셋 페이징 - 페이지가 깊어져도 속도가 같다)
+ *    싱글 테이블이라 item에는 Book/Album/Movie 컬럼이 다 있지만 목록에 보여줄 컬럼만 가져온다.
+ * 2. 카테고리 배지 : 페이지의 상품 id로 category_item(item_id, category_id) 인덱스를 타는 in 쿼리 한 번
+ * 페이지 하나에 쿼리 2번이다.
+ */
+@Repository
+@RequiredArgsConstructor
+public class CategoryItemQueryRepository {
+
+    private final EntityManager em;
+
+    /**
+     * @param categoryIds 카테고리와 그 하위 카테고리 id
+     * @param afterItemId 이전 페이지의 마지막 상품 id (첫 페이지는 null)
+     */
+    public List<CategoryItemQueryDto> findItemPage(List<Long> categoryIds, Long afterItemId, int limit) {
+        if (categoryIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        //카테고리가 하나면 같은 상품이 두 번 나올 수 없으므로 distinct 없이 인덱스 순서대로 읽고 limit에서 멈춘다
+        String distinct = categoryIds.size() > 1 ? "distinct " : "";
+        List<CategoryItemQueryDto> items = em.createQuery(
+                "select " + distinct + "new jpabook.jpashop.repository.category.query.CategoryItemQueryDto(i.id, i.name, i.price, i.stockQuantity)" +
+                        " from Category c" +
+                        " join c.items i" +
+                        " where c.id in :categoryIds" +
+                        " and i.id > :afterItemId" +
+                        " order by i.id", CategoryItemQueryDto.class)
+                .setParameter("categoryIds", InQueryBatchLoader.padded(categoryIds, Integer.MAX_VALUE))
+                .setParameter("afterItemId", afterItemId == null ? Long.MIN_VALUE : afterItemId)
+                .setMaxResults(limit)
+                .getResultList();
+
+        fillBadges(items);
+        return items;
+    }
+
+    private void fillBadges(List<CategoryItemQueryDto> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        List<Long> itemIds = items.stream().map(CategoryItemQueryDto::getItemId).collect(Collectors.toList());
+        Map<Long, List<CategoryBadgeQueryDto>> badgeMap = em.createQuery(
+                "select new jpabook.jpashop.repository.category.query.CategoryBadgeQueryDto(i.id, c.id, c.name)" +
+                        " from Category c" +
+                        " join c.items i" +
+                        " where i.id in :itemIds", CategoryBadgeQueryDto.class)
+                .setParameter("itemIds", InQueryBatchLoader.padded(itemIds, Integer.MAX_VALUE))
+                .getResultList()
+                .stream()
+                .collect(Collectors.groupingBy(CategoryBadgeQueryDto::getItemId));
+
+        items.forEach(item -> item.setCategories(badgeMap.getOrDefault(item.getItemId(), Collections.emptyList())));
+    }
+}
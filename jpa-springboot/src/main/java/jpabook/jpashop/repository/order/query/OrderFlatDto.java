@@ -15,11 +15,12 @@ public class OrderFlatDto {
     private Address address;
     private OrderStatus orderStatus;
 
+    //주문상품이 없는 주문을 left join 하면 아래는 모두 null
     private String itemName;//상품 명
-    private int orderPrice; //주문 가격
-    private int count;      //주문 수량
+    private Integer orderPrice; //주문 가격
+    private Integer count;      //주문 수량
 
-    public OrderFlatDto(Long orderId, String name, LocalDateTime orderDate, OrderStatus orderStatus, Address address, String itemName, int orderPrice, int count) {
+    public OrderFlatDto(Long orderId, String name, LocalDateTime orderDate, OrderStatus orderStatus, Address address, String itemName, Integer orderPrice, Integer count) {
         this.orderId = orderId;
         this.name = name;
         this.orderDate = orderDate;
@@ -30,4 +31,8 @@ public class OrderFlatDto {
         this.count = count;
     }
 
+    public boolean hasOrderItem() {
+        return count != null;
+    }
+
 }
@@ -0,0 +1,146 @@
+package jpabook.jpashop.repository.order.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+
+/**
+ * #jpa-springboot 뻥튀기된 flat row를 OrderQueryDto로 묶을 때 groupingBy 대신 정렬된 순서를 이용하자
+ *
+ * groupingBy(o -> new OrderQueryDto(...)) 방식의 문제
+ * - row마다 key로 쓸 DTO를 새로 만들고 hashCode를 계산한다. (대부분 바로 버려진다)
+ * - HashMap에 담기 때문에 쿼리의 정렬 순서가 사라져서 응답 순서가 매번 달라진다.
+ *
+ * 쿼리에서 order by o.id로 정렬해서 가져오면 같은 주문의 row들은 항상 연속(run)해서 나온다.
+ * 따라서 바로 앞 row와 orderId만 비교하면서 한 번만 훑으면 되고, HashMap도 key 객체도 필요 없다.
+ * 주문상품 리스트는 run이 끝났을 때 정확한 크기로 한 번만 만든다.
+ *
+ * 입력은 반드시 orderId 오름차순이어야 한다. 순서가 어긋나면 IllegalStateException
+ */
+public final class OrderFlatRunCollector implements Collector<OrderFlatDto, OrderFlatRunCollector.Runs, List<OrderQueryDto>> {
+
+    private static final OrderFlatRunCollector INSTANCE = new OrderFlatRunCollector();
+
+    private OrderFlatRunCollector() {
+    }
+
+    public static OrderFlatRunCollector toOrderQueryDtos() {
+        return INSTANCE;
+    }
+
+    @Override
+    public Supplier<Runs> supplier() {
+        return Runs::new;
+    }
+
+    @Override
+    public BiConsumer<Runs, OrderFlatDto> accumulator() {
+        return Runs::accept;
+    }
+
+    @Override
+    public BinaryOperator<Runs> combiner() {
+        return Runs::merge;
+    }
+
+    @Override
+    public Function<Runs, List<OrderQueryDto>> finisher() {
+        return Runs::finish;
+    }
+
+    @Override
+    public Set<Characteristics> characteristics() {
+        return Collections.unmodifiableSet(EnumSet.noneOf(Characteristics.class));
+    }
+
+    /**
+     * row를 하나씩 받으면서 orderId가 바뀔 때마다 완성된 OrderQueryDto를 downstream으로 넘긴다.
+     * 스트리밍 조회(OrderQueryRepository#forEachByDto_flat)에서도 그대로 사용한다.
+     */
+    public static final class RunBuilder {
+
+        private final Consumer<OrderQueryDto> downstream;
+        private final ArrayList<OrderItemQueryDto> items = new ArrayList<>();
+        private OrderFlatDto head; //현재 run의 첫 row
+
+        public RunBuilder(Consumer<OrderQueryDto> downstream) {
+            this.downstream = downstream;
+        }
+
+        public void accept(OrderFlatDto row) {
+            if (head != null && !head.getOrderId().equals(row.getOrderId())) {
+                if (row.getOrderId() < head.getOrderId()) {
+                    throw new IllegalStateException("orderId 오름차순으로 정렬된 row만 묶을 수 있습니다. " + head.getOrderId() + " -> " + row.getOrderId());
+                }
+                flush();
+            }
+            if (head == null) {
+                head = row;
+            }
+            if (row.hasOrderItem()) { //주문상품이 없는 주문은 빈 리스트
+                items.add(new OrderItemQueryDto(row.getOrderId(), row.getItemName(), row.getOrderPrice(), row.getCount()));
+            }
+        }
+
+        public void finish() {
+            if (head != null) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            downstream.accept(new OrderQueryDto(head.getOrderId(), head.getName(), head.getOrderDate(), head.getOrderStatus(), head.getAddress(),
+                    new ArrayList<>(items))); //정확한 크기로 복사
+            items.clear();
+            head = null;
+        }
+    }
+
+    static final class Runs {
+
+        private final List<OrderQueryDto> result = new ArrayList<>();
+        private final RunBuilder builder = new RunBuilder(result::add);
+
+        private void accept(OrderFlatDto row) {
+            builder.accept(row);
+        }
+
+        /**
+         * 병렬 스트림에서 앞 조각의 마지막 주문과 뒤 조각의 첫 주문이 같을 수 있으므로 이어 붙인다.
+         */
+        private Runs merge(Runs other) {
+            builder.finish();
+            other.builder.finish();
+            if (other.result.isEmpty()) {
+                return this;
+            }
+            int from = 0;
+            if (!result.isEmpty()) {
+                OrderQueryDto last = result.get(result.size() - 1);
+                OrderQueryDto first = other.result.get(0);
+                if (last.getOrderId().equals(first.getOrderId())) {
+                    List<OrderItemQueryDto> merged = new ArrayList<>(last.getOrderItems().size() + first.getOrderItems().size());
+                    merged.addAll(last.getOrderItems());
+                    merged.addAll(first.getOrderItems());
+                    last.setOrderItems(merged);
+                    from = 1;
+                }
+            }
+            result.addAll(other.result.subList(from, other.result.size()));
+            return this;
+        }
+
+        private List<OrderQueryDto> finish() {
+            builder.finish();
+            return result;
+        }
+    }
+}
@@ -1,12 +1,17 @@
 package jpabook.jpashop.repository.order.query;
 
+import jpabook.jpashop.repository.InQueryBatchLoader;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.jpa.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import javax.persistence.EntityManager;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * #jpa-springboot 이렇게 새로운 QueryRepository를 뽑아낸 이유
@@ -23,7 +28,10 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class OrderQueryRepository {
 
+    private static final int STREAM_FETCH_SIZE = 1000;
+
     private final EntityManager em;
+    private final InQueryBatchLoader inQueryBatchLoader;
 
     /**
      * 컬렉션은 별도로 조회
@@ -54,7 +62,8 @@ public class OrderQueryRepository {
                 "select new jpabook.jpashop.repository.order.query.OrderQueryDto(o.id, m.name, o.orderDate, o.status, d.address)" +
                         " from Order o" +
                         " join o.member m" +
-                        " join o.delivery d", OrderQueryDto.class)
+                        " join o.delivery d" +
+                        " order by o.id", OrderQueryDto.class) //V6와 같은 순서 (OrderQueryStrategyChooser가 둘을 바꿔 쓴다)
                 .getResultList();
     }
 
@@ -85,7 +94,7 @@ public class OrderQueryRepository {
         Map<Long, List<OrderItemQueryDto>> orderItemMap = findOrderItemMap(toOrderIds(result));
 
         //루프를 돌면서 컬렉션 추가(추가 쿼리 실행X)
-        result.forEach(o -> o.setOrderItems(orderItemMap.get(o.getOrderId())));
+        result.forEach(o -> o.setOrderItems(orderItemMap.getOrDefault(o.getOrderId(), new ArrayList<>())));
 
         return result;
     }
@@ -96,14 +105,18 @@ public class OrderQueryRepository {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * id가 수천 개가 되면 in 절 개수 제한과 쿼리 플랜 캐시 오염 문제가 생기므로 InQueryBatchLoader로 잘라서 조회한다.
+     */
     private Map<Long, List<OrderItemQueryDto>> findOrderItemMap(List<Long> orderIds) {
-        List<OrderItemQueryDto> orderItems = em.createQuery(
+        List<OrderItemQueryDto> orderItems = inQueryBatchLoader.load("orderItem", orderIds, (em, ids) -> em.createQuery(
                 "select new jpabook.jpashop.repository.order.query.OrderItemQueryDto(oi.order.id, i.name, oi.orderPrice, oi.count)" +
                         " from OrderItem oi" +
                         " join oi.item i" +
-                        " where oi.order.id in :orderIds", OrderItemQueryDto.class) // in절과 id list 넘기는 것을 주목
-                .setParameter("orderIds", orderIds)
-                .getResultList();
+                        " where oi.order.id in :orderIds" +
+                        " order by oi.id", OrderItemQueryDto.class) // in절과 id list 넘기는 것을 주목
+                .setParameter("orderIds", ids)
+                .getResultList());
 
         return orderItems.stream()
                 .collect(Collectors.groupingBy(OrderItemQueryDto::getOrderId));
@@ -115,8 +128,46 @@ public class OrderQueryRepository {
                         " from Order o" +
                         " join o.member m" +
                         " join o.delivery d" +
-                        " join o.orderItems oi" +
-                        " join oi.item i", OrderFlatDto.class)
+                        " left join o.orderItems oi" + //V5처럼 주문상품이 없는 주문도 나온다
+                        " left join oi.item i" +
+                        " order by o.id, oi.id", OrderFlatDto.class) // OrderFlatRunCollector로 묶으려면 주문별로 연속해서 나와야 한다
                 .getResultList();
     }
-}
\ No newline at end of file
+
+    /**
+     * #jpa-springboot 대용량 데이터는 List가 아니라 Stream(JDBC 커서)으로 받자
+     *
+     * getResultList()는 결과 전체를 한 번에 메모리에 올리기 때문에 주문 전체를 export 하면 OOM이 발생한다.
+     * getResultStream()은 내부적으로 ScrollableResults(FORWARD_ONLY)를 사용해서 fetch size 만큼씩만 DB에서 읽어온다.
+     * DTO로 조회하므로 영속성 컨텍스트에도 쌓이지 않는다.
+     *
+     * - 반드시 트랜잭션 안에서, try-with-resources로 닫아주어야 한다. (커서와 커넥션을 물고 있음)
+     * - MySQL은 url에 useCursorFetch=true가 있어야 fetch size가 적용된다. 없으면 드라이버가 결과를 전부 메모리에 올린다.
+     * - order by o.id로 같은 주문의 row들이 연속해서 나오게 해야 아래처럼 한 번에 묶을 수 있다.
+     */
+    public Stream<OrderFlatDto> streamAllByDto_flat() {
+        return em.createQuery(
+                "select new jpabook.jpashop.repository.order.query.OrderFlatDto(o.id, m.name, o.orderDate, o.status, d.address, i.name, oi.orderPrice, oi.count)" +
+                        " from Order o" +
+                        " join o.member m" +
+                        " join o.delivery d" +
+                        " join o.orderItems oi" +
+                        " join oi.item i" +
+                        " order by o.id", OrderFlatDto.class)
+                .setHint(QueryHints.HINT_FETCH_SIZE, STREAM_FETCH_SIZE)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultStream();
+    }
+
+    /**
+     * 뻥튀기된 row를 흘려보내면서 orderId가 바뀌는 순간마다 OrderQueryDto 하나를 완성해서 넘겨준다.
+     * 메모리에는 현재 묶고 있는 주문 한 건만 남는다.
+     */
+    public void forEachByDto_flat(Consumer<OrderQueryDto> action) {
+        try (Stream<OrderFlatDto> flats = streamAllByDto_flat()) {
+            OrderFlatRunCollector.RunBuilder runs = new OrderFlatRunCollector.RunBuilder(action);
+            flats.forEachOrdered(runs::accept);
+            runs.finish();
+        }
+    }
+}
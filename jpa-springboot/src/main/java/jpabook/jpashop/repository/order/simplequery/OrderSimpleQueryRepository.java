@@ -22,7 +22,7 @@ public class OrderSimpleQueryRepository {
          * 하지만 Dto를 대상으로 할 경우 Lazy Loading이 작동하지 않고 필요한 컬럼을 모두 한 번에 가져오게 된다.(애초에 DTO는 Entity가 아니므로 Lazy Loading이 불가능하다.)
          */
         return em.createQuery(
-                "select new jpabook.jpashop.repository.order.simplequery.OrderSimpleQueryDto(o.id, m.name, o.orderDate, o.status, d.address)" +
+                "select new jpabook.jpashop.repository.order.simplequery.OrderSimpleQueryDto(o.id, m.name, o.orderDate, o.status, d.address, o.totalPrice)" +
                         " from Order o" +
                         " join o.member m" +
                         " join o.delivery d", OrderSimpleQueryDto.class)
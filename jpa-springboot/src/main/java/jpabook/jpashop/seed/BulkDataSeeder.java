@@ -0,0 +1,302 @@
+package jpabook.jpashop.seed;
+
+import jpabook.jpashop.domain.DeliveryStatus;
+import jpabook.jpashop.domain.OrderStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * #jpa-springboot 부하 테스트용 대용량 데이터는 JPA가 아니라 JDBC batch로 넣자
+ *
+ * InitDb처럼 em.persist()로 넣으면 엔티티마다 영속성 컨텍스트에 쌓이고, id를 받아오기 위한 왕복과 insert가 한 건씩 나간다.
+ * 수백만 건을 넣을 때는 영속성 컨텍스트를 거치지 않고 JDBC batch insert로 직접 넣는 것이 수십 배 빠르다.
+ *
+ * - id는 DB에서 받아오지 않고 스레드마다 미리 할당받은 블록(IdBlock)에서 꺼내 쓴다. 끝나면 하이버네이트 시퀀스를 그 뒤로 옮겨준다.
+ * - 상품 인기도와 회원별 주문 수는 Zipf 분포로 치우치게 만든다. (소수의 인기 상품/헤비 유저)
+ * - 주문을 chunk 단위로 나눠서 여러 스레드가 각자의 커넥션으로 동시에 넣는다.
+ * - MySQL은 url에 rewriteBatchedStatements=true가 있어야 batch가 multi-row insert로 바뀐다.
+ *
+ * 실행: ./gradlew bootRun --args='--spring.profiles.active=seed' (설정은 application-seed.yml)
+ */
+@Slf4j
+@Component
+@Profile("seed")
+public class BulkDataSeeder implements ApplicationRunner {
+
+    private static final int ID_BLOCK_SIZE = 10_000;
+    private static final int ORDERS_PER_CHUNK = 10_000;
+    private static final String[] CITIES = {"서울", "부산", "대구", "인천", "광주", "대전", "울산", "진주"};
+    private static final String[] TABLES = {"member", "item", "orders", "delivery", "order_item", "category"};
+    private static final String[] ID_COLUMNS = {"member_id", "item_id", "order_id", "delivery_id", "order_item_id", "category_id"};
+
+    private final DataSource dataSource;
+    private final int members;
+    private final int items;
+    private final int orders;
+    private final int maxItemsPerOrder;
+    private final double itemSkew;
+    private final double memberSkew;
+    private final int threads;
+    private final int batchSize;
+    private final long randomSeed;
+
+    private final AtomicLong nextId = new AtomicLong();
+
+    public BulkDataSeeder(DataSource dataSource,
+                          @Value("${jpashop.seed.members:100000}") int members,
+                          @Value("${jpashop.seed.items:100000}") int items,
+                          @Value("${jpashop.seed.orders:2000000}") int orders,
+                          @Value("${jpashop.seed.max-items-per-order:9}") int maxItemsPerOrder,
+                          @Value("${jpashop.seed.item-skew:1.0}") double itemSkew,
+                          @Value("${jpashop.seed.member-skew:0.8}") double memberSkew,
+                          @Value("${jpashop.seed.threads:0}") int threads,
+                          @Value("${jpashop.seed.batch-size:1000}") int batchSize,
+                          @Value("${jpashop.seed.random-seed:42}") long randomSeed) {
+        this.dataSource = dataSource;
+        this.members = members;
+        this.items = items;
+        this.orders = orders;
+        this.maxItemsPerOrder = maxItemsPerOrder;
+        this.itemSkew = itemSkew;
+        this.memberSkew = memberSkew;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.batchSize = batchSize;
+        this.randomSeed = randomSeed;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        long start = System.currentTimeMillis();
+        nextId.set(currentMaxId() + 1);
+
+        long memberIdBase = nextId.getAndAdd(members);
+        long itemIdBase = nextId.getAndAdd(items);
+        insertMembers(memberIdBase);
+        insertItems(itemIdBase);
+
+        ZipfSampler memberSampler = new ZipfSampler(members, memberSkew);
+        ZipfSampler itemSampler = new ZipfSampler(items, itemSkew);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int from = 0; from < orders; from += ORDERS_PER_CHUNK) {
+                int chunkFrom = from;
+                int chunkTo = Math.min(from + ORDERS_PER_CHUNK, orders);
+                futures.add(executor.submit(() -> insertOrders(chunkFrom, chunkTo, memberIdBase, itemIdBase, memberSampler, itemSampler)));
+            }
+            long orderItems = 0;
+            for (Future<Long> future : futures) {
+                orderItems += future.get();
+            }
+            log.info("seed 완료: member={}, item={}, order={}, orderItem={}, {}ms",
+                    members, items, orders, orderItems, System.currentTimeMillis() - start);
+        } finally {
+            executor.shutdown();
+        }
+
+        moveHibernateSequence(nextId.get());
+    }
+
+    private void insertMembers(long idBase) throws SQLException {
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement ps = con.prepareStatement(
+                     "insert into member (member_id, name, city, street, zipcode) values (?, ?, ?, ?, ?)")) {
+            con.setAutoCommit(false);
+            for (int i = 0; i < members; i++) {
+                ps.setLong(1, idBase + i);
+                ps.setString(2, "member" + (idBase + i)); //회원 이름은 유니크 - 다시 실행해도 겹치지 않게 id로 만든다
+                ps.setString(3, city(i));
+                ps.setString(4, street(i));
+                ps.setString(5, zipcode(i));
+                ps.addBatch();
+                if ((i + 1) % batchSize == 0) {
+                    ps.executeBatch();
+                    con.commit();
+                }
+            }
+            ps.executeBatch();
+            con.commit();
+        }
+    }
+
+    private void insertItems(long idBase) throws SQLException {
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement ps = con.prepareStatement(
+                     "insert into item (dtype, item_id, name, price, stock_quantity, version, author, isbn) values ('B', ?, ?, ?, ?, 0, ?, ?)")) {
+            con.setAutoCommit(false);
+            for (int i = 0; i < items; i++) {
+                ps.setLong(1, idBase + i);
+                ps.setString(2, "book" + i);
+                ps.setInt(3, price(i));
+                ps.setInt(4, 1_000_000);
+                ps.setString(5, "author" + (i % 1000));
+                ps.setString(6, String.format("978-%010d", i));
+                ps.addBatch();
+                if ((i + 1) % batchSize == 0) {
+                    ps.executeBatch();
+                    con.commit();
+                }
+            }
+            ps.executeBatch();
+            con.commit();
+        }
+    }
+
+    /**
+     * 주문 [from, to) 를 배송, 주문, 주문상품 순서로 (FK 순서) batch insert
+     * @return 넣은 주문상품 수
+     */
+    private long insertOrders(int from, int to, long memberIdBase, long itemIdBase,
+                              ZipfSampler memberSampler, ZipfSampler itemSampler) throws SQLException {
+        SplittableRandom random = new SplittableRandom(randomSeed + from);
+        IdBlock ids = new IdBlock();
+        LocalDateTime now = LocalDateTime.now();
+        long orderItemCount = 0;
+
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement delivery = con.prepareStatement(
+                     "insert into delivery (delivery_id, city, street, zipcode, status) values (?, ?, ?, ?, ?)");
+             PreparedStatement order = con.prepareStatement(
+                     "insert into orders (order_id, member_id, delivery_id, order_date, status, total_price) values (?, ?, ?, ?, ?, ?)");
+             PreparedStatement orderItem = con.prepareStatement(
+                     "insert into order_item (order_item_id, order_id, item_id, order_price, count, stock_pending) values (?, ?, ?, ?, ?, false)")) {
+            con.setAutoCommit(false);
+
+            for (int i = from; i < to; i++) {
+                int memberIndex = memberSampler.sample(random);
+                long deliveryId = ids.next();
+                long orderId = ids.next();
+                boolean canceled = random.nextInt(10) == 0;
+
+                delivery.setLong(1, deliveryId);
+                delivery.setString(2, city(memberIndex));
+                delivery.setString(3, street(memberIndex));
+                delivery.setString(4, zipcode(memberIndex));
+                delivery.setString(5, (!canceled && random.nextBoolean() ? DeliveryStatus.COMP : DeliveryStatus.READY).name());
+                delivery.addBatch();
+
+                order.setLong(1, orderId);
+                order.setLong(2, memberIdBase + memberIndex);
+                order.setLong(3, deliveryId);
+                order.setTimestamp(4, Timestamp.valueOf(now.minusMinutes(random.nextInt(365 * 24 * 60))));
+                order.setString(5, (canceled ? OrderStatus.CANCEL : OrderStatus.ORDER).name());
+
+                int lines = 1 + random.nextInt(maxItemsPerOrder);
+                int totalPrice = 0;
+                for (int j = 0; j < lines; j++) {
+                    int itemIndex = itemSampler.sample(random);
+                    int count = 1 + random.nextInt(3);
+                    orderItem.setLong(1, ids.next());
+                    orderItem.setLong(2, orderId);
+                    orderItem.setLong(3, itemIdBase + itemIndex);
+                    orderItem.setInt(4, price(itemIndex));
+                    orderItem.setInt(5, count);
+                    orderItem.addBatch();
+                    totalPrice += price(itemIndex) * count;
+                }
+                orderItemCount += lines;
+                order.setInt(6, totalPrice); //Order#addOrderItem과 같은 값
+                order.addBatch();
+
+                if ((i - from + 1) % batchSize == 0) {
+                    flush(con, delivery, order, orderItem);
+                }
+            }
+            flush(con, delivery, order, orderItem);
+        }
+        log.info("seed orders [{}, {}) 완료", from, to);
+        return orderItemCount;
+    }
+
+    private void flush(Connection con, PreparedStatement... statements) throws SQLException {
+        for (PreparedStatement statement : statements) {
+            statement.executeBatch();
+        }
+        con.commit();
+    }
+
+    private long currentMaxId() throws SQLException {
+        long max = 0;
+        try (Connection con = dataSource.getConnection(); Statement st = con.createStatement()) {
+            for (int i = 0; i < TABLES.length; i++) {
+                try (ResultSet rs = st.executeQuery("select coalesce(max(" + ID_COLUMNS[i] + "), 0) from " + TABLES[i])) {
+                    rs.next();
+                    max = Math.max(max, rs.getLong(1));
+                }
+            }
+        }
+        return max;
+    }
+
+    /**
+     * JDBC로 직접 넣은 id를 하이버네이트가 다시 발급하지 않도록 hibernate_sequence를 마지막 id 뒤로 옮긴다.
+     * PooledSequenceGenerator의 hibernate_sequence는 H2에서는 시퀀스, MySQL에서는 테이블로 만들어진다.
+     * pooled-lo는 시퀀스 값이 블록의 시작이므로 next부터 블록을 받는다. (increment by는 DDL에서 정해진 그대로 둔다)
+     */
+    private void moveHibernateSequence(long next) throws SQLException {
+        try (Connection con = dataSource.getConnection(); Statement st = con.createStatement()) {
+            String product = con.getMetaData().getDatabaseProductName();
+            if (product.contains("H2")) {
+                st.execute("alter sequence hibernate_sequence restart with " + next);
+            } else if (product.contains("MySQL")) {
+                st.executeUpdate("update hibernate_sequence set next_val = " + next);
+            } else {
+                log.warn("{}는 hibernate_sequence를 자동으로 옮기지 못합니다. next={}", product, next);
+            }
+        }
+    }
+
+    private static String city(int memberIndex) {
+        return CITIES[memberIndex % CITIES.length];
+    }
+
+    private static String street(int memberIndex) {
+        return "street" + memberIndex;
+    }
+
+    private static String zipcode(int memberIndex) {
+        return String.format("%05d", memberIndex % 100_000);
+    }
+
+    private static int price(int itemIndex) {
+        return 1000 + (itemIndex * 37 % 100) * 100;
+    }
+
+    /**
+     * 전역 카운터에서 ID_BLOCK_SIZE 만큼씩 미리 받아두고 스레드 안에서 꺼내 쓴다. (스레드 간 경합 최소화)
+     */
+    private class IdBlock {
+
+        private long next;
+        private long end;
+
+        long next() {
+            if (next == end) {
+                next = nextId.getAndAdd(ID_BLOCK_SIZE);
+                end = next + ID_BLOCK_SIZE;
+            }
+            return next++;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package jpabook.jpashop.seed;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * 0 ~ n-1 사이의 값을 Zipf 분포로 뽑는다. (순위 k가 뽑힐 확률 ∝ 1 / (k+1)^skew)
+ * skew가 0이면 균등 분포, 1 근처면 소수의 인기 상품에 주문이 몰리는 실제 쇼핑몰과 비슷한 분포가 된다.
+ *
+ * 누적 확률 배열을 미리 만들어 두고 이분 탐색하므로 한 번 뽑을 때 O(log n)
+ * 여러 스레드가 같이 써도 된다. (상태는 불변, 난수는 호출하는 쪽에서 넘겨준다)
+ */
+public class ZipfSampler {
+
+    private final double[] cumulative;
+
+    public ZipfSampler(int n, double skew) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n은 1 이상이어야 합니다. n=" + n);
+        }
+        cumulative = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1.0 / Math.pow(k + 1, skew);
+            cumulative[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cumulative[k] /= sum;
+        }
+    }
+
+    public int sample(SplittableRandom random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        int rank = index >= 0 ? index : -index - 1;
+        return Math.min(rank, cumulative.length - 1);
+    }
+}
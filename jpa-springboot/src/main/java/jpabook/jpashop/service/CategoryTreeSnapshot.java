@@ -0,0 +1,137 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.Category;
+import jpabook.jpashop.repository.CategoryRepository;
+import jpabook.jpashop.repository.CategoryTree;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import java.util.Collections;
+
+/**
+ * #jpa-springboot 자주 바뀌지 않는 카테고리 트리는 통째로 메모리에 두자
+ *
+ * 메뉴, 이동 경로처럼 요청마다 트리 전체가 필요하면 쿼리 한 번이라도 매번 읽을 이유가 없다.
+ * 읽기 전용 CategoryTree를 volatile 필드에 두고 바뀌면 새로 만들어서 통째로 바꾼다. (읽는 쪽은 락이 없다)
+ *
+ * Category가 커밋되면(POST_COMMIT_INSERT/UPDATE/DELETE) 다시 만들 것만 표시하고,
+ * jpashop.category-tree.refresh-interval-ms마다 표시가 있으면 새로 읽는다. 커밋한 스레드에서 읽지 않기 위해서다.
+ * 따라서 변경은 최대 그 주기만큼 늦게 보인다. JDBC로 바꾼 카테고리는 refresh()로 다시 만든다.
+ */
+@Slf4j
+@Component
+public class CategoryTreeSnapshot implements PostCommitInsertEventListener, PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+
+    private static final long serialVersionUID = 1L; //이벤트 리스너 인터페이스는 Serializable
+
+    private final CategoryRepository categoryRepository;
+    private final EntityManagerFactory entityManagerFactory;
+    private final TransactionTemplate readOnly;
+
+    private volatile CategoryTree tree = CategoryTree.of(Collections.emptyList());
+    private volatile boolean stale = true;
+
+    public CategoryTreeSnapshot(CategoryRepository categoryRepository,
+                                EntityManagerFactory entityManagerFactory,
+                                PlatformTransactionManager transactionManager) {
+        this.categoryRepository = categoryRepository;
+        this.entityManagerFactory = entityManagerFactory;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+    }
+
+    @PostConstruct
+    void registerListeners() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+    }
+
+    public CategoryTree getTree() {
+        return tree;
+    }
+
+    /**
+     * 모든 카테고리를 읽어서 새로 만든다
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void refresh() {
+        stale = false; //읽는 동안 커밋된 변경은 다시 표시되어 다음 주기에 반영된다
+        CategoryTree next = readOnly.execute(status -> categoryRepository.findTree());
+        tree = next;
+        log.debug("category tree refreshed: {} categories", next.size());
+    }
+
+    @Scheduled(fixedDelayString = "${jpashop.category-tree.refresh-interval-ms:1000}")
+    public void refreshIfStale() {
+        if (stale) {
+            refresh();
+        }
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        markStale(event.getEntity());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        markStale(event.getEntity());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        markStale(event.getEntity());
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return persister.getMappedClass() == Category.class;
+    }
+
+    /**
+     * Hibernate 5.4에서는 아직 추상 메서드라서 구현만 남겨 둔다. (오타가 고쳐진 requiresPostCommitHandling을 쓴다)
+     */
+    @Override
+    @Deprecated
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return requiresPostCommitHandling(persister);
+    }
+
+    private void markStale(Object entity) {
+        if (entity instanceof Category) { //리스너는 모든 엔티티에 대해 불린다
+            stale = true;
+        }
+    }
+}
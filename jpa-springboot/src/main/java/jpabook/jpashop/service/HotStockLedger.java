@@ -0,0 +1,241 @@
+package jpabook.jpashop.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jpabook.jpashop.domain.OrderItem;
+import jpabook.jpashop.exception.HotStockChangedException;
+import jpabook.jpashop.exception.NotEnoughStockException;
+import jpabook.jpashop.repository.ItemRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * #jpa-springboot 플래시 세일처럼 주문이 몇 개 상품에 몰리면 재고는 메모리에서 차감하고 DB에는 모아서 반영하자
+ *
+ * 조건부 update(ItemRepository#reserveStock)는 정확하지만 같은 상품의 주문은 모두 같은 row 락을 기다린다.
+ * 핫 상품으로 지정된 상품은
+ * 1. 재고를 JVM 안의 StripedStock에서 차감한다. DB 왕복도 row 락도 없다.
+ * 2. 주문상품은 stock_pending = true 로 저장한다. (아직 item.stock_quantity에서 빠지지 않았다는 표시)
+ * 3. 백그라운드 flusher가 주기적으로 pending 주문상품을 모아서 item.stock_quantity에서 한 번에 빼고 pending을 지운다.
+ *
+ * DB만 보면 항상 (남은 재고 = stock_quantity - pending 주문상품 수량) 이다.
+ * 주문이 커밋되면 pending 주문상품도 같이 커밋되고, 롤백되면 메모리 재고를 돌려놓는다.
+ * 그래서 서버가 죽어서 메모리 재고를 잃어도 시작할 때 pending을 모두 반영하고 stock_quantity를 다시 읽으면 된다.
+ *
+ * 주의: 핫 상품 지정은 해당 상품에 주문이 들어오기 전(시작 시 jpashop.hot-stock.item-ids)에 하는 것이 안전하다.
+ * 지정하는 도중에 조건부 update 경로로 들어온 주문은 메모리 재고에 반영되지 않는다.
+ * isHot()으로 확인한 후 차감하기 전에 지정이 해제되면 HotStockChangedException - 재시도하면 조건부 update 경로로 간다.
+ *
+ * 단일 인스턴스 전용: 메모리 재고는 JVM마다 따로 있다. 서버가 여러 대인데 같은 상품을 핫 상품으로 지정하면
+ * 서버마다 남은 재고 전체를 각자 팔아서 초과 판매된다. 핫 상품은 주문을 받는 서버가 한 대일 때만 지정할 것.
+ */
+@Slf4j
+@Component
+public class HotStockLedger {
+
+    private static final int FLUSH_BATCH = 500;
+
+    private final ItemRepository itemRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final List<Long> configuredItemIds;
+    private final int segments;
+
+    private final Map<Long, StripedStock> stocks = new ConcurrentHashMap<>();
+
+    public HotStockLedger(ItemRepository itemRepository,
+                          PlatformTransactionManager transactionManager,
+                          MeterRegistry meterRegistry,
+                          @Value("${jpashop.hot-stock.item-ids:}") List<Long> configuredItemIds,
+                          @Value("${jpashop.hot-stock.segments:0}") int segments) {
+        this.itemRepository = itemRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+        this.configuredItemIds = configuredItemIds;
+        this.segments = segments > 0 ? segments : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * 시작할 때 지난 실행에서 반영하지 못한 pending 주문상품을 모두 반영한 후 핫 상품을 등록한다.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcile() {
+        List<Long> itemIds = transactionTemplate.execute(status -> itemRepository.findItemIdsWithPendingStock());
+        for (Long itemId : itemIds) {
+            flush(itemId);
+        }
+        configuredItemIds.forEach(this::enable);
+    }
+
+    /**
+     * 핫 상품으로 지정한다. 남은 재고 = stock_quantity - pending 주문상품 수량
+     */
+    public void enable(Long itemId) {
+        stocks.computeIfAbsent(itemId, id -> {
+            long available = transactionTemplate.execute(status ->
+                    itemRepository.findOne(id).getStockQuantity() - itemRepository.pendingStock(id));
+            log.info("핫 상품 등록: itemId={}, 재고={}", id, available);
+            StripedStock stock = new StripedStock(available, segments);
+            Gauge.builder("jpashop.hot-stock.available", stock, StripedStock::available)
+                    .tag("item", String.valueOf(id))
+                    .register(meterRegistry);
+            return stock;
+        });
+    }
+
+    /**
+     * 핫 상품 지정을 해제한다. 남은 pending 주문상품을 반영한 후 조건부 update 경로로 돌아간다.
+     */
+    public void disable(Long itemId) {
+        StripedStock stock = stocks.remove(itemId);
+        if (stock != null) {
+            meterRegistry.remove(meterRegistry.find("jpashop.hot-stock.available").tag("item", String.valueOf(itemId)).gauge());
+            flush(itemId);
+        }
+    }
+
+    public boolean isHot(Long itemId) {
+        return stocks.containsKey(itemId);
+    }
+
+    /**
+     * 메모리 재고를 차감한다. 현재 트랜잭션이 롤백되면 돌려놓는다.
+     * 호출한 쪽은 주문상품을 stockPending = true 로 저장해야 한다.
+     */
+    public void reserve(Long itemId, int count) {
+        reserve(itemId, count, true);
+    }
+
+    private StripedStock reserve(Long itemId, int count, boolean releaseOnRollback) {
+        StripedStock stock = hotStock(itemId);
+        boolean reserved = stock.tryReserve(count);
+        Counter.builder("jpashop.hot-stock.reservations")
+                .tag("result", reserved ? "success" : "not-enough-stock")
+                .register(meterRegistry)
+                .increment();
+        if (!reserved) {
+            throw new NotEnoughStockException("need more stock");
+        }
+        if (releaseOnRollback) {
+            afterCompletion(committed -> {
+                if (!committed) {
+                    stock.release(count);
+                }
+            });
+        }
+        return stock;
+    }
+
+    /**
+     * 여러 상품의 메모리 재고를 모두 차감하거나 하나도 차감하지 않는다.
+     * 중간에 부족한 상품이 있으면 앞에서 차감한 것을 바로 돌려놓고 NotEnoughStockException
+     * 트랜잭션이 롤백되지 않아도 되므로 한 트랜잭션에서 여러 주문을 처리할 때 주문 하나만 실패시킬 수 있다. (OrderService#orderAll)
+     */
+    public void reserveAll(Map<Long, Integer> counts) {
+        Map<StripedStock, Integer> reserved = new LinkedHashMap<>(); //차감한 후에 지정이 해제되어도 같은 재고에 돌려놓는다
+        for (Map.Entry<Long, Integer> entry : counts.entrySet()) {
+            try {
+                reserved.put(reserve(entry.getKey(), entry.getValue(), false), entry.getValue());
+            } catch (NotEnoughStockException | HotStockChangedException e) {
+                reserved.forEach(StripedStock::release);
+                throw e;
+            }
+        }
+        afterCompletion(committed -> {
+            if (!committed) {
+                reserved.forEach(StripedStock::release);
+            }
+        });
+    }
+
+    /**
+     * 핫 상품 주문상품의 재고 복구 (주문 취소)
+     * 아직 반영 전이면 pending만 지우고, 이미 반영됐으면 DB 재고를 늘린다. 메모리 재고는 커밋된 후에 돌려놓는다.
+     */
+    public void cancel(OrderItem orderItem) {
+        Long itemId = orderItem.getItem().getId();
+        if (!itemRepository.clearPendingStock(orderItem.getId())) {
+            itemRepository.restoreStock(itemId, orderItem.getCount());
+        }
+        orderItem.setStockPending(false);
+        releaseOnCommit(itemId, orderItem.getCount());
+    }
+
+    /**
+     * 현재 트랜잭션이 커밋되면 메모리 재고를 돌려놓는다. DB 재고 복구는 호출한 쪽이 한다. (일괄 주문 취소)
+     * 그 사이 지정이 해제됐으면 돌려놓을 메모리 재고가 없다. (해제 후에는 DB 재고가 전부다)
+     */
+    public void releaseOnCommit(Long itemId, int count) {
+        StripedStock stock = stocks.get(itemId);
+        if (stock == null) {
+            return;
+        }
+        afterCompletion(committed -> {
+            if (committed) {
+                stock.release(count);
+            }
+        });
+    }
+
+    public long available(Long itemId) {
+        return hotStock(itemId).available();
+    }
+
+    @Scheduled(fixedDelayString = "${jpashop.hot-stock.flush-interval-ms:1000}")
+    public void flushAll() {
+        for (Long itemId : stocks.keySet()) {
+            flush(itemId);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushAll();
+    }
+
+    /**
+     * pending 주문상품을 FLUSH_BATCH개씩 item.stock_quantity에 반영한다.
+     */
+    public void flush(Long itemId) {
+        int applied;
+        do {
+            applied = transactionTemplate.execute(status -> itemRepository.applyPendingStock(itemId, FLUSH_BATCH));
+        } while (applied == FLUSH_BATCH);
+    }
+
+    private StripedStock hotStock(Long itemId) {
+        StripedStock stock = stocks.get(itemId);
+        if (stock == null) {
+            throw new HotStockChangedException("핫 상품이 아닙니다. itemId=" + itemId);
+        }
+        return stock;
+    }
+
+    /**
+     * 현재 트랜잭션이 끝난 후 커밋 여부를 넘겨준다. (트랜잭션 안에서만 호출 가능)
+     */
+    private void afterCompletion(Consumer<Boolean> callback) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                callback.accept(status == STATUS_COMMITTED);
+            }
+        });
+    }
+}
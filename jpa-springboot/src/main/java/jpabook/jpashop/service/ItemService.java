@@ -1,6 +1,11 @@
 package jpabook.jpashop.service;
 
 import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.exception.HotStockPatchException;
+import jpabook.jpashop.exception.ItemVersionConflictException;
+import jpabook.jpashop.exception.NotFoundException;
+import jpabook.jpashop.repository.ItemListPage;
+import jpabook.jpashop.repository.ItemPatch;
 import jpabook.jpashop.repository.ItemRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
@@ -14,6 +19,7 @@ import java.util.List;
 public class ItemService {
 
     private final ItemRepository itemRepository;
+    private final HotStockLedger hotStockLedger;
 
     @Transactional
     public void saveItem(Item item) {
@@ -28,10 +34,75 @@ public class ItemService {
         item.setStockQuantity(stockQuantity);
     }
 
+    /**
+     * 상품 부분 수정 (PATCH) - patch에서 null이 아닌 필드만 바꾼다.
+     *
+     * - version을 주면 조회 없이 update 한 번 (ItemRepository#patch), 버전이 다르면 ItemVersionConflictException
+     * - version이 없으면 조회 후 변경 감지 (Item은 @DynamicUpdate라 바뀐 컬럼만 update)
+     * - 상품이 없으면 어느 쪽이든 NotFoundException
+     * - 가격, 재고가 음수면 IllegalArgumentException
+     * - 핫 상품의 재고는 바꿀 수 없다. (HotStockPatchException) 메모리 재고는 옛 재고로 계속 팔고, pending 주문상품이 새 재고에서 다시 빠진다.
+     *   HotStockLedger#disable로 지정을 해제한 후(pending 반영) 수정한다.
+     *
+     * @return 수정 후의 버전 (다음 수정에 쓴다)
+     */
+    @Transactional
+    public Long patchItem(Long itemId, Long version, ItemPatch patch) {
+        if (isNegative(patch.getPrice()) || isNegative(patch.getStockQuantity())) {
+            throw new IllegalArgumentException("가격과 재고는 0 이상이어야 합니다.");
+        }
+        if (patch.getStockQuantity() != null && hotStockLedger.isHot(itemId)) {
+            throw new HotStockPatchException("핫 상품의 재고는 지정을 해제한 후 수정할 수 있습니다. itemId=" + itemId);
+        }
+        if (version != null) {
+            if (patch.isEmpty()) {
+                getItem(itemId);
+                return version;
+            }
+            if (!itemRepository.patch(itemId, version, patch)) {
+                getItem(itemId); //update가 0건이면 상품이 없는 것(404)과 버전이 다른 것(409)을 구분한다
+                throw new ItemVersionConflictException("다른 곳에서 먼저 수정되었습니다. itemId=" + itemId);
+            }
+            return version + 1;
+        }
+
+        Item item = getItem(itemId);
+        if (patch.getName() != null) {
+            item.setName(patch.getName());
+        }
+        if (patch.getPrice() != null) {
+            item.setPrice(patch.getPrice());
+        }
+        if (patch.getStockQuantity() != null) {
+            item.setStockQuantity(patch.getStockQuantity());
+        }
+        itemRepository.flush();
+        return item.getVersion();
+    }
+
+    private static boolean isNegative(Integer value) {
+        return value != null && value < 0;
+    }
+
+    private Item getItem(Long itemId) {
+        Item item = itemRepository.findOne(itemId);
+        if (item == null) {
+            throw new NotFoundException("상품이 없습니다. itemId=" + itemId);
+        }
+        return item;
+    }
+
     public List<Item> findItems() {
         return itemRepository.findAll();
     }
 
+    /**
+     * 상품 목록 화면 - 키셋 페이지 (ItemRepository#findListPage)
+     */
+    public ItemListPage findItemPage(Long afterId, Long beforeId, int size) {
+        return itemRepository.findListPage(afterId, beforeId, size);
+    }
+
     public Item findOne(Long itemId) {
         return itemRepository.findOne(itemId);
     }
@@ -0,0 +1,139 @@
+package jpabook.jpashop.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jpabook.jpashop.repository.MemberRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * #jpa-springboot 회원 가입 중복 검사는 대부분 "없는 이름"이므로 DB에 묻기 전에 메모리에서 거르자
+ *
+ * 이전에는 가입할 때마다 select m from Member m where m.name = ? 로 회원 엔티티를 만들어서 비어있는지만 확인했다.
+ * 1. 시작할 때 모든 회원 이름을 Bloom filter(NameBloomFilter)에 넣어둔다. 가입/이름 변경 때마다 새 이름을 넣는다.
+ * 2. filter가 "없다"고 하면 DB를 조회하지 않는다. "있을 수도 있다"일 때만 id 하나를 조회한다. (existsByName)
+ * 3. 검사와 insert 사이에 같은 이름이 들어오는 경합, 다른 서버에서 가입한 이름(이 서버의 filter에는 없다)은
+ *    member.name의 유니크 제약(uk_member_name)이 막는다. MemberService가 flush해서 이미 존재하는 회원 예외로 바꾼다.
+ *
+ * filter는 틀린 "없다"를 만들지 않는 쪽으로만 틀린다. (롤백된 가입, 바뀌기 전 이름은 오탐으로 남아서 DB를 한 번 더 볼 뿐)
+ * 채우기 전이거나 jpashop.member-name-index.enabled=false 이면 항상 DB를 조회한다.
+ * 회원 수가 expected-names를 크게 넘으면 오탐률이 올라가므로 rebuild()로 다시 만든다. (시작할 때는 회원 수의 2배 이상으로 잡는다)
+ *
+ * 메트릭: jpashop.member.name-index{result=absent|duplicate|false-positive} - absent만 DB를 조회하지 않은 경우
+ */
+@Slf4j
+@Component
+public class MemberNameIndex {
+
+    private static final int WARM_UP_PAGE = 10_000;
+
+    private final MemberRepository memberRepository;
+    private final TransactionTemplate readOnly;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final long expectedNames;
+    private final double falsePositiveRate;
+
+    private volatile NameBloomFilter filter; //null이면 아직 채우지 않음
+    private volatile NameBloomFilter building; //rebuild 중에 들어온 이름도 새 filter에 넣기 위해
+
+    public MemberNameIndex(MemberRepository memberRepository,
+                           PlatformTransactionManager transactionManager,
+                           MeterRegistry meterRegistry,
+                           @Value("${jpashop.member-name-index.enabled:true}") boolean enabled,
+                           @Value("${jpashop.member-name-index.expected-names:1000000}") long expectedNames,
+                           @Value("${jpashop.member-name-index.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.memberRepository = memberRepository;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.expectedNames = expectedNames;
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    /**
+     * InitDb 등 시작할 때 들어간 회원까지 포함하도록 컨텍스트가 다 뜬 후에 채운다.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        long members = readOnly.execute(status -> memberRepository.count());
+        NameBloomFilter next = new NameBloomFilter(Math.max(expectedNames, members * 2), falsePositiveRate);
+        building = next;
+        try {
+            long lastId = Long.MIN_VALUE;
+            while (true) {
+                long afterId = lastId;
+                List<Object[]> page = readOnly.execute(status -> memberRepository.findIdAndNamesAfter(afterId, WARM_UP_PAGE));
+                for (Object[] row : page) {
+                    if (row[1] != null) {
+                        next.put((String) row[1]);
+                    }
+                }
+                if (page.size() < WARM_UP_PAGE) {
+                    break;
+                }
+                lastId = (Long) page.get(page.size() - 1)[0];
+            }
+            filter = next;
+        } finally {
+            building = null;
+        }
+        log.info("회원 이름 인덱스 준비 완료: 회원 {}명, {}KB, {}ms",
+                members, next.sizeInBytes() / 1024, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @return 이 이름의 회원이 있는지. filter가 "없다"고 하면 DB를 조회하지 않는다.
+     */
+    public boolean exists(String name) {
+        if (name == null) {
+            return false;
+        }
+        NameBloomFilter current = filter;
+        if (current != null && !current.mightContain(name)) {
+            lookup("absent");
+            return false;
+        }
+        boolean exists = memberRepository.existsByName(name);
+        if (current != null) {
+            lookup(exists ? "duplicate" : "false-positive");
+        }
+        return exists;
+    }
+
+    /**
+     * 가입, 이름 변경 시 새 이름을 넣는다. 트랜잭션이 롤백되어도 빼지 않는다. (오탐이 하나 늘 뿐)
+     */
+    public void add(String name) {
+        if (name == null) {
+            return;
+        }
+        NameBloomFilter current = filter;
+        if (current != null) {
+            current.put(name);
+        }
+        NameBloomFilter next = building;
+        if (next != null) {
+            next.put(name);
+        }
+    }
+
+    private void lookup(String result) {
+        Counter.builder("jpashop.member.name-index")
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+}
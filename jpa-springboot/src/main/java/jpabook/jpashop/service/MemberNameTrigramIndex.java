@@ -0,0 +1,348 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.repository.MemberRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * #jpa-springboot 이름 중간 검색(like '%kim%')은 인덱스를 못 타므로 메모리의 trigram 인덱스로 회원 id부터 찾자
+ *
+ * like의 앞에 %가 있으면 B-tree 인덱스를 쓸 수 없어서 주문 검색마다 member 전체를 읽으며 orders와 조인한다.
+ * 1. 회원 이름을 소문자로 바꿔서 연속된 3글자(trigram)로 자르고 trigram마다 그 이름을 가진 회원 id 목록(정렬된 long 배열)을 둔다.
+ *    "kimjpa" -> kim, imj, mjp, jpa
+ * 2. 검색어도 trigram으로 잘라서 각 목록의 교집합을 구하면 검색어를 포함할 수 있는 회원 id 후보가 나온다.
+ * 3. 주문은 member_id in (후보)로 조회하고 m.name like '%검색어%'도 같이 걸어서 후보 중 실제로 포함하는 회원만 남긴다.
+ *    (trigram이 다 있어도 순서가 달라서 포함하지 않는 경우, 아래의 지워지지 않은 옛 이름 때문에 생긴 후보를 DB가 걸러준다)
+ *
+ * 동기화: 하이버네이트 커밋 후 이벤트(POST_COMMIT_INSERT/UPDATE/DELETE)로 Member의 저장, 이름 변경, 삭제를 반영한다.
+ * 롤백된 변경은 들어오지 않는다. JDBC나 벌크 update로 바꾼 이름은 반영되지 않으므로 rebuild()로 다시 만든다.
+ * 시작할 때는 MemberNameIndex처럼 컨텍스트가 다 뜬 후에 모든 이름을 읽어서 채운다.
+ *
+ * 단일 인스턴스 전용: 커밋 후 이벤트는 이 JVM에서 커밋한 변경만 들어온다. 서버가 여러 대면 다른 서버에서 가입한 회원이
+ * 후보에서 빠져서 검색 결과가 모자라므로, jpashop.member-search.single-instance=true로 서버가 한 대임을 밝혀야 인덱스를 쓴다.
+ * (기본값 false - 인덱스를 만들지 않고 항상 like 검색)
+ *
+ * 인덱스를 쓸 수 없으면 Optional.empty() - 호출한 쪽은 like 검색으로 처리한다.
+ * - 채우기 전이거나 jpashop.member-search.enabled=false 또는 single-instance=false
+ * - 검색어가 3글자 미만 (trigram이 없다)
+ * - 후보가 jpashop.member-search.max-candidates보다 많다 (in 절이 너무 커지고 그 정도면 전체를 읽는 것과 비슷하다)
+ *
+ * 메모리: 이름 하나당 (길이 - 2)개의 long. member000001 같은 12글자 이름 100만 개면 약 80MB
+ */
+@Slf4j
+@Component
+public class MemberNameTrigramIndex implements PostCommitInsertEventListener, PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+
+    private static final long serialVersionUID = 1L; //이벤트 리스너 인터페이스는 Serializable
+
+    private static final int WARM_UP_PAGE = 10_000;
+
+    private final MemberRepository memberRepository;
+    private final EntityManagerFactory entityManagerFactory;
+    private final TransactionTemplate readOnly;
+    private final boolean enabled;
+    private final int maxCandidates;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<Long, Postings> postings = new HashMap<>(); //trigram(문자 3개를 16비트씩) -> 회원 id 목록
+    private Map<Long, Postings> building; //rebuild 중에 커밋된 변경도 새 인덱스에 넣기 위해
+    private volatile boolean ready;
+
+    public MemberNameTrigramIndex(MemberRepository memberRepository,
+                                  EntityManagerFactory entityManagerFactory,
+                                  PlatformTransactionManager transactionManager,
+                                  @Value("${jpashop.member-search.enabled:true}") boolean enabled,
+                                  @Value("${jpashop.member-search.single-instance:false}") boolean singleInstance,
+                                  @Value("${jpashop.member-search.max-candidates:1000}") int maxCandidates) {
+        this.memberRepository = memberRepository;
+        this.entityManagerFactory = entityManagerFactory;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.enabled = enabled && singleInstance;
+        this.maxCandidates = maxCandidates;
+        if (enabled && !singleInstance) {
+            log.info("jpashop.member-search.single-instance=false - 회원 이름 trigram 인덱스를 쓰지 않고 like로 검색합니다.");
+        }
+    }
+
+    @PostConstruct
+    void registerListeners() {
+        if (!enabled) {
+            return;
+        }
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+    }
+
+    /**
+     * 모든 회원 이름으로 새로 만든다. 만드는 동안 커밋된 변경은 새 인덱스에도 반영된다. (같은 id를 두 번 넣어도 하나만 남는다)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        Map<Long, Postings> next = new HashMap<>();
+        write(() -> building = next);
+
+        long members = 0;
+        long lastId = Long.MIN_VALUE;
+        while (true) {
+            long afterId = lastId;
+            List<Object[]> page = readOnly.execute(status -> memberRepository.findIdAndNamesAfter(afterId, WARM_UP_PAGE));
+            write(() -> {
+                for (Object[] row : page) {
+                    add(next, (Long) row[0], (String) row[1]);
+                }
+            });
+            members += page.size();
+            if (page.size() < WARM_UP_PAGE) {
+                break;
+            }
+            lastId = (Long) page.get(page.size() - 1)[0];
+        }
+        write(() -> {
+            postings = next;
+            building = null;
+        });
+        ready = true;
+        log.info("회원 이름 trigram 인덱스 준비 완료: 회원 {}명, trigram {}개, {}ms", members, next.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @return 이름에 keyword를 포함할 수 있는 회원 id (오름차순, 실제로 포함하는지는 DB에서 다시 확인해야 한다)
+     *         인덱스로 찾을 수 없으면 empty
+     */
+    public Optional<List<Long>> findCandidates(String keyword) {
+        if (!ready || keyword == null || keyword.length() < 3) {
+            return Optional.empty();
+        }
+        long[] trigrams = trigrams(keyword);
+        lock.readLock().lock();
+        try {
+            List<Postings> lists = new ArrayList<>(trigrams.length);
+            for (long trigram : trigrams) {
+                Postings list = postings.get(trigram);
+                if (list == null) {
+                    return Optional.of(new ArrayList<>());
+                }
+                lists.add(list);
+            }
+            lists.sort(Comparator.comparingInt(list -> list.size));
+
+            long[] result = Arrays.copyOf(lists.get(0).ids, lists.get(0).size);
+            int size = result.length;
+            for (int i = 1; i < lists.size() && size > 0; i++) {
+                size = lists.get(i).retainIn(result, size);
+            }
+            if (size > maxCandidates) {
+                return Optional.empty();
+            }
+            List<Long> ids = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                ids.add(result[i]);
+            }
+            return Optional.of(ids);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //==하이버네이트 커밋 후 이벤트 (모든 엔티티의 이벤트가 들어오므로 Member만 처리한다)==//
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (!(event.getEntity() instanceof Member)) {
+            return;
+        }
+        Member member = (Member) event.getEntity();
+        write(() -> forEachIndex(index -> add(index, member.getId(), member.getName())));
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (!(event.getEntity() instanceof Member)) {
+            return;
+        }
+        int name = event.getPersister().getEntityMetamodel().getPropertyIndex("name");
+        String oldName = event.getOldState() == null ? null : (String) event.getOldState()[name];
+        String newName = (String) event.getState()[name];
+        if (oldName != null && oldName.equals(newName)) {
+            return;
+        }
+        Long id = (Long) event.getId();
+        write(() -> forEachIndex(index -> {
+            remove(index, id, oldName); //옛 상태를 모르면(merge 등) 옛 이름은 남는다. 후보만 늘고 DB의 like가 걸러준다
+            add(index, id, newName);
+        }));
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (!(event.getEntity() instanceof Member)) {
+            return;
+        }
+        int name = event.getPersister().getEntityMetamodel().getPropertyIndex("name");
+        Long id = (Long) event.getId();
+        String deletedName = (String) event.getDeletedState()[name];
+        write(() -> forEachIndex(index -> remove(index, id, deletedName)));
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return persister.getMappedClass() == Member.class;
+    }
+
+    /**
+     * Hibernate 5.4에서는 아직 추상 메서드라서 구현만 남겨 둔다. (오타가 고쳐진 requiresPostCommitHandling을 쓴다)
+     */
+    @Override
+    @Deprecated
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return requiresPostCommitHandling(persister);
+    }
+
+    private void write(Runnable change) {
+        lock.writeLock().lock();
+        try {
+            change.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void forEachIndex(Consumer<Map<Long, Postings>> change) {
+        change.accept(postings);
+        if (building != null) {
+            change.accept(building);
+        }
+    }
+
+    private static void add(Map<Long, Postings> index, Long id, String name) {
+        if (name == null) {
+            return;
+        }
+        for (long trigram : trigrams(name)) {
+            index.computeIfAbsent(trigram, key -> new Postings()).add(id);
+        }
+    }
+
+    private static void remove(Map<Long, Postings> index, Long id, String name) {
+        if (name == null) {
+            return;
+        }
+        for (long trigram : trigrams(name)) {
+            Postings list = index.get(trigram);
+            if (list != null) {
+                list.remove(id);
+            }
+        }
+    }
+
+    private static long[] trigrams(String text) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        if (lower.length() < 3) {
+            return new long[0];
+        }
+        long[] trigrams = new long[lower.length() - 2];
+        for (int i = 0; i < trigrams.length; i++) {
+            trigrams[i] = ((long) lower.charAt(i) << 32) | ((long) lower.charAt(i + 1) << 16) | lower.charAt(i + 2);
+        }
+        return trigrams;
+    }
+
+    /**
+     * 정렬된 회원 id 목록 - 대부분 id 순서대로 들어오므로 끝에 붙는다.
+     */
+    private static class Postings {
+
+        private long[] ids = new long[4];
+        private int size;
+
+        void add(long id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                return;
+            }
+            int insertAt = -index - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, insertAt, ids, insertAt + 1, size - insertAt);
+            ids[insertAt] = id;
+            size++;
+        }
+
+        void remove(long id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+                size--;
+            }
+        }
+
+        /**
+         * candidates[0, size) 중 이 목록에 있는 id만 앞으로 모은다. (둘 다 정렬되어 있으므로 한 번 훑는다)
+         * @return 남은 개수
+         */
+        int retainIn(long[] candidates, int size) {
+            int kept = 0;
+            int j = 0;
+            for (int i = 0; i < size && j < this.size; i++) {
+                while (j < this.size && ids[j] < candidates[i]) {
+                    j++;
+                }
+                if (j < this.size && ids[j] == candidates[i]) {
+                    candidates[kept++] = candidates[i];
+                }
+            }
+            return kept;
+        }
+    }
+}
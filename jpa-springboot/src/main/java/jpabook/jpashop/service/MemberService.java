@@ -3,6 +3,7 @@ package jpabook.jpashop.service;
 import jpabook.jpashop.domain.Member;
 import jpabook.jpashop.repository.MemberRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -30,6 +31,7 @@ import java.util.List;
 public class MemberService {
 
     private final MemberRepository memberRepository;
+    private final MemberNameIndex memberNameIndex;
 
     /**
      * 회원 가입
@@ -37,18 +39,33 @@ public class MemberService {
     @Transactional // 이 join은 읽기 전용 메소드가 아니므로 직접 @Transactional을 걸어서 readOnly=false 적용
     public Long join(Member member) {
 
-        validateDuplicateMember(member); //중복 회원 검증
+        validateDuplicateMember(member.getName()); //중복 회원 검증
         memberRepository.save(member);
+        flushUniqueName();
+        memberNameIndex.add(member.getName());
         return member.getId();
     }
 
-    private void validateDuplicateMember(Member member) {
-        List<Member> findMembers = memberRepository.findByName(member.getName());
-        if (!findMembers.isEmpty()) {
+    /**
+     * 대부분의 새 이름은 MemberNameIndex가 DB 조회 없이 통과시킨다.
+     */
+    private void validateDuplicateMember(String name) {
+        if (memberNameIndex.exists(name)) {
             throw new IllegalStateException("이미 존재하는 회원입니다.");
         }
     }
 
+    /**
+     * 검사 후 insert 전에 같은 이름이 먼저 커밋되면 유니크 제약(uk_member_name)에 걸린다. 커밋 때가 아니라 여기서 확인한다.
+     */
+    private void flushUniqueName() {
+        try {
+            memberRepository.flush();
+        } catch (DataIntegrityViolationException e) {
+            throw new IllegalStateException("이미 존재하는 회원입니다.", e);
+        }
+    }
+
     //회원 전체 조회
     public List<Member> findMembers() {
         return memberRepository.findAll();
@@ -64,7 +81,14 @@ public class MemberService {
     @Transactional
     public void update(Long id, String name) {
         Member member = memberRepository.findOne(id);
+        if (name == null || name.equals(member.getName())) {
+            member.setName(name);
+            return;
+        }
+        validateDuplicateMember(name);
         member.setName(name);
+        flushUniqueName();
+        memberNameIndex.add(name);
     }
 
 }
@@ -0,0 +1,78 @@
+package jpabook.jpashop.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 문자열 Bloom filter - "확실히 없다" 또는 "있을 수도 있다"만 답한다.
+ *
+ * 비트 배열 하나에 이름마다 해시 k개 위치의 비트를 켠다. 조회할 때 k개 중 하나라도 꺼져 있으면 넣은 적이 없는 이름이다.
+ * 이름을 빼는 기능은 없다. (다른 이름과 비트를 같이 쓰므로) 지워진 이름은 오탐으로 남을 뿐 틀린 "없다"를 만들지 않는다.
+ * 비트 수와 k는 예상 개수 n, 오탐률 p로 정한다. m = -n ln p / (ln 2)^2, k = m / n ln 2 (n = 100만, p = 1% 이면 약 1.2MB, k = 7)
+ * 비트는 CAS로 켜므로 락 없이 여러 스레드가 동시에 넣고 조회해도 된다.
+ */
+class NameBloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bits;
+    private final int hashes;
+
+    NameBloomFilter(long expectedNames, double falsePositiveRate) {
+        long n = Math.max(expectedNames, 1);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int wordCount = (int) Math.min((m + 63) / 64, Integer.MAX_VALUE / 64);
+        this.words = new AtomicLongArray(Math.max(wordCount, 1));
+        this.bits = words.length() * 64L;
+        this.hashes = Math.max(1, (int) Math.round((double) bits / n * Math.log(2)));
+    }
+
+    void put(String name) {
+        long hash1 = hash(name);
+        long hash2 = mix(hash1 ^ 0x9e3779b97f4a7c15L);
+        for (int i = 0; i < hashes; i++) {
+            long bit = ((hash1 + i * hash2) & Long.MAX_VALUE) % bits;
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+                current = words.get(word);
+            }
+        }
+    }
+
+    boolean mightContain(String name) {
+        long hash1 = hash(name);
+        long hash2 = mix(hash1 ^ 0x9e3779b97f4a7c15L);
+        for (int i = 0; i < hashes; i++) {
+            long bit = ((hash1 + i * hash2) & Long.MAX_VALUE) % bits;
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long sizeInBytes() {
+        return words.length() * 8L;
+    }
+
+    /**
+     * FNV-1a 64비트 후 murmur3 finalizer로 비트를 고르게 섞는다. (String#hashCode는 32비트라 100만 개 이상에서 충돌이 많다)
+     */
+    private static long hash(String name) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            h ^= name.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,32 @@
+package jpabook.jpashop.service;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * 주문 접수 큐에 들어가는 주문 하나 (OrderIntakeQueue, OrderService#orderAll)
+ * orderAll이 끝나면 orderId나 failure 중 하나가 채워진다.
+ */
+@Getter
+public class OrderCommand {
+
+    private final Long memberId;
+    private final List<OrderLine> lines;
+
+    private Long orderId;
+    private RuntimeException failure; //이 주문만 실패 (같은 배치의 다른 주문은 커밋된다)
+
+    public OrderCommand(Long memberId, List<OrderLine> lines) {
+        this.memberId = memberId;
+        this.lines = lines;
+    }
+
+    void placed(Long orderId) {
+        this.orderId = orderId;
+    }
+
+    void rejected(RuntimeException failure) {
+        this.failure = failure;
+    }
+}
@@ -0,0 +1,189 @@
+package jpabook.jpashop.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jpabook.jpashop.exception.OrderQueueFullException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * #jpa-springboot 주문 접수 큐 - 요청마다 커밋하지 말고 모아서 한 번에 커밋하자 (그룹 커밋)
+ *
+ * jpashop.order.intake.enabled = true 일 때만 writer 스레드가 뜬다. (꺼져 있으면 컨트롤러는 기존처럼 주문마다 트랜잭션)
+ * 1. 요청 스레드는 주문을 크기가 정해진 큐에 넣고 CompletableFuture를 받는다. 큐가 가득 차면 바로 OrderQueueFullException (HTTP 429)
+ *    큐를 무한정 늘리면 DB가 못 따라갈 때 메모리와 응답 시간만 늘어나므로 빨리 거절해서 클라이언트가 재시도하게 한다.
+ * 2. writer 스레드는 주문을 최대 batch-size건 또는 첫 주문부터 max-wait-ms 동안 모아서 OrderService#orderAll 트랜잭션 하나로 처리한다.
+ *    한가할 때는 max-wait-ms 만큼 응답이 늦어질 수 있고, 바쁠 때는 기다리지 않고 batch-size가 바로 찬다.
+ * 3. 커밋되면 주문마다 주문 id로, 재고 부족 등 그 주문만의 실패는 그 예외로 future를 완료한다.
+ *    배치 트랜잭션 자체가 실패하면(데드락, 커넥션 오류 등) 그 배치의 주문을 하나씩 다시 처리한다. (RetryingOrderExecutor)
+ *
+ * 메트릭: jpashop.order.intake.queue(대기 중인 주문 수), jpashop.order.intake.batch(배치 크기), jpashop.order.intake.rejected
+ */
+@Slf4j
+@Component
+public class OrderIntakeQueue {
+
+    private final OrderService orderService;
+    private final RetryingOrderExecutor retryingOrderExecutor;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long maxWaitMs;
+
+    private final BlockingQueue<PendingOrder> queue;
+    private final ExecutorService writers;
+    private volatile boolean running = true;
+
+    public OrderIntakeQueue(OrderService orderService,
+                            RetryingOrderExecutor retryingOrderExecutor,
+                            MeterRegistry meterRegistry,
+                            @Value("${jpashop.order.intake.enabled:false}") boolean enabled,
+                            @Value("${jpashop.order.intake.capacity:10000}") int capacity,
+                            @Value("${jpashop.order.intake.writers:2}") int writers,
+                            @Value("${jpashop.order.intake.batch-size:100}") int batchSize,
+                            @Value("${jpashop.order.intake.max-wait-ms:5}") long maxWaitMs) {
+        this.orderService = orderService;
+        this.retryingOrderExecutor = retryingOrderExecutor;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.batchSize = Math.max(batchSize, 1);
+        this.maxWaitMs = maxWaitMs;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+
+        if (enabled) {
+            Gauge.builder("jpashop.order.intake.queue", queue, BlockingQueue::size).register(meterRegistry);
+            this.writers = Executors.newFixedThreadPool(writers, runnable -> {
+                Thread thread = new Thread(runnable, "order-intake-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            for (int i = 0; i < writers; i++) {
+                this.writers.execute(this::drain);
+            }
+        } else {
+            this.writers = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public CompletableFuture<Long> submit(Long memberId, Long itemId, int count) {
+        List<OrderLine> lines = new ArrayList<>();
+        lines.add(new OrderLine(itemId, count));
+        return submit(memberId, lines);
+    }
+
+    /**
+     * @throws OrderQueueFullException 큐가 가득 찼을 때 (기다리지 않는다)
+     */
+    public CompletableFuture<Long> submit(Long memberId, List<OrderLine> lines) {
+        if (!enabled || !running) {
+            throw new IllegalStateException("주문 접수 큐가 꺼져 있습니다.");
+        }
+        PendingOrder pending = new PendingOrder(new OrderCommand(memberId, lines));
+        if (!queue.offer(pending)) {
+            Counter.builder("jpashop.order.intake.rejected").register(meterRegistry).increment();
+            throw new OrderQueueFullException("주문이 많아 접수할 수 없습니다. 잠시 후 다시 시도해 주세요.");
+        }
+        return pending.future;
+    }
+
+    private void drain() {
+        List<PendingOrder> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingOrder first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+                while (batch.size() < batchSize) {
+                    if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    PendingOrder next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("주문 배치 처리 실패", e);
+                batch.forEach(pending -> pending.future.completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<PendingOrder> batch) {
+        DistributionSummary.builder("jpashop.order.intake.batch").register(meterRegistry).record(batch.size());
+        List<OrderCommand> commands = batch.stream().map(pending -> pending.command).collect(Collectors.toList());
+        try {
+            orderService.orderAll(commands);
+        } catch (RuntimeException e) {
+            log.warn("주문 배치 {}건 트랜잭션 실패, 한 건씩 다시 처리합니다.", batch.size(), e);
+            batch.forEach(this::writeOne);
+            return;
+        }
+
+        for (PendingOrder pending : batch) {
+            if (pending.command.getFailure() != null) {
+                pending.future.completeExceptionally(pending.command.getFailure());
+            } else {
+                pending.future.complete(pending.command.getOrderId());
+            }
+        }
+    }
+
+    private void writeOne(PendingOrder pending) {
+        try {
+            pending.future.complete(retryingOrderExecutor.order(pending.command.getMemberId(), pending.command.getLines()));
+        } catch (RuntimeException e) {
+            pending.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * 더 받지 않고 큐에 남은 주문까지 처리한 후 종료한다.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (writers != null) {
+            writers.shutdown();
+            writers.awaitTermination(30, TimeUnit.SECONDS);
+        }
+    }
+
+    private static class PendingOrder {
+        private final OrderCommand command;
+        private final CompletableFuture<Long> future = new CompletableFuture<>();
+
+        private PendingOrder(OrderCommand command) {
+            this.command = command;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package jpabook.jpashop.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Positive;
+
+/**
+ * 여러 상품 주문의 한 줄 (장바구니의 상품 하나)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderLine {
+
+    @NotNull
+    private Long itemId;
+    @Positive
+    private int count; //0 이하면 재고 조건(stock_quantity >= count)을 통과해서 재고가 늘어난다
+}
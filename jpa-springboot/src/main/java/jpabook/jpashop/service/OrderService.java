@@ -2,34 +2,66 @@ package jpabook.jpashop.service;
 
 import jpabook.jpashop.domain.*;
 import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.exception.NotEnoughStockException;
+import jpabook.jpashop.exception.NotFoundException;
 import jpabook.jpashop.repository.ItemRepository;
 import jpabook.jpashop.repository.MemberRepository;
+import jpabook.jpashop.repository.OrderCancelLine;
 import jpabook.jpashop.repository.OrderRepository;
 import jpabook.jpashop.repository.OrderSearch;
+import jpabook.jpashop.repository.OrderSearchRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static java.util.stream.Collectors.toSet;
 
 @Service
 @Transactional(readOnly = true)
 @RequiredArgsConstructor
 public class OrderService {
 
+    private static final int CANCEL_CHUNK = 500;
+
     private final OrderRepository orderRepository;
+    private final OrderSearchRepository orderSearchRepository;
     private final MemberRepository memberRepository;
     private final ItemRepository itemRepository;
+    private final HotStockLedger hotStockLedger;
+    private final MemberNameTrigramIndex memberNameTrigramIndex;
 
     /**
      * 주문
+     * 재고는 조건부 update로 차감한다. (ItemRepository#reserveStock)
+     * 핫 상품은 메모리에서 차감하고 DB에는 나중에 모아서 반영한다. (HotStockLedger)
      */
     @Transactional
     public Long order(Long memberId, Long itemId, int count) {
 
-        //엔티티 조회
+        //엔티티 조회, 재고 차감
         Member member = memberRepository.findOne(memberId);
-        Item item = itemRepository.findOne(itemId);
+        boolean hot = hotStockLedger.isHot(itemId);
+        Item item;
+        if (hot) {
+            hotStockLedger.reserve(itemId, count);
+            item = itemRepository.findOne(itemId);
+        } else {
+            item = itemRepository.reserveStock(itemId, count);
+        }
 
         //배송정보 생성
         Delivery delivery = new Delivery();
@@ -37,7 +69,8 @@ public class OrderService {
         delivery.setStatus(DeliveryStatus.READY);
 
         //주문상품 생성
-        OrderItem orderItem = OrderItem.createOrderItem(item, item.getPrice(), count);
+        OrderItem orderItem = OrderItem.createReservedOrderItem(item, item.getPrice(), count);
+        orderItem.setStockPending(hot);
 
         //주문 생성
         Order order = Order.createOrder(member, delivery, orderItem);
@@ -48,6 +81,174 @@ public class OrderService {
         return order.getId();
     }
 
+    /**
+     * #jpa-springboot 여러 상품 주문은 상품마다 따로 주문하지 말고 한 트랜잭션, 테이블당 한 번의 왕복으로
+     *
+     * 상품 20개를 order(memberId, itemId, count)로 주문하면 트랜잭션 20개, 회원/상품 조회 20번, 배송 20개가 생긴다.
+     * - 재고는 update 한 번으로 모두 차감한다. (ItemRepository#reserveStocks, 핫 상품은 HotStockLedger)
+     * - 상품은 in 쿼리 한 번으로 조회한다.
+     * - 주문, 배송, 주문상품은 persist만 하고 커밋할 때 한 번에 flush 한다.
+     *   hibernate.jdbc.batch_size, order_inserts 설정으로 같은 테이블의 insert는 JDBC batch로 묶여서 나간다.
+     * 없는 회원, 없는 상품은 NotFoundException (404)
+     */
+    @Transactional
+    public Long order(Long memberId, List<OrderLine> lines) {
+        if (lines.isEmpty()) {
+            throw new IllegalArgumentException("주문상품이 없습니다.");
+        }
+        if (!isValid(lines)) {
+            throw new IllegalArgumentException("주문상품이 올바르지 않습니다.");
+        }
+
+        //같은 상품이 여러 줄에 있으면 수량을 합쳐서 차감
+        Map<Long, Integer> hotCounts = new LinkedHashMap<>();
+        Map<Long, Integer> counts = new LinkedHashMap<>();
+        mergeCounts(lines, hotCounts, counts);
+
+        //엔티티 조회, 재고 차감
+        Member member = memberRepository.findOne(memberId);
+        if (member == null) {
+            throw new NotFoundException("회원이 없습니다. memberId=" + memberId);
+        }
+        hotCounts.forEach(hotStockLedger::reserve);
+        try {
+            itemRepository.reserveStocks(counts);
+        } catch (NotEnoughStockException e) {
+            //없는 상품도 update가 0건이라 재고 부족과 같아 보인다. 실패했을 때만 상품이 다 있는지 확인한다 (성공하면 조회 추가 없음)
+            if (itemRepository.findAllById(counts.keySet()).size() < counts.size()) {
+                throw new NotFoundException("상품이 없습니다. itemIds=" + counts.keySet());
+            }
+            throw e;
+        }
+        Map<Long, Item> items = new HashMap<>();
+        for (Item item : itemRepository.findAllById(lines.stream().map(OrderLine::getItemId).collect(toSet()))) {
+            items.put(item.getId(), item);
+        }
+
+        //주문 생성, 저장
+        Order order = createOrder(member, lines, items, hotCounts.keySet());
+        orderRepository.save(order);
+
+        return order.getId();
+    }
+
+    /**
+     * #jpa-springboot 주문이 몰리면 주문마다 커밋하지 말고 여러 주문을 한 트랜잭션으로 묶어서 커밋하자 (그룹 커밋)
+     *
+     * 주문마다 트랜잭션을 커밋하면 커밋마다 DB가 redo 로그를 디스크에 fsync 한다. 주문이 몰리면 이 fsync 횟수가 처리량의 상한이 된다.
+     * 주문 n건을 한 트랜잭션으로 처리하면 fsync는 한 번이고 insert는 테이블마다 JDBC batch로 묶인다. (OrderIntakeQueue가 모아서 호출한다)
+     *
+     * 재고가 부족한 주문 하나 때문에 배치 전체를 롤백하면 안 되므로 실패할 수 있는 검사는 DB에 쓰기 전에 끝낸다.
+     * - 배치에 나오는 일반 상품을 id 순으로 한 번에 잠그고(select for update) 재고 검사와 차감은 자바에서 한다.
+     *   잠근 row이므로 검사와 차감 사이에 다른 트랜잭션이 끼어들 수 없고, 차감은 커밋할 때 상품마다 update 한 번으로 나간다.
+     * - 핫 상품은 HotStockLedger#reserveAll로 주문 단위로 전부 차감하거나 하나도 차감하지 않는다.
+     * 실패한 주문은 command.failure에 예외를 담고 넘어간다. 나머지 주문은 같이 커밋된다.
+     */
+    @Transactional
+    public void orderAll(List<OrderCommand> allCommands) {
+        //상품 id가 없거나 수량이 0 이하인 주문은 조회 전에 거른다 (큐로 들어온 주문도 API 검증을 거쳤다고 가정하지 않는다)
+        List<OrderCommand> commands = new ArrayList<>();
+        for (OrderCommand command : allCommands) {
+            if (isValid(command.getLines())) {
+                commands.add(command);
+            } else {
+                command.rejected(new IllegalArgumentException("회원 또는 주문상품이 올바르지 않습니다."));
+            }
+        }
+        if (commands.isEmpty()) {
+            return;
+        }
+
+        //같은 상품이 여러 줄에 있으면 수량을 합쳐서 차감
+        List<Map<Long, Integer>> hotCountsList = new ArrayList<>();
+        List<Map<Long, Integer>> countsList = new ArrayList<>();
+        Set<Long> hotItemIds = new HashSet<>();
+        Set<Long> itemIds = new HashSet<>();
+        for (OrderCommand command : commands) {
+            Map<Long, Integer> hotCounts = new LinkedHashMap<>();
+            Map<Long, Integer> counts = new LinkedHashMap<>();
+            mergeCounts(command.getLines(), hotCounts, counts);
+            hotCountsList.add(hotCounts);
+            countsList.add(counts);
+            hotItemIds.addAll(hotCounts.keySet());
+            itemIds.addAll(counts.keySet());
+        }
+
+        //회원, 상품은 배치 전체에서 한 번씩 조회
+        Map<Long, Member> members = new HashMap<>();
+        for (Member member : memberRepository.findAllById(commands.stream().map(OrderCommand::getMemberId).collect(toSet()))) {
+            members.put(member.getId(), member);
+        }
+        Map<Long, Item> items = new HashMap<>();
+        if (!itemIds.isEmpty()) {
+            itemRepository.findAllByIdForUpdate(itemIds).forEach(item -> items.put(item.getId(), item));
+        }
+        if (!hotItemIds.isEmpty()) {
+            itemRepository.findAllById(hotItemIds).forEach(item -> items.put(item.getId(), item));
+        }
+
+        for (int i = 0; i < commands.size(); i++) {
+            OrderCommand command = commands.get(i);
+            Map<Long, Integer> hotCounts = hotCountsList.get(i);
+            Map<Long, Integer> counts = countsList.get(i);
+
+            Member member = members.get(command.getMemberId());
+            if (member == null
+                    || !items.keySet().containsAll(hotCounts.keySet()) || !items.keySet().containsAll(counts.keySet())) {
+                command.rejected(new IllegalArgumentException("회원 또는 주문상품이 올바르지 않습니다."));
+                continue;
+            }
+            //재고 검사를 모두 통과해야 차감한다
+            if (counts.entrySet().stream().anyMatch(e -> items.get(e.getKey()).getStockQuantity() < e.getValue())) {
+                command.rejected(new NotEnoughStockException("need more stock"));
+                continue;
+            }
+            try {
+                hotStockLedger.reserveAll(hotCounts);
+            } catch (NotEnoughStockException e) {
+                command.rejected(e);
+                continue;
+            }
+            counts.forEach((itemId, count) -> items.get(itemId).removeStock(count));
+
+            Order order = createOrder(member, command.getLines(), items, hotCounts.keySet());
+            orderRepository.save(order);
+            command.placed(order.getId());
+        }
+    }
+
+    private boolean isValid(List<OrderLine> lines) {
+        return !lines.isEmpty() && lines.stream().allMatch(line -> line.getItemId() != null && line.getCount() > 0);
+    }
+
+    private void mergeCounts(List<OrderLine> lines, Map<Long, Integer> hotCounts, Map<Long, Integer> counts) {
+        for (OrderLine line : lines) {
+            Map<Long, Integer> target = hotStockLedger.isHot(line.getItemId()) ? hotCounts : counts;
+            target.merge(line.getItemId(), line.getCount(), Integer::sum);
+        }
+    }
+
+    /**
+     * 재고를 이미 차감한 주문 생성 - 주문상품은 줄마다 하나, 배송은 주문마다 하나
+     */
+    private Order createOrder(Member member, List<OrderLine> lines, Map<Long, Item> items, Set<Long> hotItemIds) {
+        //배송정보 생성
+        Delivery delivery = new Delivery();
+        delivery.setAddress(member.getAddress());
+        delivery.setStatus(DeliveryStatus.READY);
+
+        //주문상품 생성
+        OrderItem[] orderItems = new OrderItem[lines.size()];
+        for (int i = 0; i < lines.size(); i++) {
+            OrderLine line = lines.get(i);
+            Item item = items.get(line.getItemId());
+            orderItems[i] = OrderItem.createReservedOrderItem(item, item.getPrice(), line.getCount());
+            orderItems[i].setStockPending(hotItemIds.contains(line.getItemId()));
+        }
+
+        return Order.createOrder(member, delivery, orderItems);
+    }
+
     /**
      * 주문 취소
      */
@@ -56,11 +257,86 @@ public class OrderService {
         //주문 엔티티 조회
         Order order = orderRepository.findOne(orderId);
         //주문 취소
-        order.cancel();
+        order.cancel(orderItem -> {
+            if (hotStockLedger.isHot(orderItem.getItem().getId())) {
+                hotStockLedger.cancel(orderItem);
+            } else {
+                orderItem.cancel();
+            }
+        });
+    }
+
+    /**
+     * 주문 일괄 취소 (결제 장애, 부정 주문 정리 등)
+     * CANCEL_CHUNK건씩 잘라서 chunk마다 조회 한 번(배송 상태 검증 + 잠금), 벌크 update 세 번으로 처리한다. (OrderRepository#cancelAll)
+     * 이미 취소된 주문은 건너뛰고, 배송완료된 주문이 하나라도 있으면 전체를 롤백한다.
+     * 끝나면 영속성 컨텍스트가 비워진다.
+     *
+     * @return 취소된 주문 수
+     */
+    @Transactional
+    public int cancelOrders(Collection<Long> orderIds) {
+        List<Long> distinct = new ArrayList<>(new LinkedHashSet<>(orderIds));
+        int cancelled = 0;
+        for (int from = 0; from < distinct.size(); from += CANCEL_CHUNK) {
+            List<OrderCancelLine> lines = orderRepository.findCancelLinesForUpdate(
+                    distinct.subList(from, Math.min(from + CANCEL_CHUNK, distinct.size())));
+            if (lines.isEmpty()) {
+                continue;
+            }
+
+            Set<Long> cancellable = new LinkedHashSet<>();
+            Map<Long, Integer> hotCounts = new HashMap<>();
+            for (OrderCancelLine line : lines) {
+                if (line.getDeliveryStatus() == DeliveryStatus.COMP) {
+                    throw new IllegalStateException("이미 배송완료된 상품은 취소가 불가능합니다. orderId=" + line.getOrderId());
+                }
+                cancellable.add(line.getOrderId());
+                if (hotStockLedger.isHot(line.getItemId())) {
+                    hotCounts.merge(line.getItemId(), line.getCount(), Integer::sum);
+                }
+            }
+
+            cancelled += orderRepository.cancelAll(new ArrayList<>(cancellable));
+            hotCounts.forEach(hotStockLedger::releaseOnCommit);
+        }
+        return cancelled;
     }
 
-    //검색
+    /**
+     * 검색 - 회원 이름은 포함 검색 (like '%이름%')
+     * 이름의 회원 후보를 trigram 인덱스에서 찾을 수 있으면 그 회원들의 주문만 조회하고, 아니면 like로 회원 전체를 훑는다.
+     */
     public List<Order> findOrders(OrderSearch orderSearch) {
-        return orderRepository.findAllByString(orderSearch);
+        String memberName = orderSearch.getMemberName();
+        if (!StringUtils.hasText(memberName)) {
+            return orderRepository.findAllBySearch(orderSearch);
+        }
+        String namePattern = "%" + escapeLike(memberName) + "%";
+        Optional<List<Long>> memberIds = memberNameTrigramIndex.findCandidates(memberName);
+        if (memberIds.isPresent()) {
+            return orderRepository.findAllByMemberIds(orderSearch.getOrderStatus(), memberIds.get(), namePattern);
+        }
+        OrderSearch scan = new OrderSearch();
+        scan.setOrderStatus(orderSearch.getOrderStatus());
+        scan.setMemberName(namePattern);
+        return orderRepository.findAllBySearch(scan);
+    }
+
+    /**
+     * 검색어의 %, _를 글자 그대로 찾도록 escape 한다. (escape 문자 !는 Querydsl contains와 같다 - searchOrders와 결과를 맞춘다)
+     */
+    private static String escapeLike(String keyword) {
+        return keyword.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+
+    /**
+     * 검색 페이징 - findOrders와 같은 조건을 한 페이지씩 (최대 1000건에서 잘리지 않고 전체 개수도 준다)
+     */
+    public Page<Order> searchOrders(OrderSearch orderSearch, Pageable pageable) {
+        String memberName = orderSearch.getMemberName();
+        List<Long> memberIds = StringUtils.hasText(memberName)
+                ? memberNameTrigramIndex.findCandidates(memberName).orElse(null) : null;
+        return orderSearchRepository.searchPage(orderSearch, memberIds, pageable);
     }
 }
@@ -0,0 +1,125 @@
+package jpabook.jpashop.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jpabook.jpashop.repository.OrderRepository;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * #jpa-springboot 반정규화한 주문 총액(orders.total_price)이 주문상품과 맞는지 주기적으로 확인하자
+ *
+ * 총액은 Order#addOrderItem이 유지하지만 JDBC로 넣은 주문이나 손으로 고친 주문상품은 맞지 않을 수 있다.
+ * 1. 주문을 id 순서로 chunk-size 건씩 읽으면서 주문상품으로 총액을 다시 계산해서 비교한다. (chunk마다 group by 쿼리 한 번, 별도 트랜잭션)
+ * 2. 다른 주문은 로그와 jpashop.order.total-price.drift 카운터로 알린다.
+ * 3. repair = true 이면 그 chunk의 다른 주문만 벌크 update로 다시 계산해서 저장한다.
+ *
+ * 확인하는 사이에 주문이 바뀌면 잠깐 다르게 보일 수 있다. repair는 그 시점의 주문상품으로 다시 계산하므로 결과는 맞다.
+ *
+ * 주기적인 확인(enabled)과 repair는 기본으로 꺼져 있다. 켜기 전에 한 번 check()로 불일치가 얼마나 되는지 보고 정할 것.
+ * 여러 인스턴스가 동시에 확인하지 않게 하는 락은 없다. enabled는 인스턴스 하나(배치 서버 등)에서만 켠다.
+ * (한 인스턴스 안에서는 fixedDelay라 이전 확인이 끝나야 다음 확인이 시작된다)
+ * 실수로 둘이 같이 돌아도 repair는 주문상품으로 다시 계산한 값을 쓰는 것이라 결과는 같고, 일과 drift 카운터만 두 배가 된다.
+ */
+@Slf4j
+@Component
+public class OrderTotalPriceChecker {
+
+    private static final int SAMPLE_IDS = 10; //로그에 남길 다른 주문 id 수
+
+    private final OrderRepository orderRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter driftCounter;
+    private final boolean enabled;
+    private final int chunkSize;
+    private final boolean repair;
+
+    public OrderTotalPriceChecker(OrderRepository orderRepository,
+                                  PlatformTransactionManager transactionManager,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${jpashop.order-total-check.enabled:false}") boolean enabled,
+                                  @Value("${jpashop.order-total-check.chunk-size:1000}") int chunkSize,
+                                  @Value("${jpashop.order-total-check.repair:false}") boolean repair) {
+        this.orderRepository = orderRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.driftCounter = Counter.builder("jpashop.order.total-price.drift").register(meterRegistry);
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+        this.repair = repair;
+    }
+
+    @Scheduled(initialDelayString = "${jpashop.order-total-check.interval-ms:3600000}",
+            fixedDelayString = "${jpashop.order-total-check.interval-ms:3600000}")
+    public void scheduledCheck() {
+        if (enabled) {
+            check();
+        }
+    }
+
+    /**
+     * 모든 주문을 확인한다.
+     */
+    public Report check() {
+        long start = System.currentTimeMillis();
+        Report report = new Report();
+        long lastId = Long.MIN_VALUE;
+        while (true) {
+            long afterId = lastId;
+            List<Object[]> rows = transactionTemplate.execute(status -> checkChunk(afterId, report));
+            if (rows.size() < chunkSize) {
+                break;
+            }
+            lastId = (Long) rows.get(rows.size() - 1)[0];
+        }
+        driftCounter.increment(report.drifted);
+        if (report.drifted > 0) {
+            log.warn("주문 총액 불일치: 주문 {}건 중 {}건 (다시 계산 {}건), 예: {}",
+                    report.checked, report.drifted, report.repaired, report.sampleIds);
+        } else {
+            log.info("주문 총액 확인 완료: 주문 {}건, {}ms", report.checked, System.currentTimeMillis() - start);
+        }
+        return report;
+    }
+
+    private List<Object[]> checkChunk(long afterId, Report report) {
+        List<Object[]> rows = orderRepository.findTotalPricesAfter(afterId, chunkSize);
+        List<Long> drifted = new ArrayList<>();
+        for (Object[] row : rows) {
+            Long orderId = (Long) row[0];
+            long stored = ((Number) row[1]).longValue();
+            long computed = ((Number) row[2]).longValue();
+            if (stored != computed) {
+                drifted.add(orderId);
+                if (report.sampleIds.size() < SAMPLE_IDS) {
+                    report.sampleIds.add(orderId);
+                }
+            }
+        }
+        report.checked += rows.size();
+        report.drifted += drifted.size();
+        if (repair && !drifted.isEmpty()) {
+            report.repaired += orderRepository.recalculateTotalPrices(drifted);
+        }
+        return rows;
+    }
+
+    /**
+     * 확인 결과
+     */
+    @Getter
+    public static class Report {
+
+        private long checked; //확인한 주문 수
+        private long drifted; //총액이 다른 주문 수
+        private long repaired; //다시 계산해서 저장한 주문 수
+        private final List<Long> sampleIds = new ArrayList<>(); //총액이 다른 주문 id 일부
+    }
+}
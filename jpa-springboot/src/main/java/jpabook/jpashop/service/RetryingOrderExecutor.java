@@ -0,0 +1,127 @@
+package jpabook.jpashop.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * #jpa-springboot 낙관적 락 충돌은 트랜잭션을 새로 시작해서 재시도하자
+ *
+ * Item에 @Version이 있으므로 같은 상품을 동시에 변경 감지로 수정하면 늦게 커밋하는 쪽이 ObjectOptimisticLockingFailureException으로 실패한다.
+ * (ex. 주문 취소의 item.addStock과 상품 수정이 겹칠 때) 락 대기 타임아웃, 데드락도 ConcurrencyFailureException이다.
+ * 이 예외들은 다시 하면 대부분 성공하므로 사용자에게 바로 에러를 보여주지 말고 재시도한다.
+ *
+ * - 시도마다 새 트랜잭션: OrderService의 @Transactional 메서드를 트랜잭션 밖에서 호출한다.
+ *   실패한 트랜잭션의 영속성 컨텍스트(옛 버전의 엔티티)는 롤백될 때 비워지므로 다음 시도는 최신 상태를 다시 읽는다.
+ *   이미 트랜잭션 안이면 재시도해도 같은 트랜잭션이 롤백 전용이므로 IllegalStateException
+ * - 시도 횟수 제한: jpashop.order.retry.max-attempts, 다 쓰면 마지막 예외를 그대로 던진다.
+ * - 지터 백오프: 0 ~ min(max-backoff, initial-backoff * 2^(n-1)) 사이에서 랜덤하게 기다린다. (full jitter)
+ *   충돌한 트랜잭션들이 똑같이 기다리면 다시 동시에 충돌하기 때문
+ *
+ * 메트릭
+ * - jpashop.order.retry.attempts{operation, result=success|conflict} : conflict / 전체 = 충돌률
+ * - jpashop.order.retry.retries{operation} : 성공한 요청 하나당 재시도 횟수 분포
+ * - jpashop.order.retry.exhausted{operation} : 재시도를 다 쓰고 실패한 요청 수
+ */
+@Slf4j
+@Component
+public class RetryingOrderExecutor {
+
+    private final OrderService orderService;
+    private final MeterRegistry meterRegistry;
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+
+    public RetryingOrderExecutor(OrderService orderService,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${jpashop.order.retry.max-attempts:5}") int maxAttempts,
+                                 @Value("${jpashop.order.retry.initial-backoff-ms:5}") long initialBackoffMs,
+                                 @Value("${jpashop.order.retry.max-backoff-ms:200}") long maxBackoffMs) {
+        this.orderService = orderService;
+        this.meterRegistry = meterRegistry;
+        this.maxAttempts = Math.max(maxAttempts, 1);
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+    }
+
+    public Long order(Long memberId, Long itemId, int count) {
+        return execute("order", () -> orderService.order(memberId, itemId, count));
+    }
+
+    public Long order(Long memberId, List<OrderLine> lines) {
+        return execute("order", () -> orderService.order(memberId, lines));
+    }
+
+    public void cancelOrder(Long orderId) {
+        execute("cancel", () -> {
+            orderService.cancelOrder(orderId);
+            return null;
+        });
+    }
+
+    /**
+     * @param attempt 시도 한 번 - 스스로 트랜잭션을 시작하고 커밋해야 한다. (@Transactional 서비스 메서드, TransactionTemplate)
+     */
+    public <T> T execute(String operation, Supplier<T> attempt) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("재시도는 트랜잭션 밖에서 시작해야 합니다.");
+        }
+
+        for (int n = 1; ; n++) {
+            try {
+                T result = attempt.get();
+                attempts(operation, "success").increment();
+                DistributionSummary.builder("jpashop.order.retry.retries")
+                        .tag("operation", operation)
+                        .register(meterRegistry)
+                        .record(n - 1);
+                return result;
+            } catch (ConcurrencyFailureException e) {
+                attempts(operation, "conflict").increment();
+                if (n >= maxAttempts) {
+                    Counter.builder("jpashop.order.retry.exhausted")
+                            .tag("operation", operation)
+                            .register(meterRegistry)
+                            .increment();
+                    log.warn("{} 재시도 {}회 모두 충돌", operation, maxAttempts);
+                    throw e;
+                }
+                sleep(backoff(n));
+            }
+        }
+    }
+
+    long backoff(int attempt) {
+        long ceiling = Math.min(maxBackoffMs, initialBackoffMs << Math.min(attempt - 1, 30));
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private Counter attempts(String operation, String result) {
+        return Counter.builder("jpashop.order.retry.attempts")
+                .tag("operation", operation)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private void sleep(long millis) {
+        if (millis == 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("재시도 대기 중 인터럽트", e);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package jpabook.jpashop.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 상품 하나의 재고를 여러 칸(segment)에 나눠 담은 카운터
+ *
+ * AtomicLong 하나에 모든 스레드가 CAS를 하면 실패와 재시도가 반복되고 같은 캐시 라인을 서로 빼앗는다.
+ * 스레드마다 정해진 칸에서 먼저 꺼내고, 모자라면 다른 칸을 돌아보고, 그래도 모자라면 전체를 모아서 다시 나눈다.
+ * 칸은 캐시 라인(64바이트) 간격으로 떨어뜨려 false sharing을 피한다.
+ */
+class StripedStock {
+
+    private static final int PAD = 8; //long 8개 = 64바이트
+
+    private final int segments;
+    private final AtomicLongArray cells;
+
+    StripedStock(long available, int segments) {
+        this.segments = segments;
+        this.cells = new AtomicLongArray(segments * PAD);
+        spread(available);
+    }
+
+    boolean tryReserve(int count) {
+        int start = home();
+        for (int i = 0; i < segments; i++) {
+            int cell = ((start + i) % segments) * PAD;
+            long current = cells.get(cell);
+            while (current >= count) {
+                if (cells.compareAndSet(cell, current, current - count)) {
+                    return true;
+                }
+                current = cells.get(cell);
+            }
+        }
+        return rebalanceAndReserve(count);
+    }
+
+    void release(int count) {
+        cells.addAndGet(home() * PAD, count);
+    }
+
+    long available() {
+        long sum = 0;
+        for (int i = 0; i < segments; i++) {
+            sum += cells.get(i * PAD);
+        }
+        return sum;
+    }
+
+    /**
+     * 칸마다 조금씩 남아서 어느 칸에서도 꺼낼 수 없을 때만 실행된다. (재고가 거의 바닥났을 때)
+     */
+    private synchronized boolean rebalanceAndReserve(int count) {
+        long total = 0;
+        for (int i = 0; i < segments; i++) {
+            total += cells.getAndSet(i * PAD, 0);
+        }
+        boolean reserved = total >= count;
+        spread(reserved ? total - count : total);
+        return reserved;
+    }
+
+    private void spread(long amount) {
+        long share = amount / segments;
+        for (int i = 0; i < segments; i++) {
+            cells.addAndGet(i * PAD, i == 0 ? share + amount % segments : share);
+        }
+    }
+
+    private int home() {
+        long id = Thread.currentThread().getId();
+        return (int) (((id ^ (id >>> 16)) * 0x9E3779B9L >>> 1) % segments);
+    }
+}
@@ -0,0 +1,49 @@
+package jpabook.jpashop.service.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import jpabook.jpashop.exception.NotFoundException;
+import jpabook.jpashop.repository.CategoryRepository;
+import jpabook.jpashop.repository.CategoryTree;
+import jpabook.jpashop.repository.category.query.CategoryItemQueryDto;
+import jpabook.jpashop.repository.category.query.CategoryItemQueryRepository;
+import jpabook.jpashop.service.CategoryTreeSnapshot;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+@RequiredArgsConstructor
+@Service
+@Transactional(readOnly = true)
+public class CategoryItemQueryService {
+
+    private final CategoryTreeSnapshot categoryTreeSnapshot;
+    private final CategoryRepository categoryRepository;
+    private final CategoryItemQueryRepository categoryItemQueryRepository;
+
+    /**
+     * 카테고리와 그 하위 카테고리에 속한 상품을 item_id 순으로 afterItemId 다음부터 limit개
+     *
+     * 하위 카테고리 id는 메모리의 트리에서 찾는다. 방금 추가되어 아직 트리에 없는 카테고리만 클로저 테이블로 조회한다.
+     * 클로저 테이블에도 없는 카테고리면 NotFoundException (404)
+     */
+    public List<CategoryItemQueryDto> findItems(Long categoryId, Long afterItemId, int limit) {
+        Optional<CategoryTree.Node> node = categoryTreeSnapshot.getTree().find(categoryId);
+        List<Long> categoryIds = new ArrayList<>();
+        if (node.isPresent()) {
+            collectIds(node.get(), categoryIds);
+        } else {
+            categoryRepository.findSubtree(categoryId).getRoots().forEach(root -> collectIds(root, categoryIds));
+        }
+        if (categoryIds.isEmpty()) {
+            throw new NotFoundException("카테고리가 없습니다. id=" + categoryId);
+        }
+        return categoryItemQueryRepository.findItemPage(categoryIds, afterItemId, limit);
+    }
+
+    private void collectIds(CategoryTree.Node node, List<Long> ids) {
+        ids.add(node.getId());
+        node.getChildren().forEach(child -> collectIds(child, ids));
+    }
+}
@@ -3,8 +3,11 @@ package jpabook.jpashop.service.query;
 import static java.util.stream.Collectors.toList;
 
 import java.util.List;
+import java.util.function.Consumer;
 import jpabook.jpashop.domain.Order;
 import jpabook.jpashop.repository.OrderRepository;
+import jpabook.jpashop.repository.order.query.OrderQueryDto;
+import jpabook.jpashop.repository.order.query.OrderQueryRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -15,6 +18,7 @@ import org.springframework.transaction.annotation.Transactional;
 public class OrderQueryService {
 
     private final OrderRepository orderRepository;
+    private final OrderQueryRepository orderQueryRepository;
 
     public List<OrderDto> orderV2(){
         List<Order> orders = orderRepository.findAll();
@@ -25,4 +29,11 @@ public class OrderQueryService {
         return result;
     }
 
+    /**
+     * 스트리밍 조회는 커서가 열려있는 동안 트랜잭션(커넥션)이 유지되어야 하므로 서비스 계층에서 감싸준다.
+     */
+    public void exportOrders(Consumer<OrderQueryDto> action) {
+        orderQueryRepository.forEachByDto_flat(action);
+    }
+
 }
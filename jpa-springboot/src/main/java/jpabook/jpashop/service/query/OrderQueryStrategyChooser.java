@@ -0,0 +1,145 @@
+package jpabook.jpashop.service.query;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.repository.order.query.OrderItemQueryDto;
+import jpabook.jpashop.repository.order.query.OrderQueryDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * #jpa-springboot V5(1 + 1 Query)와 V6(flat join 1 Query) 중 어느 쪽이 유리한지는 데이터에 따라 다르다.
+ *
+ * - V5: 주문 row 한 번 + 주문상품 row 한 번. 쿼리가 한 번 더 나가지만 중복 데이터가 없다.
+ *       전송량 = 주문 수 * 주문 row 크기 + 주문상품 수 * 주문상품 row 크기 + 왕복 1번 비용
+ * - V6: 주문상품 수 만큼 주문 row가 뻥튀기된다.
+ *       전송량 = 주문상품 수 * (주문 row 크기 + 주문상품 row 크기)
+ *
+ * 조회 결과로부터 주문 수, 주문당 상품 수, row 크기를 지수 이동 평균으로 계속 갱신하고
+ * 다음 요청에서는 예상 전송량이 더 작은 쪽을 선택한다. 통계가 쌓이기 전에는 V5를 쓴다.
+ */
+@Component
+public class OrderQueryStrategyChooser {
+
+    public enum Strategy {
+        V5_IN_QUERY, V6_FLAT
+    }
+
+    private static final double ALPHA = 0.2; //최근 결과의 반영 비율
+
+    private final long roundTripBytes;
+
+    private boolean sampled;
+    private double orderCount;
+    private double itemsPerOrder;
+    private double orderRowBytes;
+    private double itemRowBytes;
+    private Strategy lastDecision = Strategy.V5_IN_QUERY;
+    private final Map<Strategy, Long> decisions = new LinkedHashMap<>();
+
+    public OrderQueryStrategyChooser(@Value("${jpashop.order-query.round-trip-bytes:4096}") long roundTripBytes) {
+        this.roundTripBytes = roundTripBytes;
+        for (Strategy strategy : Strategy.values()) {
+            decisions.put(strategy, 0L);
+        }
+    }
+
+    public synchronized Strategy choose() {
+        lastDecision = !sampled || estimatedBytesV5() <= estimatedBytesV6() ? Strategy.V5_IN_QUERY : Strategy.V6_FLAT;
+        decisions.merge(lastDecision, 1L, Long::sum);
+        return lastDecision;
+    }
+
+    /**
+     * 어떤 전략으로 조회했든 결과는 같은 모양이므로 결과를 보고 통계를 갱신한다.
+     */
+    public void record(List<OrderQueryDto> result) {
+        if (result.isEmpty()) {
+            return;
+        }
+        long items = 0;
+        long orderBytes = 0;
+        long itemBytes = 0;
+        for (OrderQueryDto order : result) {
+            orderBytes += orderRowBytes(order);
+            if (order.getOrderItems() != null) {
+                for (OrderItemQueryDto item : order.getOrderItems()) {
+                    itemBytes += itemRowBytes(item);
+                    items++;
+                }
+            }
+        }
+
+        synchronized (this) {
+            double sampleItemsPerOrder = (double) items / result.size();
+            double sampleOrderRowBytes = (double) orderBytes / result.size();
+            double sampleItemRowBytes = items == 0 ? itemRowBytes : (double) itemBytes / items;
+            if (!sampled) {
+                orderCount = result.size();
+                itemsPerOrder = sampleItemsPerOrder;
+                orderRowBytes = sampleOrderRowBytes;
+                itemRowBytes = sampleItemRowBytes;
+                sampled = true;
+            } else {
+                orderCount = ewma(orderCount, result.size());
+                itemsPerOrder = ewma(itemsPerOrder, sampleItemsPerOrder);
+                orderRowBytes = ewma(orderRowBytes, sampleOrderRowBytes);
+                itemRowBytes = ewma(itemRowBytes, sampleItemRowBytes);
+            }
+        }
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("lastDecision", lastDecision);
+        snapshot.put("decisions", new LinkedHashMap<>(decisions));
+        snapshot.put("sampled", sampled);
+        snapshot.put("orderCount", orderCount);
+        snapshot.put("itemsPerOrder", itemsPerOrder);
+        snapshot.put("orderRowBytes", orderRowBytes);
+        snapshot.put("itemRowBytes", itemRowBytes);
+        snapshot.put("roundTripBytes", roundTripBytes);
+        snapshot.put("estimatedBytesV5", estimatedBytesV5());
+        snapshot.put("estimatedBytesV6", estimatedBytesV6());
+        return snapshot;
+    }
+
+    private long estimatedBytesV5() {
+        double items = orderCount * itemsPerOrder;
+        return (long) (orderCount * orderRowBytes + items * itemRowBytes) + roundTripBytes;
+    }
+
+    private long estimatedBytesV6() {
+        double items = orderCount * itemsPerOrder;
+        return (long) (items * (orderRowBytes + itemRowBytes));
+    }
+
+    private static double ewma(double current, double sample) {
+        return current + ALPHA * (sample - current);
+    }
+
+    /**
+     * 정확한 바이트 수가 아니라 비교용 추정치. 숫자/날짜는 8바이트, 문자열은 길이로 계산
+     */
+    private static long orderRowBytes(OrderQueryDto order) {
+        long bytes = 8 + 8; // order_id, order_date
+        bytes += length(order.getName());
+        bytes += order.getOrderStatus() == null ? 0 : order.getOrderStatus().name().length();
+        Address address = order.getAddress();
+        if (address != null) {
+            bytes += length(address.getCity()) + length(address.getStreet()) + length(address.getZipcode());
+        }
+        return bytes;
+    }
+
+    private static long itemRowBytes(OrderItemQueryDto item) {
+        return 8 + 4 + 4 + length(item.getItemName()); // order_id, order_price, count, item name
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+}
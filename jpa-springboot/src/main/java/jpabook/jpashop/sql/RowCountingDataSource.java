@@ -0,0 +1,38 @@
+package jpabook.jpashop.sql;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * StatementInspector는 읽은 row 수를 알 수 없으므로 DataSource를 감싸서 ResultSet.next()가 true인 횟수를 센다.
+ *
+ * Connection -> Statement -> ResultSet을 리플렉션 없이 바로 위임하는 래퍼(RowCountingConnection 등)로 감싸고 next()에서만 센다.
+ * p6spy(로그 전용, decorator.datasource.*)와는 관계없으므로 로그를 꺼도, 의존성을 빼도 row 수는 센다.
+ */
+public final class RowCountingDataSource extends DelegatingDataSource {
+
+    private RowCountingDataSource(DataSource targetDataSource) {
+        super(targetDataSource);
+    }
+
+    public static DataSource wrap(DataSource dataSource) {
+        return new RowCountingDataSource(dataSource);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(obtainTargetDataSource().getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(obtainTargetDataSource().getConnection(username, password));
+    }
+
+    private Connection wrap(Connection connection) {
+        return new RowCountingConnection(connection);
+    }
+}
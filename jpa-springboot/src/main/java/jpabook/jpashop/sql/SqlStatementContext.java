@@ -0,0 +1,112 @@
+package jpabook.jpashop.sql;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * #jpa-springboot 요청 하나에서 실행된 SQL 수, 같은 모양의 SQL 반복 횟수, 읽은 row 수를 센다.
+ *
+ * 스레드 로컬에 쌓이고 begin() ~ end() 사이에 실행된 SQL만 센다.
+ * 중첩해서 시작할 수 있고 안쪽에서 센 값은 바깥쪽에도 더해진다. (ex. 테스트에서 센 구간 안에서 MockMvc 요청)
+ *
+ * SQL의 모양(shape)은 파라미터가 ?로 바뀐 SQL 문자열이다. in (?, ?, ?)는 개수와 상관없이 in (?)로 본다.
+ * 같은 모양이 여러 번 실행됐다면 지연 로딩이 하나씩 나간 N + 1 일 가능성이 높다.
+ */
+public final class SqlStatementContext {
+
+    private static final ThreadLocal<SqlStatementContext> CURRENT = new ThreadLocal<>();
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(\\s*,\\s*\\?)*\\s*\\)");
+    private static final int MAX_SHAPES = 256; //요청 하나에서 기억하는 SQL 모양 수 상한 (메모리 보호)
+
+    private final SqlStatementContext parent;
+    private int statementCount;
+    private int selectCount;
+    private long rowCount;
+    private final Map<String, Integer> shapes = new HashMap<>();
+
+    private SqlStatementContext(SqlStatementContext parent) {
+        this.parent = parent;
+    }
+
+    public static SqlStatementContext begin() {
+        SqlStatementContext context = new SqlStatementContext(CURRENT.get());
+        CURRENT.set(context);
+        return context;
+    }
+
+    /**
+     * 가장 안쪽 구간을 끝내고 반환한다. 시작한 구간이 없으면 null
+     */
+    public static SqlStatementContext end() {
+        SqlStatementContext context = CURRENT.get();
+        if (context == null) {
+            return null;
+        }
+        if (context.parent == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(context.parent);
+        }
+        return context;
+    }
+
+    static void recordStatement(String sql) {
+        SqlStatementContext context = CURRENT.get();
+        if (context == null) {
+            return;
+        }
+        String shape = shapeOf(sql);
+        boolean select = isSelect(sql);
+        for (; context != null; context = context.parent) {
+            context.statementCount++;
+            if (select) {
+                context.selectCount++;
+            }
+            if (context.shapes.size() < MAX_SHAPES || context.shapes.containsKey(shape)) {
+                context.shapes.merge(shape, 1, Integer::sum);
+            }
+        }
+    }
+
+    static void recordRow() {
+        for (SqlStatementContext context = CURRENT.get(); context != null; context = context.parent) {
+            context.rowCount++;
+        }
+    }
+
+    public int getStatementCount() {
+        return statementCount;
+    }
+
+    public int getSelectCount() {
+        return selectCount;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * threshold 번 이상 실행된 SQL 모양과 실행 횟수 (N + 1 의심)
+     */
+    public Map<String, Integer> repeatedShapes(int threshold) {
+        Map<String, Integer> repeated = new LinkedHashMap<>();
+        shapes.forEach((shape, count) -> {
+            if (count >= threshold) {
+                repeated.put(shape, count);
+            }
+        });
+        return repeated;
+    }
+
+    static String shapeOf(String sql) {
+        return sql.indexOf('?') < 0 ? sql : IN_LIST.matcher(sql).replaceAll("(?)");
+    }
+
+    private static boolean isSelect(String sql) {
+        String trimmed = sql.trim();
+        return trimmed.regionMatches(true, 0, "select", 0, 6) || trimmed.regionMatches(true, 0, "with", 0, 4);
+    }
+}
@@ -0,0 +1,18 @@
+package jpabook.jpashop.sql;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * 하이버네이트가 SQL을 준비할 때마다 호출된다. SQL은 바꾸지 않고 SqlStatementContext에 기록만 한다.
+ * p6spy처럼 파라미터를 바인딩한 로그 문자열을 만들지 않으므로 운영에서 켜 두어도 부담이 적다.
+ */
+public class SqlStatementInspector implements StatementInspector {
+
+    private static final long serialVersionUID = 1L; //StatementInspector는 Serializable (SessionFactory 설정과 함께 직렬화될 수 있다)
+
+    @Override
+    public String inspect(String sql) {
+        SqlStatementContext.recordStatement(sql);
+        return sql;
+    }
+}
@@ -0,0 +1,93 @@
+package jpabook.jpashop.sql;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+
+/**
+ * #jpa-springboot HTTP 요청마다 SQL 예산을 확인하고 N + 1을 찾아낸다
+ *
+ * 요청이 시작될 때 SqlStatementContext를 열고, 응답까지 끝난 뒤(OSIV의 지연 로딩, JSON 직렬화 포함) 닫는다.
+ * - jpashop.sql.statements / jpashop.sql.rows : 엔드포인트(uri 패턴)별 SQL 수, row 수 히스토그램
+ * - jpashop.sql.n-plus-one : 같은 모양의 SQL이 nPlusOneThreshold 번 이상 실행된 요청 수
+ * - jpashop.sql.budget-exceeded : SQL 수가 statementBudget을 넘은 요청 수
+ */
+@Slf4j
+public class SqlStatementInterceptor implements AsyncHandlerInterceptor {
+
+    private final MeterRegistry meterRegistry;
+    private final int statementBudget;
+    private final int nPlusOneThreshold;
+
+    public SqlStatementInterceptor(MeterRegistry meterRegistry, int statementBudget, int nPlusOneThreshold) {
+        this.meterRegistry = meterRegistry;
+        this.statementBudget = statementBudget;
+        this.nPlusOneThreshold = nPlusOneThreshold;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        SqlStatementContext.begin();
+        return true;
+    }
+
+    /**
+     * 비동기 요청은 다른 스레드에서 이어지므로 이 스레드의 구간은 기록하지 않고 닫는다.
+     */
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        SqlStatementContext.end();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        SqlStatementContext context = SqlStatementContext.end();
+        if (context == null || context.getStatementCount() == 0) {
+            return;
+        }
+
+        String method = request.getMethod();
+        String uri = uri(request);
+        DistributionSummary.builder("jpashop.sql.statements")
+                .tag("method", method)
+                .tag("uri", uri)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(1.0)
+                .maximumExpectedValue(1000.0)
+                .register(meterRegistry)
+                .record(context.getStatementCount());
+        DistributionSummary.builder("jpashop.sql.rows")
+                .tag("method", method)
+                .tag("uri", uri)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(1.0)
+                .maximumExpectedValue(1_000_000.0)
+                .register(meterRegistry)
+                .record(context.getRowCount());
+
+        Map<String, Integer> repeated = context.repeatedShapes(nPlusOneThreshold);
+        if (!repeated.isEmpty()) {
+            Counter.builder("jpashop.sql.n-plus-one").tag("method", method).tag("uri", uri).register(meterRegistry).increment();
+            repeated.forEach((shape, count) -> log.warn("N + 1 의심: {} {} 에서 같은 SQL이 {}번 실행됨 - {}", method, uri, count, shape));
+        }
+        if (statementBudget > 0 && context.getStatementCount() > statementBudget) {
+            Counter.builder("jpashop.sql.budget-exceeded").tag("method", method).tag("uri", uri).register(meterRegistry).increment();
+            log.warn("SQL 예산 초과: {} {} 에서 SQL {}번 실행 (예산 {})", method, uri, context.getStatementCount(), statementBudget);
+        }
+    }
+
+    /**
+     * /api/orders/{id} 처럼 매핑된 패턴을 태그로 쓴다. 실제 요청 경로를 쓰면 태그 값이 무한히 늘어난다.
+     */
+    private static String uri(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return pattern == null ? "UNKNOWN" : pattern.toString();
+    }
+}
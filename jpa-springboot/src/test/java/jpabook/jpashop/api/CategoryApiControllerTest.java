@@ -0,0 +1,79 @@
+package jpabook.jpashop.api;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import javax.persistence.EntityManager;
+import jpabook.jpashop.domain.Category;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.service.CategoryTreeSnapshot;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.annotation.Transactional;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@Transactional
+public class CategoryApiControllerTest {
+
+    @Autowired
+    MockMvc mockMvc;
+    @Autowired
+    ObjectMapper objectMapper;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    CategoryTreeSnapshot categoryTreeSnapshot;
+
+    @Test
+    public void 마지막_페이지가_꽉_차면_nextCursor는_null() throws Exception {
+        //given - 상품 4개, 페이지 크기 2
+        Category category = new Category();
+        category.setName("도서");
+        em.persist(category);
+        for (int i = 0; i < 4; i++) {
+            Book book = new Book();
+            book.setName("책" + i);
+            book.setPrice(10000);
+            book.setStockQuantity(10);
+            em.persist(book);
+            category.getItems().add(book);
+        }
+        em.flush();
+        categoryTreeSnapshot.refresh();
+
+        //when
+        JsonNode first = page(category.getId(), null);
+        JsonNode last = page(category.getId(), first.get("nextCursor").asText());
+
+        //then
+        Assertions.assertThat(first.get("data")).hasSize(2);
+        Assertions.assertThat(last.get("data")).hasSize(2);
+        Assertions.assertThat(last.get("nextCursor").isNull()).isTrue();
+    }
+
+    @Test
+    public void 잘못된_커서는_400_없는_카테고리는_404() throws Exception {
+        mockMvc.perform(get("/api/categories/{id}/items", 1L).param("after", "bad!")).andExpect(status().isBadRequest());
+        //주문 목록의 커서도 상품 목록에서는 잘못된 커서
+        mockMvc.perform(get("/api/categories/{id}/items", 1L).param("after", KeysetCursor.ORDER.encode(1L)))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/categories/{id}/items", -1L)).andExpect(status().isNotFound());
+    }
+
+    private JsonNode page(Long categoryId, String after) throws Exception {
+        String body = mockMvc.perform(get("/api/categories/{id}/items", categoryId).param("limit", "2")
+                        .param("after", after == null ? "" : after))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data").isArray())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(body);
+    }
+}
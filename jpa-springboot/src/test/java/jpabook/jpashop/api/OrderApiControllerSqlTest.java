@@ -0,0 +1,147 @@
+package jpabook.jpashop.api;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import javax.persistence.EntityManagerFactory;
+import jpabook.jpashop.sql.SqlCount;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+/**
+ * OrderApiController 엔드포인트별 select 수 고정
+ * 데이터는 InitDb가 넣은 주문 2건(주문당 상품 2개), default_batch_fetch_size = 100 기준
+ * 2차 캐시에 적재된 회원/상품이 있으면 select 수가 달라지므로 매번 비운다.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+public class OrderApiControllerSqlTest {
+
+    @Autowired
+    MockMvc mockMvc;
+    @Autowired
+    EntityManagerFactory emf;
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @BeforeEach
+    void init() {
+        emf.getCache().evictAll();
+        SqlCount.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        SqlCount.stop();
+    }
+
+    @Test
+    public void V2_지연로딩은_batch_size로_묶인다() throws Exception {
+        mockMvc.perform(get("/api/v2/orders")).andExpect(status().isOk());
+
+        //주문 + 회원 + 배송 + 주문상품 + 상품
+        SqlCount.assertSelectCount(5);
+        SqlCount.assertNoNPlusOne(2);
+    }
+
+    @Test
+    public void V3_페치조인() throws Exception {
+        mockMvc.perform(get("/api/v3/orders")).andExpect(status().isOk());
+
+        SqlCount.assertSelectCount(1);
+    }
+
+    @Test
+    public void V3_1_페이징() throws Exception {
+        mockMvc.perform(get("/api/v3.1/orders")).andExpect(status().isOk());
+
+        //주문(회원, 배송 페치조인) + 주문상품 + 상품
+        SqlCount.assertSelectCount(3);
+    }
+
+    @Test
+    public void V3_2_커서_페이징() throws Exception {
+        mockMvc.perform(get("/api/v3.2/orders")).andExpect(status().isOk());
+
+        SqlCount.assertSelectCount(3);
+    }
+
+    @Test
+    public void V3_2_다음_페이지_확인용_주문의_주문상품은_조회하지_않는다() throws Exception {
+        mockMvc.perform(get("/api/v3.2/orders").param("limit", "1")).andExpect(status().isOk());
+
+        //주문 2건을 읽지만 주문상품은 페이지의 주문 1건 것만 (batch in 절이 아닌 = 조건)
+        Assertions.assertThat(SqlCount.current().repeatedShapes(1).keySet())
+                .filteredOn(sql -> sql.contains("from order_item"))
+                .singleElement().asString().doesNotContain(" in (");
+    }
+
+    @Test
+    public void V3_2_마지막_페이지가_꽉_차도_빈_페이지는_없다() throws Exception {
+        //limit 1로 끝까지 넘기면 모든 페이지에 주문이 하나씩 있고, 마지막 페이지에서 nextCursor가 null
+        String after = null;
+        int pages = 0;
+        do {
+            MockHttpServletRequestBuilder request = get("/api/v3.2/orders").param("limit", "1");
+            if (after != null) {
+                request.param("after", after);
+            }
+            JsonNode body = objectMapper.readTree(mockMvc.perform(request).andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString());
+            Assertions.assertThat(body.get("data")).hasSize(1);
+            after = body.get("nextCursor").isNull() ? null : body.get("nextCursor").asText();
+            pages++;
+        } while (after != null);
+
+        Assertions.assertThat(pages).isGreaterThanOrEqualTo(2); //InitDb 주문 2건
+    }
+
+    @Test
+    public void V3_2_잘못된_커서는_조회없이_400() throws Exception {
+        mockMvc.perform(get("/api/v3.2/orders").param("after", "bad!")).andExpect(status().isBadRequest());
+        //상품 목록의 커서도 주문 목록에서는 잘못된 커서
+        mockMvc.perform(get("/api/v3.2/orders").param("after", KeysetCursor.ITEM.encode(1L))).andExpect(status().isBadRequest());
+
+        SqlCount.assertSelectCount(0);
+    }
+
+    @Test
+    public void V4는_주문마다_주문상품을_조회한다() throws Exception {
+        mockMvc.perform(get("/api/v4/orders")).andExpect(status().isOk());
+
+        //1 + N
+        SqlCount.assertSelectCount(3);
+        Assertions.assertThat(SqlCount.current().repeatedShapes(2)).hasSize(1);
+    }
+
+    @Test
+    public void V5_in_쿼리() throws Exception {
+        mockMvc.perform(get("/api/v5/orders")).andExpect(status().isOk());
+
+        SqlCount.assertSelectCount(2);
+        SqlCount.assertNoNPlusOne(2);
+    }
+
+    @Test
+    public void V6_flat_조회() throws Exception {
+        JsonNode orders = objectMapper.readTree(mockMvc.perform(get("/api/v6/orders")).andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+
+        SqlCount.assertSelectCount(1);
+        //주문상품마다 한 줄 (주문상품이 없는 주문도 left join으로 한 줄)
+        long rows = 0;
+        for (JsonNode order : orders) {
+            rows += Math.max(1, order.get("orderItems").size());
+        }
+        Assertions.assertThat(SqlCount.current().getRowCount()).isEqualTo(rows).isGreaterThanOrEqualTo(4);
+    }
+}
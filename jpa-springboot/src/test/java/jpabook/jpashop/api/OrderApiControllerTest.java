@@ -0,0 +1,60 @@
+package jpabook.jpashop.api;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import javax.persistence.EntityManager;
+import jpabook.jpashop.domain.Delivery;
+import jpabook.jpashop.domain.DeliveryStatus;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.Order;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.annotation.Transactional;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@Transactional
+public class OrderApiControllerTest {
+
+    @Autowired
+    MockMvc mockMvc;
+    @Autowired
+    EntityManager em;
+
+    @Test
+    public void V5와_V6는_같은_주문을_같은_순서로_준다() throws Exception {
+        //given - InitDb 주문 2건 + 주문상품이 없는 주문
+        Member member = new Member();
+        member.setName("주문상품없음");
+        em.persist(member);
+        Delivery delivery = new Delivery();
+        delivery.setStatus(DeliveryStatus.READY);
+        em.persist(Order.createOrder(member, delivery));
+        em.flush();
+        em.clear();
+
+        //when - /api/orders는 통계에 따라 둘 중 하나를 쓰므로 응답이 완전히 같아야 한다
+        String v5 = body("/api/v5/orders");
+        String v6 = body("/api/v6/orders");
+
+        //then
+        Assertions.assertThat(v6).isEqualTo(v5).contains("\"orderItems\":[]");
+    }
+
+    @Test
+    public void export는_한_줄에_주문_하나() throws Exception {
+        String[] lines = body("/api/v6.1/orders").split("\n");
+
+        //InitDb 주문 2건, 구분자 외의 공백 없이 줄마다 JSON 하나
+        Assertions.assertThat(lines).hasSizeGreaterThanOrEqualTo(2).allMatch(line -> line.startsWith("{\"orderId\":") && line.endsWith("}"));
+    }
+
+    private String body(String url) throws Exception {
+        return mockMvc.perform(get(url)).andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+    }
+}
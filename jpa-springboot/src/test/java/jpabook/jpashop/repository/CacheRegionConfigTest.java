@@ -0,0 +1,62 @@
+package jpabook.jpashop.repository;
+
+import java.time.Duration;
+import javax.cache.Cache;
+import javax.persistence.EntityManagerFactory;
+import jpabook.jpashop.domain.Category;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import org.assertj.core.api.Assertions;
+import org.ehcache.config.CacheRuntimeConfiguration;
+import org.ehcache.config.ResourceType;
+import org.ehcache.jsr107.Eh107Configuration;
+import org.hibernate.cache.jcache.internal.JCacheAccessImpl;
+import org.hibernate.cache.spi.Region;
+import org.hibernate.cache.spi.support.DomainDataRegionTemplate;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * 다른 테스트는 region_prefix를 붙여서 ehcache.xml 설정 대신 기본 설정으로 만들어진 캐시를 쓴다. (test application.yml)
+ * 여기서만 prefix를 빼고 띄워서 엔티티 region이 실제로 ehcache.xml의 cache alias에 연결되는지 확인한다.
+ * (alias가 region 이름과 다르면 missing_cache_strategy: create로 기본 설정 캐시가 만들어지고 조용히 넘어간다)
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.cache.region_prefix=")
+public class CacheRegionConfigTest {
+
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Test
+    public void 엔티티_region은_ehcache_xml_설정을_쓴다() throws Exception {
+        SessionFactoryImplementor sessionFactory = emf.unwrap(SessionFactoryImplementor.class);
+
+        //Book은 SINGLE_TABLE 루트인 Item의 region을 같이 쓴다
+        Assertions.assertThat(entityRegion(sessionFactory, Book.class)).isSameAs(entityRegion(sessionFactory, Item.class));
+        for (Class<?> entity : new Class<?>[]{Member.class, Item.class, Category.class}) {
+            assertReferenceData(entityRegion(sessionFactory, entity), entity.getName());
+        }
+        String child = Category.class.getName() + ".child";
+        assertReferenceData(sessionFactory.getMetamodel().collectionPersister(child).getCacheAccessStrategy().getRegion(), child);
+    }
+
+    private Region entityRegion(SessionFactoryImplementor sessionFactory, Class<?> entity) {
+        return sessionFactory.getMetamodel().entityPersister(entity).getCacheAccessStrategy().getRegion();
+    }
+
+    /**
+     * region이 쓰는 캐시가 ehcache.xml의 alias이고 reference-data 템플릿(10000개, 10분) 설정이다.
+     */
+    @SuppressWarnings("unchecked")
+    private void assertReferenceData(Region region, String alias) {
+        Cache<Object, Object> cache = ((JCacheAccessImpl) ((DomainDataRegionTemplate) region).getCacheStorageAccess()).getUnderlyingCache();
+        Assertions.assertThat(cache.getName()).isEqualTo(alias);
+        CacheRuntimeConfiguration<Object, Object> config = (CacheRuntimeConfiguration<Object, Object>)
+                cache.getConfiguration(Eh107Configuration.class).unwrap(CacheRuntimeConfiguration.class);
+        Assertions.assertThat(config.getResourcePools().getPoolForResource(ResourceType.Core.HEAP).getSize()).isEqualTo(10000);
+        Assertions.assertThat(config.getExpiryPolicy().getExpiryForCreation(1L, "value")).isEqualTo(Duration.ofMinutes(10));
+    }
+}
@@ -0,0 +1,92 @@
+package jpabook.jpashop.repository;
+
+import javax.persistence.EntityManager;
+import jpabook.jpashop.domain.Category;
+import jpabook.jpashop.service.CategoryTreeSnapshot;
+import jpabook.jpashop.sql.SqlCount;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.stream.Collectors;
+
+@SpringBootTest
+@Transactional
+public class CategoryRepositoryTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    CategoryRepository categoryRepository;
+    @Autowired
+    CategoryTreeSnapshot categoryTreeSnapshot;
+
+    @Test
+    public void 하위_트리와_상위_카테고리를_쿼리_한_번으로_조회() throws Exception {
+        //given - 도서 > (IT > (JPA, 스프링), 소설)
+        Category book = category("도서");
+        Category it = category("IT");
+        Category jpa = category("JPA");
+        Category spring = category("스프링");
+        Category novel = category("소설");
+        categoryRepository.save(book);
+        book.addChildCategory(it);
+        book.addChildCategory(novel);
+        categoryRepository.save(it);
+        categoryRepository.save(novel);
+
+        //이미 하위 카테고리가 있는 카테고리도 붙일 수 있다
+        it.addChildCategory(jpa);
+        it.addChildCategory(spring);
+        categoryRepository.save(jpa);
+        categoryRepository.save(spring);
+        em.flush();
+        em.clear();
+
+        //when
+        SqlCount.start();
+        CategoryTree subtree = categoryRepository.findSubtree(book.getId());
+        SqlCount.assertStatementCount(1);
+
+        SqlCount.start();
+        String path = categoryRepository.findAncestors(jpa.getId()).stream()
+                .map(Category::getName).collect(Collectors.joining(" > "));
+        SqlCount.assertStatementCount(1);
+        SqlCount.stop();
+
+        //then
+        Assertions.assertThat(subtree.getRoots()).singleElement()
+                .extracting(CategoryTree.Node::getName).isEqualTo("도서");
+        Assertions.assertThat(subtree.size()).isEqualTo(5);
+        Assertions.assertThat(subtree.find(it.getId()).get().getChildren())
+                .extracting(CategoryTree.Node::getName).containsExactlyInAnyOrder("JPA", "스프링");
+        Assertions.assertThat(subtree.find(jpa.getId()).get().getDepth()).isEqualTo(2);
+        Assertions.assertThat(subtree.ancestorsOf(spring.getId()))
+                .extracting(CategoryTree.Node::getName).containsExactly("도서", "IT");
+        Assertions.assertThat(path).isEqualTo("도서 > IT");
+        Assertions.assertThat(categoryRepository.findSubtree(it.getId()).size()).isEqualTo(3);
+
+        //스냅샷도 같은 트리
+        categoryTreeSnapshot.refresh();
+        Assertions.assertThat(categoryTreeSnapshot.getTree().ancestorsOf(jpa.getId()))
+                .extracting(CategoryTree.Node::getName).containsExactly("도서", "IT");
+    }
+
+    @Test
+    public void 상위_카테고리가_있으면_옮길_수_없다() throws Exception {
+        Category parent = category("부모");
+        Category child = category("자식");
+        parent.addChildCategory(child);
+
+        Assertions.assertThatThrownBy(() -> category("다른 부모").addChildCategory(child))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private Category category(String name) {
+        Category category = new Category();
+        category.setName(name);
+        return category;
+    }
+}
@@ -0,0 +1,118 @@
+package jpabook.jpashop.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * DB 없이 chunk 나누기, 패딩, 병렬 조회 결과 합치기만 본다. (조회 함수는 받은 chunk를 그대로 돌려준다)
+ */
+public class InQueryBatchLoaderTest {
+
+    EntityManager em = Mockito.mock(EntityManager.class);
+    EntityManagerFactory emf = Mockito.mock(EntityManagerFactory.class);
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void chunkSize로_나누고_2의_거듭제곱_크기로_채운다() throws Exception {
+        //given - chunkSize 3은 4로 올림
+        InQueryBatchLoader loader = new InQueryBatchLoader(em, emf, meterRegistry, 3, 1);
+        List<List<Long>> chunks = new ArrayList<>();
+
+        //when - 중복(3)은 빠지고 11개가 4, 4, 3개로 나뉜다
+        List<Long> result = loader.load("test", Arrays.asList(1L, 2L, 3L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L, 11L), (chunkEm, chunk) -> {
+            Assertions.assertThat(chunkEm).isSameAs(em);
+            chunks.add(chunk);
+            return chunk;
+        });
+
+        //then - 마지막 chunk는 마지막 값을 반복해서 4개
+        Assertions.assertThat(chunks).containsExactly(
+                Arrays.asList(1L, 2L, 3L, 4L), Arrays.asList(5L, 6L, 7L, 8L), Arrays.asList(9L, 10L, 11L, 11L));
+        Assertions.assertThat(result).containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L, 11L, 11L);
+        Assertions.assertThat(meterRegistry.get("jpashop.in-query.shape").tag("result", "new").counter().count()).isEqualTo(1);
+        Assertions.assertThat(meterRegistry.get("jpashop.in-query.shape").tag("result", "repeat").counter().count()).isEqualTo(2);
+        Mockito.verifyNoInteractions(emf);
+    }
+
+    @Test
+    public void 패딩_크기() throws Exception {
+        Assertions.assertThat(InQueryBatchLoader.padded(Collections.singletonList(1L), Integer.MAX_VALUE)).containsExactly(1L);
+        Assertions.assertThat(InQueryBatchLoader.padded(Arrays.asList(1L, 2L, 3L), Integer.MAX_VALUE)).containsExactly(1L, 2L, 3L, 3L);
+        Assertions.assertThat(InQueryBatchLoader.padded(Arrays.asList(1L, 2L, 3L, 4L, 5L), 8)).hasSize(8).endsWith(5L, 5L, 5L, 5L);
+        Assertions.assertThat(InQueryBatchLoader.bucketSize(513, 512)).isEqualTo(512);
+        Assertions.assertThat(InQueryBatchLoader.bucketSize(Integer.MAX_VALUE, Integer.MAX_VALUE)).isEqualTo(Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void 병렬_조회는_끝난_순서와_상관없이_chunk_순서대로_합친다() throws Exception {
+        //given - chunk마다 새 EntityManager, 앞의 chunk일수록 늦게 끝난다
+        List<EntityManager> chunkEms = new ArrayList<>();
+        Mockito.when(emf.createEntityManager()).thenAnswer(invocation -> {
+            EntityManager chunkEm = Mockito.mock(EntityManager.class);
+            synchronized (chunkEms) {
+                chunkEms.add(chunkEm);
+            }
+            return chunkEm;
+        });
+        InQueryBatchLoader loader = new InQueryBatchLoader(em, emf, meterRegistry, 2, 3);
+
+        //when
+        List<Long> result;
+        try {
+            result = loader.load("test", Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L), (chunkEm, chunk) -> {
+                Assertions.assertThat(chunkEm).isNotSameAs(em);
+                sleep(60 - chunk.get(0) * 10);
+                return chunk;
+            });
+        } finally {
+            loader.shutdown();
+        }
+
+        //then
+        Assertions.assertThat(result).containsExactly(1L, 2L, 3L, 4L, 5L, 6L);
+        Assertions.assertThat(chunkEms).hasSize(3);
+        chunkEms.forEach(chunkEm -> Mockito.verify(chunkEm).close());
+    }
+
+    @Test
+    public void 트랜잭션_안에서는_병렬로_조회하지_않는다() throws Exception {
+        //given
+        InQueryBatchLoader loader = new InQueryBatchLoader(em, emf, meterRegistry, 2, 3);
+        List<EntityManager> used = new ArrayList<>();
+
+        //when - 모든 chunk를 현재 트랜잭션의 EntityManager로
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        List<Long> result;
+        try {
+            result = loader.load("test", Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L), (chunkEm, chunk) -> {
+                used.add(chunkEm);
+                return chunk;
+            });
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+            loader.shutdown();
+        }
+
+        //then
+        Assertions.assertThat(result).containsExactly(1L, 2L, 3L, 4L, 5L, 6L);
+        Assertions.assertThat(used).hasSize(3).allMatch(chunkEm -> chunkEm == em);
+        Mockito.verifyNoInteractions(emf);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
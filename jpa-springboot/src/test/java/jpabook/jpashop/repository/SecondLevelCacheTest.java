@@ -0,0 +1,141 @@
+package jpabook.jpashop.repository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.service.OrderService;
+import org.assertj.core.api.Assertions;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 2차 캐시는 트랜잭션이 커밋될 때 채워지므로 @Transactional(롤백) 대신 TransactionTemplate으로 직접 커밋한다.
+ */
+@SpringBootTest
+public class SecondLevelCacheTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    EntityManagerFactory emf;
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    ItemRepository itemRepository;
+    @Autowired
+    OrderService orderService;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    Statistics statistics;
+
+    @BeforeEach
+    void init() {
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+    }
+
+    @Test
+    public void 반복_findOne은_SQL을_실행하지_않는다() throws Exception {
+        //given
+        Long memberId = transactionTemplate.execute(status -> {
+            Member member = new Member();
+            member.setName("캐시회원");
+            member.setAddress(new Address("서울", "강가", "123-123"));
+            em.persist(member);
+            return member.getId();
+        });
+        Long itemId = transactionTemplate.execute(status -> {
+            Book book = new Book();
+            book.setName("캐시 JPA");
+            book.setPrice(10000);
+            book.setStockQuantity(10);
+            em.persist(book);
+            return book.getId();
+        });
+
+        //when
+        statistics.clear();
+        for (int i = 0; i < 3; i++) {
+            transactionTemplate.execute(status -> { //매번 새로운 영속성 컨텍스트
+                Member member = memberRepository.findOne(memberId);
+                Item item = itemRepository.findOne(itemId);
+                Assertions.assertThat(member.getName()).isEqualTo("캐시회원");
+                Assertions.assertThat(item).isInstanceOf(Book.class);
+                return null;
+            });
+        }
+
+        //then
+        Assertions.assertThat(statistics.getPrepareStatementCount()).isEqualTo(0);
+        Assertions.assertThat(statistics.getSecondLevelCacheHitCount()).isEqualTo(6);
+    }
+
+    @Test
+    public void 상품_전체조회는_쿼리캐시를_사용한다() throws Exception {
+        //given
+        transactionTemplate.execute(status -> itemRepository.findAll()); //쿼리 캐시 적재
+
+        //when
+        statistics.clear();
+        transactionTemplate.execute(status -> itemRepository.findAll());
+
+        //then
+        Assertions.assertThat(statistics.getQueryCacheHitCount()).isEqualTo(1);
+        Assertions.assertThat(statistics.getPrepareStatementCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void 주문은_주문한_상품만_캐시에서_뺀다() throws Exception {
+        //given
+        Long memberId = transactionTemplate.execute(status -> {
+            Member member = new Member();
+            member.setName("주문회원");
+            member.setAddress(new Address("서울", "강가", "123-123"));
+            em.persist(member);
+            return member.getId();
+        });
+        Long orderedId = transactionTemplate.execute(status -> book("주문 상품"));
+        Long otherId = transactionTemplate.execute(status -> book("다른 상품"));
+        transactionTemplate.execute(status -> itemRepository.findAll()); //쿼리 캐시 적재
+
+        //when
+        orderService.order(memberId, orderedId, 2);
+
+        //then
+        statistics.clear();
+        transactionTemplate.execute(status -> {
+            Assertions.assertThat(itemRepository.findOne(otherId).getStockQuantity()).isEqualTo(10);
+            return null;
+        });
+        Assertions.assertThat(statistics.getPrepareStatementCount()).isEqualTo(0); //다른 상품은 캐시에 남아 있다
+        Assertions.assertThat(statistics.getSecondLevelCacheHitCount()).isEqualTo(1);
+
+        transactionTemplate.execute(status -> {
+            Assertions.assertThat(itemRepository.findOne(orderedId).getStockQuantity()).isEqualTo(8);
+            return null;
+        });
+        Assertions.assertThat(statistics.getPrepareStatementCount()).isEqualTo(1); //주문한 상품만 다시 읽는다
+
+        statistics.clear();
+        transactionTemplate.execute(status -> itemRepository.findAll());
+        Assertions.assertThat(statistics.getQueryCacheHitCount()).isEqualTo(1); //상품 id 목록은 그대로 유효
+    }
+
+    private Long book(String name) {
+        Book book = new Book();
+        book.setName(name);
+        book.setPrice(10000);
+        book.setStockQuantity(10);
+        em.persist(book);
+        return book.getId();
+    }
+}
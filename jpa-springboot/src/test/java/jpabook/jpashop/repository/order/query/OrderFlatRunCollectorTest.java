@@ -0,0 +1,81 @@
+package jpabook.jpashop.repository.order.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import jpabook.jpashop.domain.OrderStatus;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * DB 없이 flat row를 주문 단위로 묶는 것만 본다.
+ */
+public class OrderFlatRunCollectorTest {
+
+    @Test
+    public void 연속된_row를_주문_단위로_묶는다() throws Exception {
+        List<OrderQueryDto> result = Stream.of(row(1L, "A"), row(1L, "B"), row(2L, "C"), row(3L, "D"), row(3L, "E"))
+                .collect(OrderFlatRunCollector.toOrderQueryDtos());
+
+        Assertions.assertThat(result).extracting(OrderQueryDto::getOrderId).containsExactly(1L, 2L, 3L);
+        Assertions.assertThat(itemNames(result)).containsExactly("A,B", "C", "D,E");
+    }
+
+    @Test
+    public void 병렬_조각_경계에서_잘린_주문은_이어_붙인다() throws Exception {
+        //given - 주문 2의 row가 두 조각에 나뉘어 있다
+        OrderFlatRunCollector collector = OrderFlatRunCollector.toOrderQueryDtos();
+        OrderFlatRunCollector.Runs left = collector.supplier().get();
+        OrderFlatRunCollector.Runs right = collector.supplier().get();
+        OrderFlatRunCollector.Runs empty = collector.supplier().get();
+        Stream.of(row(1L, "A"), row(2L, "B")).forEach(row -> collector.accumulator().accept(left, row));
+        Stream.of(row(2L, "C"), row(2L, "D"), row(3L, "E")).forEach(row -> collector.accumulator().accept(right, row));
+
+        //when - 빈 조각이 끼어도 결과는 같다
+        List<OrderQueryDto> result = collector.finisher().apply(
+                collector.combiner().apply(collector.combiner().apply(left, empty), right));
+
+        //then
+        Assertions.assertThat(result).extracting(OrderQueryDto::getOrderId).containsExactly(1L, 2L, 3L);
+        Assertions.assertThat(itemNames(result)).containsExactly("A", "B,C,D", "E");
+    }
+
+    @Test
+    public void 병렬_스트림도_순차_결과와_같다() throws Exception {
+        //given - 주문마다 상품 1~3개
+        List<OrderFlatDto> rows = new ArrayList<>();
+        for (long orderId = 1; orderId <= 2_000; orderId++) {
+            for (int i = 0; i <= orderId % 3; i++) {
+                rows.add(row(orderId, orderId + "-" + i));
+            }
+        }
+
+        //when
+        List<OrderQueryDto> sequential = rows.stream().collect(OrderFlatRunCollector.toOrderQueryDtos());
+        List<OrderQueryDto> parallel = rows.parallelStream().collect(OrderFlatRunCollector.toOrderQueryDtos());
+
+        //then
+        Assertions.assertThat(parallel).hasSize(2_000);
+        Assertions.assertThat(parallel).extracting(OrderQueryDto::getOrderId)
+                .containsExactlyElementsOf(sequential.stream().map(OrderQueryDto::getOrderId).collect(Collectors.toList()));
+        Assertions.assertThat(itemNames(parallel)).containsExactlyElementsOf(itemNames(sequential));
+    }
+
+    @Test
+    public void orderId_순서가_어긋나면_IllegalStateException() throws Exception {
+        Assertions.assertThatThrownBy(() -> Stream.of(row(2L, "A"), row(1L, "B")).collect(OrderFlatRunCollector.toOrderQueryDtos()))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("2 -> 1");
+    }
+
+    private static OrderFlatDto row(Long orderId, String itemName) {
+        return new OrderFlatDto(orderId, "회원" + orderId, null, OrderStatus.ORDER, null, itemName, 1000, 1);
+    }
+
+    private static List<String> itemNames(List<OrderQueryDto> orders) {
+        return orders.stream()
+                .map(o -> o.getOrderItems().stream().map(OrderItemQueryDto::getItemName).collect(Collectors.joining(",")))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,91 @@
+package jpabook.jpashop.service;
+
+import javax.persistence.EntityManager;
+import jpabook.jpashop.domain.Category;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.exception.NotFoundException;
+import jpabook.jpashop.repository.category.query.CategoryBadgeQueryDto;
+import jpabook.jpashop.repository.category.query.CategoryItemQueryDto;
+import jpabook.jpashop.service.query.CategoryItemQueryService;
+import jpabook.jpashop.sql.SqlCount;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@SpringBootTest
+@Transactional
+public class CategoryItemQueryServiceTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    CategoryItemQueryService categoryItemQueryService;
+    @Autowired
+    CategoryTreeSnapshot categoryTreeSnapshot;
+
+    @Test
+    public void 하위_카테고리_상품까지_키셋_페이징() throws Exception {
+        //given - 도서 > IT, 음반
+        Category book = category("도서");
+        Category it = category("IT");
+        Category music = category("음반");
+        book.addChildCategory(it);
+        em.persist(book);
+        em.persist(it);
+        em.persist(music);
+
+        Item jpa = item("JPA", book, it); //도서와 IT 모두에 있어도 한 번만 나온다
+        Item spring = item("스프링", it);
+        Item novel = item("소설", book);
+        item("앨범", music);
+        em.flush();
+        em.clear();
+        categoryTreeSnapshot.refresh();
+
+        //when
+        SqlCount.start();
+        List<CategoryItemQueryDto> first = categoryItemQueryService.findItems(book.getId(), null, 2);
+        SqlCount.assertStatementCount(2); //상품 페이지 + 카테고리 배지
+        List<CategoryItemQueryDto> second = categoryItemQueryService.findItems(book.getId(), first.get(1).getItemId(), 2);
+        SqlCount.stop();
+
+        //then
+        Assertions.assertThat(first).extracting(CategoryItemQueryDto::getName).containsExactly("JPA", "스프링");
+        Assertions.assertThat(second).extracting(CategoryItemQueryDto::getName).containsExactly("소설");
+        Assertions.assertThat(first.get(0).getCategories()).extracting(CategoryBadgeQueryDto::getName)
+                .containsExactlyInAnyOrder("도서", "IT");
+        Assertions.assertThat(first.get(0).getItemId()).isEqualTo(jpa.getId());
+        Assertions.assertThat(second.get(0).getItemId()).isEqualTo(novel.getId());
+        Assertions.assertThat(categoryItemQueryService.findItems(it.getId(), null, 10))
+                .extracting(CategoryItemQueryDto::getItemId).containsExactly(jpa.getId(), spring.getId());
+    }
+
+    @Test
+    public void 없는_카테고리는_NotFoundException() throws Exception {
+        Assertions.assertThatThrownBy(() -> categoryItemQueryService.findItems(-1L, null, 10))
+                .isInstanceOf(NotFoundException.class);
+    }
+
+    private Category category(String name) {
+        Category category = new Category();
+        category.setName(name);
+        return category;
+    }
+
+    private Item item(String name, Category... categories) {
+        Book item = new Book();
+        item.setName(name);
+        item.setPrice(10000);
+        item.setStockQuantity(10);
+        em.persist(item);
+        for (Category category : categories) {
+            category.getItems().add(item);
+        }
+        return item;
+    }
+}
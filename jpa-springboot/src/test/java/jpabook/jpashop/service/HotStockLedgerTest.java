@@ -0,0 +1,215 @@
+package jpabook.jpashop.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.persistence.EntityManager;
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.exception.HotStockChangedException;
+import jpabook.jpashop.exception.NotEnoughStockException;
+import jpabook.jpashop.repository.ItemRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 핫 상품 주문은 각자 커밋되어야 하므로 @Transactional(롤백)을 쓰지 않고 끝나면 직접 지운다.
+ * pending 반영 시점을 테스트에서 정하기 위해 주기적인 flush는 사실상 끈다.
+ */
+@SpringBootTest(properties = "jpashop.hot-stock.flush-interval-ms=3600000")
+public class HotStockLedgerTest {
+
+    private static final int STOCK = 50;
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    OrderService orderService;
+    @Autowired
+    HotStockLedger hotStockLedger;
+    @Autowired
+    ItemRepository itemRepository;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    Long memberId;
+    Long itemId;
+    final ConcurrentLinkedQueue<Long> orderIds = new ConcurrentLinkedQueue<>();
+
+    @BeforeEach
+    void init() {
+        memberId = transactionTemplate.execute(status -> {
+            Member member = new Member();
+            member.setName("핫상품회원");
+            member.setAddress(new Address("서울", "강가", "123-123"));
+            em.persist(member);
+            return member.getId();
+        });
+        itemId = transactionTemplate.execute(status -> {
+            Book book = new Book();
+            book.setName("핫딜 JPA");
+            book.setPrice(10000);
+            book.setStockQuantity(STOCK);
+            em.persist(book);
+            return book.getId();
+        });
+        hotStockLedger.enable(itemId);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        hotStockLedger.disable(itemId);
+        transactionTemplate.execute(status -> {
+            orderIds.forEach(id -> em.remove(em.find(Order.class, id)));
+            em.remove(em.find(Item.class, itemId));
+            em.remove(em.find(Member.class, memberId));
+            return null;
+        });
+    }
+
+    @Test
+    public void 동시_주문은_메모리_재고만큼만_성공하고_flush하면_DB에_반영된다() throws Exception {
+        //when
+        int threads = 8;
+        int ordersPerThread = 10;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit((Callable<Integer>) () -> {
+                start.await();
+                int failed = 0;
+                for (int i = 0; i < ordersPerThread; i++) {
+                    try {
+                        orderIds.add(orderService.order(memberId, itemId, 1));
+                    } catch (NotEnoughStockException e) {
+                        failed++;
+                    }
+                }
+                return failed;
+            }));
+        }
+        start.countDown();
+        int failed = 0;
+        for (Future<Integer> future : futures) {
+            failed += future.get();
+        }
+        executor.shutdown();
+
+        //then
+        Assertions.assertThat(orderIds).hasSize(STOCK);
+        Assertions.assertThat(failed).isEqualTo(threads * ordersPerThread - STOCK);
+        Assertions.assertThat(hotStockLedger.available(itemId)).isEqualTo(0);
+
+        hotStockLedger.flush(itemId);
+        Assertions.assertThat(stockQuantity()).isEqualTo(0);
+        Assertions.assertThat(pendingStock()).isEqualTo(0);
+    }
+
+    @Test
+    public void 주문취소는_메모리와_DB_재고를_모두_복구한다() throws Exception {
+        //given
+        Long pendingOrderId = orderService.order(memberId, itemId, 3); //반영 전에 취소
+        Long appliedOrderId = orderService.order(memberId, itemId, 2); //반영 후에 취소
+        orderIds.add(pendingOrderId);
+        orderIds.add(appliedOrderId);
+        hotStockLedger.flush(itemId);
+        Long laterOrderId = orderService.order(memberId, itemId, 1);
+        orderIds.add(laterOrderId);
+
+        //when
+        orderService.cancelOrder(pendingOrderId);
+        hotStockLedger.flush(itemId);
+        orderService.cancelOrder(appliedOrderId);
+
+        //then
+        Assertions.assertThat(hotStockLedger.available(itemId)).isEqualTo(STOCK - 1);
+        hotStockLedger.flush(itemId);
+        Assertions.assertThat(stockQuantity()).isEqualTo(STOCK - 1);
+    }
+
+    @Test
+    public void 일괄취소도_메모리와_DB_재고를_모두_복구한다() throws Exception {
+        //given
+        Long pendingOrderId = orderService.order(memberId, itemId, 3); //반영 전에 취소
+        Long appliedOrderId = orderService.order(memberId, itemId, 2); //반영 후에 취소
+        orderIds.add(pendingOrderId);
+        orderIds.add(appliedOrderId);
+        hotStockLedger.flush(itemId);
+        Long laterOrderId = orderService.order(memberId, itemId, 4); //반영 전에 취소
+        orderIds.add(laterOrderId);
+
+        //when
+        orderService.cancelOrders(Arrays.asList(pendingOrderId, appliedOrderId, laterOrderId));
+
+        //then
+        Assertions.assertThat(hotStockLedger.available(itemId)).isEqualTo(STOCK);
+        Assertions.assertThat(pendingStock()).isEqualTo(0);
+        Assertions.assertThat(stockQuantity()).isEqualTo(STOCK);
+    }
+
+    @Test
+    public void 재시작하면_반영되지_않은_주문상품으로_재고를_복구한다() throws Exception {
+        //given - 반영되기 전에 서버가 죽었다고 가정
+        for (int i = 0; i < 5; i++) {
+            orderIds.add(orderService.order(memberId, itemId, 2));
+        }
+        Assertions.assertThat(pendingStock()).isEqualTo(10);
+
+        //when - 새로 뜬 서버의 ledger
+        HotStockLedger restarted = new HotStockLedger(itemRepository, transactionManager, new SimpleMeterRegistry(),
+                Collections.singletonList(itemId), 2);
+        restarted.reconcile();
+
+        //then
+        Assertions.assertThat(pendingStock()).isEqualTo(0);
+        Assertions.assertThat(stockQuantity()).isEqualTo(STOCK - 10);
+        Assertions.assertThat(restarted.available(itemId)).isEqualTo(STOCK - 10);
+    }
+
+    @Test
+    public void 지정이_해제된_상품의_메모리_차감은_재시도할_충돌로_실패한다() throws Exception {
+        //given - 핫 상품으로 주문한 후 지정 해제 (pending 반영)
+        orderIds.add(orderService.order(memberId, itemId, 1));
+        hotStockLedger.disable(itemId);
+
+        //when - isHot() 확인과 차감 사이에 해제된 경우
+        Assertions.assertThatThrownBy(() -> hotStockLedger.reserve(itemId, 1))
+                .isInstanceOf(HotStockChangedException.class)
+                .isInstanceOf(ConcurrencyFailureException.class) //RetryingOrderExecutor가 새 트랜잭션으로 재시도한다
+                .hasMessageContaining(String.valueOf(itemId));
+
+        //then - 다시 주문하면 조건부 update 경로
+        orderIds.add(orderService.order(memberId, itemId, 2));
+        Assertions.assertThat(pendingStock()).isEqualTo(0);
+        Assertions.assertThat(stockQuantity()).isEqualTo(STOCK - 3);
+    }
+
+    private int stockQuantity() {
+        return transactionTemplate.execute(status -> em.find(Item.class, itemId).getStockQuantity());
+    }
+
+    private long pendingStock() {
+        return transactionTemplate.execute(status -> itemRepository.pendingStock(itemId));
+    }
+}
@@ -0,0 +1,144 @@
+package jpabook.jpashop.service;
+
+import java.util.Set;
+import javax.persistence.EntityManager;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.exception.HotStockPatchException;
+import jpabook.jpashop.exception.ItemVersionConflictException;
+import jpabook.jpashop.exception.NotFoundException;
+import jpabook.jpashop.repository.ItemListDto;
+import jpabook.jpashop.repository.ItemListPage;
+import jpabook.jpashop.repository.ItemPatch;
+import jpabook.jpashop.sql.SqlCount;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+@SpringBootTest
+@Transactional
+public class ItemServiceTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    ItemService itemService;
+    @Autowired
+    HotStockLedger hotStockLedger;
+
+    @Test
+    public void 버전을_주면_조회없이_바뀐_컬럼만_update() throws Exception {
+        //given
+        Book book = createBook();
+
+        //when
+        SqlCount.start();
+        Long version = itemService.patchItem(book.getId(), book.getVersion(), new ItemPatch(null, 12000, null));
+
+        //then
+        Set<String> statements = SqlCount.current().repeatedShapes(1).keySet();
+        SqlCount.assertStatementCount(1);
+        SqlCount.stop();
+        Assertions.assertThat(statements).singleElement().asString()
+                .contains("price = ?").doesNotContain("name =").doesNotContain("author");
+        Assertions.assertThat(version).isEqualTo(book.getVersion() + 1);
+        Book getBook = em.find(Book.class, book.getId());
+        Assertions.assertThat(getBook.getPrice()).isEqualTo(12000);
+        Assertions.assertThat(getBook.getAuthor()).isEqualTo("김영한");
+
+        //옛 버전으로 다시 수정하면 충돌
+        Assertions.assertThatThrownBy(() -> itemService.patchItem(book.getId(), book.getVersion(), new ItemPatch("새 이름", null, null)))
+                .isInstanceOf(ItemVersionConflictException.class);
+    }
+
+    @Test
+    public void 버전이_없으면_변경감지로_바뀐_컬럼만_update() throws Exception {
+        //given
+        Book book = createBook();
+
+        //when
+        SqlCount.start();
+        Long version = itemService.patchItem(book.getId(), null, new ItemPatch("JPA 2판", null, null));
+
+        //then
+        Set<String> statements = SqlCount.current().repeatedShapes(1).keySet();
+        SqlCount.stop();
+        Assertions.assertThat(statements).filteredOn(sql -> sql.startsWith("update")).singleElement().asString()
+                .contains("name=?").doesNotContain("price=").doesNotContain("author=");
+        Assertions.assertThat(version).isEqualTo(book.getVersion() + 1);
+    }
+
+    @Test
+    public void 없는_상품은_버전과_상관없이_NotFoundException() throws Exception {
+        Assertions.assertThatThrownBy(() -> itemService.patchItem(-1L, null, new ItemPatch("새 이름", null, null)))
+                .isInstanceOf(NotFoundException.class);
+        Assertions.assertThatThrownBy(() -> itemService.patchItem(-1L, 0L, new ItemPatch("새 이름", null, null)))
+                .isInstanceOf(NotFoundException.class);
+        Assertions.assertThatThrownBy(() -> itemService.patchItem(-1L, 0L, new ItemPatch(null, null, null)))
+                .isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    public void 음수_가격과_재고는_수정할_수_없다() throws Exception {
+        Book book = createBook();
+
+        Assertions.assertThatThrownBy(() -> itemService.patchItem(book.getId(), null, new ItemPatch(null, -1, null)))
+                .isInstanceOf(IllegalArgumentException.class);
+        Assertions.assertThatThrownBy(() -> itemService.patchItem(book.getId(), book.getVersion(), new ItemPatch(null, null, -1)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void 핫_상품의_재고는_지정을_해제한_후에만_수정한다() throws Exception {
+        //given
+        Book book = createBook();
+        hotStockLedger.enable(book.getId());
+        try {
+            //when, then - 재고는 거절, 다른 필드는 수정
+            Assertions.assertThatThrownBy(() -> itemService.patchItem(book.getId(), null, new ItemPatch(null, null, 100)))
+                    .isInstanceOf(HotStockPatchException.class);
+            itemService.patchItem(book.getId(), null, new ItemPatch("JPA 2판", null, null));
+        } finally {
+            hotStockLedger.disable(book.getId());
+        }
+        itemService.patchItem(book.getId(), null, new ItemPatch(null, null, 100));
+        Assertions.assertThat(em.find(Book.class, book.getId()).getStockQuantity()).isEqualTo(100);
+    }
+
+    @Test
+    public void 상품_목록은_키셋으로_페이징한다() throws Exception {
+        //given - 마지막에 저장한 상품 3개
+        Book first = createBook();
+        Book second = createBook();
+        Book third = createBook();
+
+        //when
+        SqlCount.start();
+        ItemListPage next = itemService.findItemPage(first.getId(), null, 2);
+        SqlCount.assertStatementCount(1);
+        SqlCount.stop();
+        ItemListPage previous = itemService.findItemPage(null, third.getId(), 2);
+
+        //then
+        Assertions.assertThat(next.getItems()).extracting(ItemListDto::getId).containsExactly(second.getId(), third.getId());
+        Assertions.assertThat(next.isHasPrevious()).isTrue();
+        Assertions.assertThat(next.isHasNext()).isFalse();
+        Assertions.assertThat(previous.getItems()).extracting(ItemListDto::getId).containsExactly(first.getId(), second.getId());
+        Assertions.assertThat(previous.isHasPrevious()).isTrue(); //InitDb 상품
+        Assertions.assertThat(previous.isHasNext()).isTrue();
+    }
+
+    private Book createBook() {
+        Book book = new Book();
+        book.setName("JPA");
+        book.setPrice(10000);
+        book.setStockQuantity(10);
+        book.setAuthor("김영한");
+        book.setIsbn("1234");
+        em.persist(book);
+        em.flush();
+        em.clear();
+        return book;
+    }
+}
@@ -0,0 +1,60 @@
+package jpabook.jpashop.service;
+
+import javax.persistence.EntityManager;
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 회원 저장, 이름 변경이 커밋된 후에 trigram 인덱스에 반영되는지 본다.
+ * 커밋 후 이벤트를 받아야 하므로 @Transactional(롤백)을 쓰지 않고 끝나면 직접 지운다.
+ */
+@SpringBootTest
+public class MemberNameTrigramIndexTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    MemberService memberService;
+    @Autowired
+    MemberNameTrigramIndex memberNameTrigramIndex;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    Long memberId;
+
+    @AfterEach
+    void cleanUp() {
+        transactionTemplate.execute(status -> {
+            em.remove(em.find(Member.class, memberId));
+            return null;
+        });
+        Assertions.assertThat(memberNameTrigramIndex.findCandidates("ngram")).hasValueSatisfying(ids -> Assertions.assertThat(ids).doesNotContain(memberId));
+    }
+
+    @Test
+    public void 커밋된_회원과_바뀐_이름이_인덱스에_반영된다() throws Exception {
+        //given
+        Member member = new Member();
+        member.setName("trigramKim");
+        member.setAddress(new Address("서울", "강가", "123-123"));
+
+        //when
+        memberId = memberService.join(member);
+
+        //then - 대소문자 구분 없이 중간 글자로 찾는다
+        Assertions.assertThat(memberNameTrigramIndex.findCandidates("GRAMk")).hasValueSatisfying(ids -> Assertions.assertThat(ids).contains(memberId));
+
+        //when - 이름 변경
+        memberService.update(memberId, "ngramLee");
+
+        //then
+        Assertions.assertThat(memberNameTrigramIndex.findCandidates("gramk")).hasValueSatisfying(ids -> Assertions.assertThat(ids).doesNotContain(memberId));
+        Assertions.assertThat(memberNameTrigramIndex.findCandidates("ngramle")).hasValueSatisfying(ids -> Assertions.assertThat(ids).contains(memberId));
+    }
+}
@@ -7,6 +7,7 @@ import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.transaction.annotation.Transactional;
 
 @SpringBootTest
@@ -49,4 +50,20 @@ public class MemberServiceTest {
         Assertions.assertThatThrownBy(() -> memberService.join(member2))
                 .isInstanceOf(IllegalStateException.class);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void 인덱스에_없는_이름도_DB_유니크_제약으로_막는다() throws Exception {
+        //given - 다른 서버에서 가입해서 이 서버의 MemberNameIndex에는 없는 이름
+        Member other = new Member();
+        other.setName("park");
+        em.persist(other);
+
+        Member member = new Member();
+        member.setName("park");
+
+        //then
+        Assertions.assertThatThrownBy(() -> memberService.join(member))
+                .isInstanceOf(IllegalStateException.class)
+                .hasCauseInstanceOf(DataIntegrityViolationException.class);
+    }
+}
@@ -0,0 +1,99 @@
+package jpabook.jpashop.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import javax.persistence.EntityManager;
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.exception.NotEnoughStockException;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 주문은 writer 스레드의 트랜잭션에서 커밋되므로 @Transactional(롤백)을 쓰지 않고 끝나면 직접 지운다.
+ */
+@SpringBootTest(properties = {
+        "jpashop.order.intake.enabled=true",
+        "jpashop.order.intake.writers=1",
+        "jpashop.order.intake.batch-size=50",
+        "jpashop.order.intake.max-wait-ms=50"})
+public class OrderIntakeQueueTest {
+
+    private static final int STOCK = 30;
+    private static final int ORDERS = 40;
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    OrderIntakeQueue orderIntakeQueue;
+    @Autowired
+    MeterRegistry meterRegistry;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    Long memberId;
+    Long itemId;
+    final List<Long> orderIds = new ArrayList<>();
+
+    @AfterEach
+    void cleanUp() {
+        transactionTemplate.execute(status -> {
+            orderIds.forEach(id -> em.remove(em.find(Order.class, id)));
+            em.remove(em.find(Item.class, itemId));
+            em.remove(em.find(Member.class, memberId));
+            return null;
+        });
+    }
+
+    @Test
+    public void 모아서_커밋하고_재고가_부족한_주문만_실패한다() throws Exception {
+        //given
+        memberId = transactionTemplate.execute(status -> {
+            Member member = new Member();
+            member.setName("그룹커밋회원");
+            member.setAddress(new Address("서울", "강가", "123-123"));
+            em.persist(member);
+            return member.getId();
+        });
+        itemId = transactionTemplate.execute(status -> {
+            Book book = new Book();
+            book.setName("그룹커밋 JPA");
+            book.setPrice(10000);
+            book.setStockQuantity(STOCK);
+            em.persist(book);
+            return book.getId();
+        });
+
+        //when
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < ORDERS; i++) {
+            futures.add(orderIntakeQueue.submit(memberId, itemId, 1));
+        }
+
+        //then
+        int notEnoughStock = 0;
+        for (CompletableFuture<Long> future : futures) {
+            try {
+                orderIds.add(future.get());
+            } catch (ExecutionException e) {
+                Assertions.assertThat(e.getCause()).isInstanceOf(NotEnoughStockException.class);
+                notEnoughStock++;
+            }
+        }
+        Assertions.assertThat(orderIds).hasSize(STOCK);
+        Assertions.assertThat(notEnoughStock).isEqualTo(ORDERS - STOCK);
+        Assertions.assertThat(meterRegistry.get("jpashop.order.intake.batch").summary().count()).isLessThan(ORDERS);
+        Integer stock = transactionTemplate.execute(status -> em.find(Item.class, itemId).getStockQuantity());
+        Assertions.assertThat(stock).isEqualTo(0);
+    }
+}
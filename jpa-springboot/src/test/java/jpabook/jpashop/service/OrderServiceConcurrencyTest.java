@@ -0,0 +1,107 @@
+package jpabook.jpashop.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.persistence.EntityManager;
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.exception.NotEnoughStockException;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 여러 스레드가 같은 상품을 동시에 주문해도 재고만큼만 주문이 성공해야 한다.
+ * 각 주문이 별도의 트랜잭션으로 커밋되어야 하므로 @Transactional(롤백)을 쓰지 않고 끝나면 직접 지운다.
+ */
+@SpringBootTest
+public class OrderServiceConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int ORDERS_PER_THREAD = 10;
+    private static final int STOCK = 50;
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    OrderService orderService;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    Long memberId;
+    Long itemId;
+    final ConcurrentLinkedQueue<Long> orderIds = new ConcurrentLinkedQueue<>();
+
+    @AfterEach
+    void cleanUp() {
+        transactionTemplate.execute(status -> {
+            orderIds.forEach(id -> em.remove(em.find(Order.class, id))); //주문상품, 배송은 cascade
+            em.remove(em.find(Item.class, itemId));
+            em.remove(em.find(Member.class, memberId));
+            return null;
+        });
+    }
+
+    @Test
+    public void 동시_주문은_재고를_초과하지_않는다() throws Exception {
+        //given
+        memberId = transactionTemplate.execute(status -> {
+            Member member = new Member();
+            member.setName("동시주문회원");
+            member.setAddress(new Address("서울", "강가", "123-123"));
+            em.persist(member);
+            return member.getId();
+        });
+        itemId = transactionTemplate.execute(status -> {
+            Book book = new Book();
+            book.setName("한정판 JPA");
+            book.setPrice(10000);
+            book.setStockQuantity(STOCK);
+            em.persist(book);
+            return book.getId();
+        });
+
+        //when
+        AtomicInteger notEnoughStock = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit((Callable<Void>) () -> {
+                start.await();
+                for (int i = 0; i < ORDERS_PER_THREAD; i++) {
+                    try {
+                        orderIds.add(orderService.order(memberId, itemId, 1));
+                    } catch (NotEnoughStockException e) {
+                        notEnoughStock.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        //then
+        Assertions.assertThat(orderIds).hasSize(STOCK);
+        Assertions.assertThat(notEnoughStock.get()).isEqualTo(THREADS * ORDERS_PER_THREAD - STOCK);
+        Integer stock = transactionTemplate.execute(status -> em.find(Item.class, itemId).getStockQuantity());
+        Assertions.assertThat(stock).isEqualTo(0);
+    }
+}
@@ -2,19 +2,29 @@ package jpabook.jpashop.service;
 
 import static org.springframework.test.util.AssertionErrors.assertEquals;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import javax.persistence.EntityManager;
 import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.DeliveryStatus;
 import jpabook.jpashop.domain.Member;
 import jpabook.jpashop.domain.Order;
 import jpabook.jpashop.domain.OrderStatus;
 import jpabook.jpashop.domain.item.Book;
 import jpabook.jpashop.domain.item.Item;
 import jpabook.jpashop.exception.NotEnoughStockException;
+import jpabook.jpashop.exception.NotFoundException;
 import jpabook.jpashop.repository.OrderRepository;
+import jpabook.jpashop.repository.OrderSearch;
+import jpabook.jpashop.sql.SqlCount;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.transaction.annotation.Transactional;
 
 
@@ -28,6 +38,8 @@ public class OrderServiceTest {
     OrderService orderService;
     @Autowired
     OrderRepository orderRepository;
+    @Autowired
+    MemberNameTrigramIndex memberNameTrigramIndex;
 
     @Test
     public void 상품주문() throws Exception {
@@ -85,6 +97,229 @@ public class OrderServiceTest {
         assertEquals("주문이 취소된 상품은 그만큼 재고가 증가해야 한다.", 10, item.getStockQuantity());
     }
 
+    @Test
+    public void 여러상품주문() throws Exception {
+        //given
+        Member member = createMember();
+        Book book1 = createBook("시골 JPA", 10000, 10);
+        Book book2 = createBook("도시 JPA", 20000, 10);
+        Book book3 = createBook("바다 JPA", 30000, 10);
+        em.flush();
+        em.clear();
+
+        List<OrderLine> lines = Arrays.asList(
+                new OrderLine(book1.getId(), 1),
+                new OrderLine(book2.getId(), 2),
+                new OrderLine(book3.getId(), 3),
+                new OrderLine(book1.getId(), 4)); //같은 상품이 여러 줄
+
+        //when
+        SqlCount.start();
+        Long orderId = orderService.order(member.getId(), lines);
+        em.flush();
+
+        //then - 재고 차감 update, 상품 조회, 테이블별 insert는 모두 한 번씩 (시퀀스 조회 제외)
+        Map<String, Integer> repeated = SqlCount.current().repeatedShapes(2);
+        SqlCount.stop();
+        Assertions.assertThat(repeated.keySet()).allMatch(sql -> sql.contains("next value for"));
+
+        Order getOrder = orderRepository.findOne(orderId);
+        assertEquals("주문상품은 줄 수만큼 생긴다.", 4, getOrder.getOrderItems().size());
+        assertEquals("주문 가격은 줄마다 가격 * 수량의 합이다.", 10000 * 5 + 20000 * 2 + 30000 * 3, getOrder.getTotalPrice());
+        assertEquals("같은 상품의 수량은 합쳐서 차감된다.", 5, em.find(Book.class, book1.getId()).getStockQuantity());
+        assertEquals("주문 수량만큼 재고가 줄어야 한다.", 8, em.find(Book.class, book2.getId()).getStockQuantity());
+        assertEquals("주문 수량만큼 재고가 줄어야 한다.", 7, em.find(Book.class, book3.getId()).getStockQuantity());
+    }
+
+    @Test
+    public void 여러상품주문_재고수량초과() throws Exception {
+        //given
+        Member member = createMember();
+        Book book1 = createBook("시골 JPA", 10000, 10);
+        Book book2 = createBook("도시 JPA", 20000, 1);
+
+        //then
+        Assertions.assertThatThrownBy(
+                        () -> orderService.order(member.getId(), Arrays.asList(
+                                new OrderLine(book1.getId(), 1),
+                                new OrderLine(book2.getId(), 2))))
+                .isInstanceOf(NotEnoughStockException.class);
+    }
+
+    @Test
+    public void 여러상품주문_없는_회원이나_상품은_NotFoundException() throws Exception {
+        //given
+        Member member = createMember();
+        Book book = createBook("시골 JPA", 10000, 10);
+
+        //then
+        Assertions.assertThatThrownBy(
+                        () -> orderService.order(-1L, Arrays.asList(new OrderLine(book.getId(), 1))))
+                .isInstanceOf(NotFoundException.class);
+        Assertions.assertThatThrownBy(
+                        () -> orderService.order(member.getId(), Arrays.asList(
+                                new OrderLine(book.getId(), 1),
+                                new OrderLine(-1L, 1))))
+                .isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    public void 수량이_0_이하인_주문상품은_거절() throws Exception {
+        //given
+        Member member = createMember();
+        Book book = createBook("시골 JPA", 10000, 10);
+
+        //then - 재고 조건(stock_quantity >= count)을 통과해서 재고가 늘면 안 된다
+        Assertions.assertThatThrownBy(
+                        () -> orderService.order(member.getId(), Arrays.asList(new OrderLine(book.getId(), -5))))
+                .isInstanceOf(IllegalArgumentException.class);
+        Assertions.assertThatThrownBy(
+                        () -> orderService.order(member.getId(), Arrays.asList(new OrderLine(null, 1))))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        OrderCommand negative = new OrderCommand(member.getId(), Arrays.asList(new OrderLine(book.getId(), -5)));
+        OrderCommand valid = new OrderCommand(member.getId(), Arrays.asList(new OrderLine(book.getId(), 2)));
+        orderService.orderAll(Arrays.asList(negative, valid));
+        Assertions.assertThat(negative.getFailure()).isInstanceOf(IllegalArgumentException.class);
+        Assertions.assertThat(valid.getOrderId()).isNotNull();
+        em.flush();
+        em.clear();
+        assertEquals("거절된 주문은 재고를 바꾸지 않는다.", 8, em.find(Book.class, book.getId()).getStockQuantity());
+    }
+
+    @Test
+    public void 주문일괄취소() throws Exception {
+        //given
+        Member member = createMember();
+        Book book1 = createBook("시골 JPA", 10000, 10);
+        Book book2 = createBook("도시 JPA", 20000, 10);
+        Long orderId1 = orderService.order(member.getId(), book1.getId(), 1);
+        Long orderId2 = orderService.order(member.getId(), Arrays.asList(new OrderLine(book1.getId(), 2), new OrderLine(book2.getId(), 3)));
+        Long orderId3 = orderService.order(member.getId(), book2.getId(), 4);
+        orderService.cancelOrder(orderId3); //이미 취소된 주문은 건너뛴다
+        em.flush();
+        em.clear();
+
+        //when
+        SqlCount.start();
+        int cancelled = orderService.cancelOrders(Arrays.asList(orderId1, orderId2, orderId3));
+
+        //then - 조회(검증, 잠금) 1 + 재고 복구, pending 해제, 주문 상태 update 3
+        SqlCount.assertStatementCount(4);
+        SqlCount.stop();
+        assertEquals("취소되지 않은 주문만 취소된다.", 2, cancelled);
+        assertEquals("주문 취소시 상태는 CANCEL 이다.", OrderStatus.CANCEL, orderRepository.findOne(orderId1).getStatus());
+        assertEquals("주문 취소시 상태는 CANCEL 이다.", OrderStatus.CANCEL, orderRepository.findOne(orderId2).getStatus());
+        assertEquals("주문이 취소된 상품은 그만큼 재고가 증가해야 한다.", 10, em.find(Book.class, book1.getId()).getStockQuantity());
+        assertEquals("이미 취소된 주문의 재고는 다시 증가하지 않는다.", 10, em.find(Book.class, book2.getId()).getStockQuantity());
+    }
+
+    @Test
+    public void 주문일괄취소_배송완료() throws Exception {
+        //given
+        Member member = createMember();
+        Book book = createBook("시골 JPA", 10000, 10);
+        Long orderId1 = orderService.order(member.getId(), book.getId(), 1);
+        Long orderId2 = orderService.order(member.getId(), book.getId(), 2);
+        orderRepository.findOne(orderId2).getDelivery().setStatus(DeliveryStatus.COMP);
+
+        //then
+        Assertions.assertThatThrownBy(() -> orderService.cancelOrders(Arrays.asList(orderId1, orderId2)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void 주문검색() throws Exception {
+        //given
+        Member member = createMember();
+        Book book = createBook("시골 JPA", 10000, 10);
+        Long orderId = orderService.order(member.getId(), book.getId(), 1);
+        Long cancelledId = orderService.order(member.getId(), book.getId(), 1);
+        orderService.cancelOrder(cancelledId);
+        //테스트 트랜잭션은 커밋되지 않아 커밋 후 이벤트가 오지 않는다. rebuild는 이 트랜잭션에 참여해서 방금 저장한 회원도 읽는다
+        memberNameTrigramIndex.rebuild();
+
+        //then - 조건 조합마다 결과가 이름 포함 검색(Criteria, like '%이름%')과 같다
+        //"회원1" : trigram 인덱스로 찾은 회원의 주문 / "원1", "원" : 3글자 미만이라 like 검색 / "회원2" : 후보 없음
+        for (OrderStatus status : new OrderStatus[]{null, OrderStatus.ORDER, OrderStatus.CANCEL}) {
+            for (String memberName : new String[]{null, "회원1", "원1", "원", "회원2"}) {
+                OrderSearch orderSearch = new OrderSearch();
+                orderSearch.setOrderStatus(status);
+                orderSearch.setMemberName(memberName);
+                Assertions.assertThat(orderService.findOrders(orderSearch))
+                        .containsExactlyInAnyOrderElementsOf(orderRepository.findAllByCriteria(orderSearch));
+                Assertions.assertThat(searchAll(orderSearch))
+                        .containsExactlyInAnyOrderElementsOf(orderRepository.findAllByCriteria(orderSearch));
+                //모양별 named query는 같은 이름 패턴으로 findAllByString과 같은 결과
+                Assertions.assertThat(orderRepository.findAllBySearch(orderSearch))
+                        .containsExactlyInAnyOrderElementsOf(orderRepository.findAllByString(orderSearch));
+            }
+        }
+        OrderSearch orderSearch = new OrderSearch();
+        orderSearch.setOrderStatus(OrderStatus.ORDER);
+        orderSearch.setMemberName("회원1");
+        Assertions.assertThat(orderService.findOrders(orderSearch)).extracting(Order::getId).contains(orderId).doesNotContain(cancelledId);
+
+        //목록 검색과 검색 페이징 모두 %, _를 trigram 인덱스("회_1")로 찾든 like("_1")로 찾든 글자 그대로 검색한다
+        for (String memberName : new String[]{"회_1", "_1", "%"}) {
+            orderSearch.setMemberName(memberName);
+            Assertions.assertThat(orderService.findOrders(orderSearch)).isEmpty();
+            Assertions.assertThat(searchAll(orderSearch)).isEmpty();
+        }
+    }
+
+    @Test
+    public void 주문검색_페이징은_필요할_때만_count() throws Exception {
+        //given - 주문 3건, 페이지 크기 2
+        Member member = createMember();
+        Book book = createBook("시골 JPA", 10000, 10);
+        Long first = orderService.order(member.getId(), book.getId(), 1);
+        Long second = orderService.order(member.getId(), book.getId(), 1);
+        Long third = orderService.order(member.getId(), book.getId(), 1);
+        memberNameTrigramIndex.rebuild(); //주문검색 참고
+        em.flush();
+        em.clear();
+        OrderSearch orderSearch = new OrderSearch();
+        orderSearch.setMemberName("회원1");
+
+        //when - 첫 페이지는 가득 차서 전체 개수를 센다 (이름이 맞는 회원 id, 주문 페이지, count)
+        SqlCount.start();
+        Page<Order> firstPage = orderService.searchOrders(orderSearch, PageRequest.of(0, 2));
+
+        //then
+        SqlCount.assertSelectCount(3);
+        SqlCount.stop();
+        Assertions.assertThat(firstPage.getContent()).extracting(Order::getId).containsExactly(third, second);
+        Assertions.assertThat(firstPage.getTotalElements()).isEqualTo(3);
+
+        //when - 마지막 페이지는 offset + 내용 개수가 전체 개수라서 count를 생략한다
+        SqlCount.start();
+        Page<Order> lastPage = orderService.searchOrders(orderSearch, PageRequest.of(1, 2));
+
+        //then
+        SqlCount.assertSelectCount(2);
+        SqlCount.stop();
+        Assertions.assertThat(lastPage.getContent()).extracting(Order::getId).containsExactly(first);
+        Assertions.assertThat(lastPage.getTotalElements()).isEqualTo(3);
+
+        //when - 회원 이름 조건이 없으면 count 쿼리는 member를 조인하지 않는다
+        OrderSearch statusOnly = new OrderSearch();
+        statusOnly.setOrderStatus(OrderStatus.ORDER);
+        SqlCount.start();
+        Page<Order> statusPage = orderService.searchOrders(statusOnly, PageRequest.of(0, 1));
+
+        //then
+        Set<String> statements = SqlCount.current().repeatedShapes(1).keySet();
+        SqlCount.stop();
+        Assertions.assertThat(statements).filteredOn(sql -> sql.startsWith("select count")).singleElement().asString()
+                .doesNotContain("join");
+        Assertions.assertThat(statusPage.getTotalElements()).isGreaterThanOrEqualTo(3);
+    }
+
+    private List<Order> searchAll(OrderSearch orderSearch) {
+        return orderService.searchOrders(orderSearch, PageRequest.of(0, 1000)).getContent();
+    }
+
     private Book createBook(String name, int price, int stockQuantity) {
         Book book = new Book();
         book.setName(name);
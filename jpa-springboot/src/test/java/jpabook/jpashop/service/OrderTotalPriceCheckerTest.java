@@ -0,0 +1,51 @@
+package jpabook.jpashop.service;
+
+import javax.persistence.EntityManager;
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.item.Book;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+@SpringBootTest(properties = "jpashop.order-total-check.repair=true")
+@Transactional
+public class OrderTotalPriceCheckerTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    OrderService orderService;
+    @Autowired
+    OrderTotalPriceChecker orderTotalPriceChecker;
+
+    @Test
+    public void 주문상품과_다른_총액을_찾아서_다시_계산한다() throws Exception {
+        //given - 주문 총액은 주문할 때 저장된다
+        Member member = new Member();
+        member.setName("총액회원");
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        em.persist(member);
+        Book book = new Book();
+        book.setName("시골 JPA");
+        book.setPrice(10000);
+        book.setStockQuantity(10);
+        em.persist(book);
+        Long orderId = orderService.order(member.getId(), book.getId(), 3);
+        em.flush();
+        em.createQuery("update Order o set o.totalPrice = 1 where o.id = :id").setParameter("id", orderId).executeUpdate();
+
+        //when
+        OrderTotalPriceChecker.Report report = orderTotalPriceChecker.check();
+
+        //then
+        Assertions.assertThat(report.getSampleIds()).containsExactly(orderId);
+        Assertions.assertThat(report.getDrifted()).isEqualTo(1);
+        Assertions.assertThat(report.getRepaired()).isEqualTo(1);
+        Assertions.assertThat(em.find(Order.class, orderId).getTotalPrice()).isEqualTo(10000 * 3);
+        Assertions.assertThat(orderTotalPriceChecker.check().getDrifted()).isZero();
+    }
+}
@@ -0,0 +1,56 @@
+package jpabook.jpashop.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.atomic.AtomicInteger;
+import jpabook.jpashop.domain.item.Item;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+public class RetryingOrderExecutorTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    RetryingOrderExecutor executor = new RetryingOrderExecutor(null, meterRegistry, 3, 1, 4);
+
+    @Test
+    public void 충돌하면_재시도해서_성공한다() throws Exception {
+        //given
+        AtomicInteger calls = new AtomicInteger();
+
+        //when
+        Long result = executor.execute("order", () -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new ObjectOptimisticLockingFailureException(Item.class, 1L);
+            }
+            return 1L;
+        });
+
+        //then
+        Assertions.assertThat(result).isEqualTo(1L);
+        Assertions.assertThat(calls.get()).isEqualTo(3);
+        Assertions.assertThat(meterRegistry.get("jpashop.order.retry.attempts").tag("result", "conflict").counter().count()).isEqualTo(2);
+        Assertions.assertThat(meterRegistry.get("jpashop.order.retry.retries").summary().totalAmount()).isEqualTo(2);
+    }
+
+    @Test
+    public void 재시도를_다_쓰면_마지막_충돌을_던진다() throws Exception {
+        //given
+        AtomicInteger calls = new AtomicInteger();
+
+        //then
+        Assertions.assertThatThrownBy(() -> executor.execute("cancel", () -> {
+                    calls.incrementAndGet();
+                    throw new ObjectOptimisticLockingFailureException(Item.class, 1L);
+                }))
+                .isInstanceOf(ObjectOptimisticLockingFailureException.class);
+        Assertions.assertThat(calls.get()).isEqualTo(3);
+        Assertions.assertThat(meterRegistry.get("jpashop.order.retry.exhausted").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void 백오프는_최대값을_넘지_않는다() throws Exception {
+        for (int attempt = 1; attempt < 40; attempt++) {
+            Assertions.assertThat(executor.backoff(attempt)).isBetween(0L, 4L);
+        }
+    }
+}
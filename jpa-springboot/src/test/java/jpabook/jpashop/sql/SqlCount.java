@@ -0,0 +1,50 @@
+package jpabook.jpashop.sql;
+
+import org.assertj.core.api.Assertions;
+
+/**
+ * 테스트에서 구간 안에 실행된 SQL 수를 고정(pin)하기 위한 도우미
+ *
+ * SqlCount.start();
+ * mockMvc.perform(get("/api/v5/orders"));
+ * SqlCount.assertSelectCount(2);
+ */
+public final class SqlCount {
+
+    private static final ThreadLocal<SqlStatementContext> RECORDING = new ThreadLocal<>();
+
+    private SqlCount() {
+    }
+
+    public static void start() {
+        stop();
+        RECORDING.set(SqlStatementContext.begin());
+    }
+
+    public static void stop() {
+        if (RECORDING.get() != null) {
+            SqlStatementContext.end();
+            RECORDING.remove();
+        }
+    }
+
+    public static SqlStatementContext current() {
+        SqlStatementContext context = RECORDING.get();
+        if (context == null) {
+            throw new IllegalStateException("SqlCount.start()를 먼저 호출해야 합니다.");
+        }
+        return context;
+    }
+
+    public static void assertSelectCount(int expected) {
+        Assertions.assertThat(current().getSelectCount()).as("select 수").isEqualTo(expected);
+    }
+
+    public static void assertStatementCount(int expected) {
+        Assertions.assertThat(current().getStatementCount()).as("SQL 수").isEqualTo(expected);
+    }
+
+    public static void assertNoNPlusOne(int threshold) {
+        Assertions.assertThat(current().repeatedShapes(threshold)).as("N + 1 의심 SQL").isEmpty();
+    }
+}